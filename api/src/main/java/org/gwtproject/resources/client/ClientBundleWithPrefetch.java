@@ -0,0 +1,47 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.client;
+
+/**
+ * This is an extension of ClientBundle that can warm its external resources ahead of use. Calling
+ * {@link #prefetch} right after startup takes the network round-trip of the first {@link
+ * ExternalTextResource#getText} off the critical path of later screens.
+ */
+public interface ClientBundleWithPrefetch extends ClientBundle {
+
+  /**
+   * Starts fetching the text of every {@link ExternalTextResource} in the bundle and, once the page
+   * is idle, adds a prefetch hint for every {@link DataResource} that is not embedded. The callback
+   * is invoked when all the texts are available; the hints are not waited for.
+   *
+   * @param callback the callback to notify, or <code>null</code>
+   */
+  void prefetch(PrefetchCallback callback);
+
+  /** A callback interface for {@link #prefetch}. */
+  interface PrefetchCallback {
+    /**
+     * Invoked if one of the resources could not be fetched. Called at most once.
+     *
+     * @param e an exception describing the failure
+     */
+    void onError(ResourceException e);
+
+    /** Invoked when every resource of the bundle has been fetched. */
+    void onSuccess();
+  }
+}
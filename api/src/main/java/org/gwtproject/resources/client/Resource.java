@@ -19,6 +19,6 @@ import java.lang.annotation.*;
 
 @Documented
 @Inherited
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 @Target(ElementType.TYPE)
 public @interface Resource {}
@@ -18,16 +18,32 @@ package org.gwtproject.resources.client.impl;
 
 import elemental2.core.JsArray;
 import elemental2.core.JsObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import jsinterop.base.Js;
 import org.gwtproject.http.client.*;
 import org.gwtproject.resources.client.*;
 import org.gwtproject.safehtml.shared.SafeUri;
 import org.gwtproject.safehtml.shared.annotations.SuppressIsTrustedResourceUriCastCheck;
-import org.gwtproject.user.client.rpc.AsyncCallback;
 
-/** @author Dmitrii Tikhomirov Created by treblereel on 10/16/18. */
+/**
+ * Fetches its text from a JSON array file shared with the other resources of the bundle. Requests
+ * for the same file are coalesced into one, and the parsed array is kept for every resource that
+ * reads from it. When the generator provides a content hash, the file is also kept in the
+ * browser's Cache API and reused on later visits as long as the hash matches.
+ *
+ * @author Dmitrii Tikhomirov Created by treblereel on 10/16/18.
+ */
 public class ExternalTextResourcePrototype implements ExternalTextResource {
 
+  /** The parsed JSON arrays, by URL. */
+  private static final Map<String, JsArray<String>> parsedBundles = new HashMap<>();
+
+  /** The resources waiting for a JSON array that is being fetched, by URL. */
+  private static final Map<String, List<PendingText>> pendingRequests = new HashMap<>();
+
   /**
    * This is a reference to an array nominally created in the IRB that contains the
    * ExternalTextResource. It is intended to be client between all instances of the ETR that have a
@@ -37,38 +53,46 @@ public class ExternalTextResourcePrototype implements ExternalTextResource {
 
   private final int index;
 
-  /**
-   * Evaluate the JSON payload. The regular expression to validate the safety of the payload is
-   * taken from RFC 4627 (D. Crockford).
-   *
-   * @param data the raw JSON-encapsulated string bundle
-   * @return the evaluated JSON object, or <code>null</code> if there is an error.
-   */
+  /** The position of the text in the JSON array served at {@link #url}. */
+  private final int offset;
+
+  /** The hash of the content served at {@link #url}, or {@code null} to disable persistence. */
   private final String md5Hash;
 
   private final String name;
   private final SafeUri url;
 
   public ExternalTextResourcePrototype(String name, SafeUri url, TextResource[] cache, int index) {
-    this.name = name;
-    this.url = url;
-    this.cache = cache;
-    this.index = index;
-    this.md5Hash = null;
+    this(name, url, cache, index, index, null);
   }
 
   public ExternalTextResourcePrototype(
       String name, SafeUri url, TextResource[] cache, int index, String md5Hash) {
+    this(name, url, cache, index, index, md5Hash);
+  }
+
+  /**
+   * Creates a resource whose text is stored in a shard of the bundle's texts. The {@code index}
+   * addresses the cache shared by the whole bundle, while {@code offset} is the position of the
+   * text in the shard served at {@code url}.
+   */
+  public ExternalTextResourcePrototype(
+      String name, SafeUri url, TextResource[] cache, int index, int offset) {
+    this(name, url, cache, index, offset, null);
+  }
+
+  public ExternalTextResourcePrototype(
+      String name, SafeUri url, TextResource[] cache, int index, int offset, String md5Hash) {
     this.name = name;
     this.url = url;
     this.cache = cache;
     this.index = index;
+    this.offset = offset;
     this.md5Hash = md5Hash;
   }
 
   /**
-   * Evaluate the JSON payload. The regular expression to validate the safety of the payload is
-   * taken from RFC 4627 (D. Crockford).
+   * Evaluate the JSON payload.
    *
    * @param data the raw JSON-encapsulated string bundle
    * @return the evaluated JSON object, or <code>null</code> if there is an error.
@@ -80,12 +104,11 @@ public class ExternalTextResourcePrototype implements ExternalTextResource {
   /**
    * Extract the specified String from a JavaScriptObject that is array-like.
    *
-   * @param jso the JavaScriptObject returned from {@link #evalObject(String)}
+   * @param array the array returned from {@link #evalObject(String)}
    * @param index the index of the string to extract
    * @return the requested string, or <code>null</code> if it does not exist.
    */
-  private static String extractString(JsObject jso, int index) {
-    JsArray<String> array = Js.cast(jso);
+  private static String extractString(JsArray<String> array, int index) {
     if (array.length > index) {
       return array.getAt(index);
     }
@@ -97,7 +120,6 @@ public class ExternalTextResourcePrototype implements ExternalTextResource {
   }
 
   /** Possibly fire off an HTTPRequest for the text resource. */
-  @SuppressIsTrustedResourceUriCastCheck
   public void getText(ResourceCallback<TextResource> callback) throws ResourceException {
 
     // If we've already parsed the JSON bundle, short-circuit.
@@ -106,54 +128,60 @@ public class ExternalTextResourcePrototype implements ExternalTextResource {
       return;
     }
 
-    RequestBuilder rb = new RequestBuilder(RequestBuilder.GET, url.asString());
-    try {
-      rb.sendRequest("", new ExternalTextResourcePrototype.ETRCallback(callback));
-    } catch (RequestException e) {
-      throw new ResourceException(this, "Unable to initiate request for external resource", e);
-    }
-  }
-
-  /** Maps the HTTP callback onto the ResourceCallback. */
-  private class ETRCallback implements RequestCallback, AsyncCallback<JsObject> {
-    final ResourceCallback<TextResource> callback;
-
-    public ETRCallback(ResourceCallback<TextResource> callback) {
-      this.callback = callback;
+    String key = url.asString();
+    JsArray<String> bundle = parsedBundles.get(key);
+    if (bundle != null) {
+      callback.onSuccess(resolve(bundle));
+      return;
     }
 
-    // For RequestCallback
-    public void onError(Request request, Throwable exception) {
-      onFailure(exception);
+    // Join a request that is already in flight
+    List<PendingText> pending = pendingRequests.get(key);
+    if (pending != null) {
+      pending.add(new PendingText(this, callback));
+      return;
     }
+    pending = new ArrayList<>();
+    pending.add(new PendingText(this, callback));
+    pendingRequests.put(key, pending);
 
-    // For AsyncCallback
-    public void onFailure(Throwable exception) {
-      callback.onError(
-          new ResourceException(
-              ExternalTextResourcePrototype.this,
-              "Unable to retrieve external resource",
-              exception));
+    if (md5Hash != null && PersistentTextCache.isAvailable()) {
+      PersistentTextCache.get(
+          key,
+          md5Hash,
+          text -> {
+            JsArray<String> stored = text == null ? null : parseStoredBundle(text);
+            if (stored != null) {
+              onBundle(key, stored);
+              return;
+            }
+            try {
+              sendRequest();
+            } catch (RequestException e) {
+              onBundleError(key, "Unable to initiate request for external resource", e);
+            }
+          });
+      return;
     }
 
-    // For RequestCallback
-    public void onResponseReceived(Request request, final Response response) {
-      String responseText = response.getText();
-      // Call eval() on the object.
-      JsObject jso = evalObject(responseText);
-      onSuccess(jso);
+    try {
+      sendRequest();
+    } catch (RequestException e) {
+      pendingRequests.remove(key);
+      throw new ResourceException(this, "Unable to initiate request for external resource", e);
     }
+  }
 
-    // For AsyncCallback
-    public void onSuccess(JsObject jso) {
-      if (jso == null) {
-        callback.onError(
-            new ResourceException(ExternalTextResourcePrototype.this, "eval() returned null"));
-        return;
-      }
+  @SuppressIsTrustedResourceUriCastCheck
+  private void sendRequest() throws RequestException {
+    RequestBuilder rb = new RequestBuilder(RequestBuilder.GET, url.asString());
+    rb.sendRequest("", new ETRCallback(url.asString(), md5Hash));
+  }
 
-      // Populate the TextResponse cache array
-      final String resourceText = extractString(jso, index);
+  /** Returns the text resource of this prototype, populating the TextResource cache array. */
+  private TextResource resolve(JsArray<String> bundle) {
+    if (cache[index] == null) {
+      final String resourceText = extractString(bundle, offset);
       cache[index] =
           new TextResource() {
 
@@ -165,9 +193,104 @@ public class ExternalTextResourcePrototype implements ExternalTextResource {
               return resourceText;
             }
           };
+    }
+    return cache[index];
+  }
 
-      // Finish by invoking the callback
-      callback.onSuccess(cache[index]);
+  /**
+   * Parses the JSON array fetched from {@code key} and completes every pending resource. The text
+   * is stored in the persistent cache if {@code md5Hash} is not {@code null}. Whatever happens, the
+   * pending resources are removed so that a later call starts a new request.
+   */
+  private static void onBundleText(String key, String md5Hash, String text) {
+    JsArray<String> bundle;
+    try {
+      bundle = parseBundle(text);
+    } catch (RuntimeException e) {
+      onBundleError(key, "Unable to parse external resource", e);
+      return;
+    }
+    if (bundle == null) {
+      onBundleError(key, "eval() returned null", null);
+      return;
+    }
+
+    if (md5Hash != null && PersistentTextCache.isAvailable()) {
+      PersistentTextCache.put(key, md5Hash, text);
+    }
+    onBundle(key, bundle);
+  }
+
+  /** Returns the JSON array of a persisted bundle, or {@code null} if it can't be used. */
+  private static JsArray<String> parseStoredBundle(String text) {
+    try {
+      return parseBundle(text);
+    } catch (RuntimeException e) {
+      // A damaged entry is a miss, it is replaced once the bundle has been fetched again
+      return null;
+    }
+  }
+
+  private static JsArray<String> parseBundle(String text) {
+    JsObject jso = evalObject(text);
+    return jso == null ? null : Js.cast(jso);
+  }
+
+  /** Keeps the parsed bundle and completes every resource waiting for it. */
+  private static void onBundle(String key, JsArray<String> bundle) {
+    parsedBundles.put(key, bundle);
+    List<PendingText> pending = pendingRequests.remove(key);
+    if (pending != null) {
+      for (PendingText p : pending) {
+        p.callback.onSuccess(p.resource.resolve(bundle));
+      }
+    }
+  }
+
+  private static void onBundleError(String key, String message, Throwable exception) {
+    List<PendingText> pending = pendingRequests.remove(key);
+    if (pending != null) {
+      for (PendingText p : pending) {
+        p.callback.onError(new ResourceException(p.resource, message, exception));
+      }
+    }
+  }
+
+  /** A resource waiting for its JSON array. */
+  private static class PendingText {
+    final ExternalTextResourcePrototype resource;
+    final ResourceCallback<TextResource> callback;
+
+    PendingText(ExternalTextResourcePrototype resource, ResourceCallback<TextResource> callback) {
+      this.resource = resource;
+      this.callback = callback;
+    }
+  }
+
+  /** Maps the HTTP callback onto the pending ResourceCallbacks. */
+  private static class ETRCallback implements RequestCallback {
+    final String key;
+    final String md5Hash;
+
+    public ETRCallback(String key, String md5Hash) {
+      this.key = key;
+      this.md5Hash = md5Hash;
+    }
+
+    public void onError(Request request, Throwable exception) {
+      onBundleError(key, "Unable to retrieve external resource", exception);
+    }
+
+    public void onResponseReceived(Request request, final Response response) {
+      if (response.getStatusCode() != 200) {
+        // An error page is not a JSON array
+        onBundleError(
+            key,
+            "Unable to retrieve external resource, status " + response.getStatusCode(),
+            null);
+        return;
+      }
+      onBundleText(key, md5Hash, response.getText());
     }
   }
 }
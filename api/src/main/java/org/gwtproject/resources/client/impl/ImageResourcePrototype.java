@@ -26,8 +26,15 @@ import org.gwtproject.safehtml.shared.SafeUri;
  */
 public class ImageResourcePrototype implements ImageResource {
 
-  /** Marker class for bundled {@code ImageResourcePrototype}. */
+  /**
+   * A {@code ImageResourcePrototype} whose image is one part of a composite image, at the given
+   * left and top offsets.
+   */
   public static class Bundle extends ImageResourcePrototype {
+    /** A transparent 1x1 GIF, the composite image is shown as the background. */
+    private static final String CLEAR_IMAGE =
+        "data:image/gif;base64,R0lGODlhAQABAIAAAAAAAP///yH5BAEAAAAALAAAAAABAAEAAAIBRAA7";
+
     public Bundle(
         String name,
         SafeUri url,
@@ -39,6 +46,26 @@ public class ImageResourcePrototype implements ImageResource {
         boolean lossy) {
       super(name, url, left, top, width, height, animated, lossy);
     }
+
+    /** Returns an Image that only shows this part of the composite image. */
+    @Override
+    public Image getImage() {
+      Image image = (Image) document.createElement("img");
+      image.src = CLEAR_IMAGE;
+      image.name = getName();
+      image.width = getWidth();
+      image.height = getHeight();
+      image.style.setProperty(
+          "background",
+          "url(\""
+              + getSafeUri().asString()
+              + "\") no-repeat "
+              + -getLeft()
+              + "px "
+              + -getTop()
+              + "px");
+      return image;
+    }
   }
 
   private final boolean animated;
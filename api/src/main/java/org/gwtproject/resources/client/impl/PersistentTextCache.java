@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.client.impl;
+
+import static jsinterop.annotations.JsPackage.GLOBAL;
+
+import elemental2.dom.DomGlobal;
+import elemental2.promise.Promise;
+import jsinterop.annotations.JsType;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Keeps the JSON bundles of {@link ExternalTextResourcePrototype} in the browser's Cache API, so
+ * that repeat visits do not have to fetch them again. An entry is only used when it was stored for
+ * the same content hash; every failure of the underlying API is reported as a miss.
+ *
+ * <p>Callbacks run in a task of their own, outside of the promise chain, so that what they throw
+ * is not mistaken for a failure of the Cache API.
+ */
+final class PersistentTextCache {
+
+  private static final String CACHE_NAME = "gwt-resources-external-text";
+
+  /** Receives the cached text, or {@code null} if there is no valid entry. */
+  interface Callback {
+    void onResult(String text);
+  }
+
+  private PersistentTextCache() {}
+
+  /** Returns {@code true} if the browser exposes the Cache API to this page. */
+  static boolean isAvailable() {
+    try {
+      return Js.global().has("caches") && Js.global().get("caches") != null;
+    } catch (Exception e) {
+      // Some browsers throw a SecurityError for opaque origins
+      return false;
+    }
+  }
+
+  /** Looks up the text stored for {@code url}, provided it was stored with {@code hash}. */
+  static void get(String url, String hash, Callback callback) {
+    String prefix = hash + "\n";
+    caches()
+        .open(CACHE_NAME)
+        .then(cache -> cache.match(url))
+        .then(response -> response == null ? Promise.resolve((String) null) : response.text())
+        // Only the Cache API calls above may turn into a miss
+        .<String>catch_(error -> null)
+        .then(
+            text -> {
+              String valid =
+                  text != null && text.startsWith(prefix) ? text.substring(prefix.length()) : null;
+              DomGlobal.setTimeout(ignored -> callback.onResult(valid), 0);
+              return null;
+            });
+  }
+
+  /** Stores the text of {@code url} along with the hash it must be validated against. */
+  static void put(String url, String hash, String text) {
+    JsPropertyMap<Object> init = JsPropertyMap.of();
+    init.set("headers", JsPropertyMap.of("Content-Type", "text/plain"));
+    NativeResponse response = new NativeResponse(hash + "\n" + text, init);
+    caches()
+        .open(CACHE_NAME)
+        .then(cache -> cache.put(url, response))
+        .catch_(error -> null);
+  }
+
+  private static NativeCacheStorage caches() {
+    return Js.uncheckedCast(Js.global().get("caches"));
+  }
+
+  @JsType(isNative = true, namespace = GLOBAL, name = "CacheStorage")
+  interface NativeCacheStorage {
+    Promise<NativeCache> open(String cacheName);
+  }
+
+  @JsType(isNative = true, namespace = GLOBAL, name = "Cache")
+  interface NativeCache {
+    Promise<NativeResponse> match(String request);
+
+    Promise<Object> put(String request, NativeResponse response);
+  }
+
+  @JsType(isNative = true, namespace = GLOBAL, name = "Response")
+  static class NativeResponse {
+    NativeResponse(String body, JsPropertyMap<Object> init) {}
+
+    native Promise<String> text();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.client.impl;
+
+import static elemental2.dom.DomGlobal.document;
+
+import elemental2.core.Function;
+import elemental2.dom.DomGlobal;
+import elemental2.dom.HTMLLinkElement;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import jsinterop.annotations.JsFunction;
+import jsinterop.base.Js;
+import org.gwtproject.resources.client.ClientBundleWithPrefetch.PrefetchCallback;
+import org.gwtproject.resources.client.DataResource;
+import org.gwtproject.resources.client.ExternalTextResource;
+import org.gwtproject.resources.client.ResourceCallback;
+import org.gwtproject.resources.client.ResourceException;
+import org.gwtproject.resources.client.ResourcePrototype;
+import org.gwtproject.resources.client.TextResource;
+
+/** Implements {@link org.gwtproject.resources.client.ClientBundleWithPrefetch#prefetch}. */
+public final class ResourcePrefetcher {
+
+  private ResourcePrefetcher() {}
+
+  /**
+   * Prefetches the given resources of a bundle. Requests for the same URL are coalesced by {@link
+   * ExternalTextResourcePrototype}, so a bundle whose texts share one file only issues one request.
+   */
+  public static void prefetch(ResourcePrototype[] resources, PrefetchCallback callback) {
+    Set<String> hints = new LinkedHashSet<>();
+    int texts = 0;
+    for (ResourcePrototype resource : resources) {
+      if (resource instanceof ExternalTextResource) {
+        texts++;
+      } else if (resource instanceof DataResource) {
+        String url = ((DataResource) resource).getSafeUri().asString();
+        if (!url.startsWith("data:")) {
+          hints.add(url);
+        }
+      }
+    }
+
+    if (!hints.isEmpty()) {
+      runWhenIdle(() -> addPrefetchHints(hints));
+    }
+
+    Completion completion = new Completion(texts, callback);
+    for (ResourcePrototype resource : resources) {
+      if (resource instanceof ExternalTextResource) {
+        try {
+          ((ExternalTextResource) resource).getText(completion);
+        } catch (ResourceException e) {
+          completion.onError(e);
+        }
+      }
+    }
+    completion.check();
+  }
+
+  private static void addPrefetchHints(Set<String> urls) {
+    for (String url : urls) {
+      HTMLLinkElement link = (HTMLLinkElement) document.createElement("link");
+      link.rel = "prefetch";
+      link.href = url;
+      document.head.appendChild(link);
+    }
+  }
+
+  private static void runWhenIdle(IdleTask task) {
+    if (Js.global().has("requestIdleCallback")) {
+      Function requestIdleCallback = Js.uncheckedCast(Js.global().get("requestIdleCallback"));
+      requestIdleCallback.call(DomGlobal.window, task);
+    } else {
+      DomGlobal.setTimeout(ignored -> task.run(), 0);
+    }
+  }
+
+  @JsFunction
+  private interface IdleTask {
+    void run();
+  }
+
+  /** Counts down the pending texts and notifies the callback once. */
+  private static class Completion implements ResourceCallback<TextResource> {
+    private final PrefetchCallback callback;
+    private int pending;
+    private boolean done;
+
+    Completion(int pending, PrefetchCallback callback) {
+      this.pending = pending;
+      this.callback = callback;
+    }
+
+    @Override
+    public void onError(ResourceException e) {
+      if (!done) {
+        done = true;
+        if (callback != null) {
+          callback.onError(e);
+        }
+      }
+    }
+
+    @Override
+    public void onSuccess(TextResource resource) {
+      pending--;
+      check();
+    }
+
+    void check() {
+      if (!done && pending == 0) {
+        done = true;
+        if (callback != null) {
+          callback.onSuccess();
+        }
+      }
+    }
+  }
+}
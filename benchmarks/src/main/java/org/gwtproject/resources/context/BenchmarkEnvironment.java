@@ -0,0 +1,300 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import com.sun.source.util.JavacTask;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.logger.PrintWriterTreeLogger;
+
+/**
+ * Everything a ResourceGenerator needs to run outside of an annotation processor: the benchmark
+ * bundle, compiled in memory so that its elements can be inspected, an {@link
+ * InMemoryGeneratorContext} and the resource files the bundle refers to.
+ *
+ * <p>The bundle declares, for every fixture size, a GSS and a CSS accessor returning a CssResource
+ * with {@link Fixtures#CLASS_COUNT} style classes and a TextResource accessor, and two image
+ * accessors.
+ *
+ * <p>Requires a JDK, the bundle is compiled with the javac of the running JVM.
+ */
+public final class BenchmarkEnvironment implements AutoCloseable {
+  public static final String PACKAGE = "org.gwtproject.resources.benchmarks";
+  public static final String BUNDLE = PACKAGE + ".BenchmarkBundle";
+  public static final String[] SIZES = {"small", "medium", "huge"};
+
+  /** Reports the errors of the generators, which would otherwise fail without a message. */
+  public static final TreeLogger LOGGER = createLogger();
+
+  private final Path root;
+  private final AptContext aptContext;
+  private final TypeElement bundle;
+  private final InMemoryGeneratorContext generatorContext;
+  private final ForkJoinPool pool = new ForkJoinPool();
+
+  private BenchmarkEnvironment(Path root, Elements elements, Types types, String... properties) {
+    this.root = root;
+    this.aptContext = new AptContext(new Environment(elements, types), new Round());
+    this.bundle = elements.getTypeElement(BUNDLE);
+    this.generatorContext =
+        new InMemoryGeneratorContext(
+            aptContext,
+            new InMemoryGeneratorContext.FixtureResourceOracle(root),
+            new InMemoryGeneratorContext.MapPropertyOracle(properties));
+  }
+
+  /**
+   * Writes the fixtures and compiles the benchmark bundle.
+   *
+   * @param properties configuration properties that override the defaults, as <code>name=value
+   *     </code>
+   */
+  public static BenchmarkEnvironment create(String... properties) {
+    try {
+      Path root = Files.createTempDirectory("gwt-resources-benchmarks");
+      Path dir = root.resolve(PACKAGE.replace('.', '/'));
+      Files.createDirectories(dir);
+      int[] rules = {Fixtures.SMALL_RULES, Fixtures.MEDIUM_RULES, Fixtures.HUGE_RULES};
+      int[] texts = {Fixtures.SMALL_TEXT, Fixtures.MEDIUM_TEXT, Fixtures.HUGE_TEXT};
+      for (int i = 0; i < SIZES.length; i++) {
+        byte[] stylesheet = Fixtures.stylesheet(rules[i]).getBytes("UTF-8");
+        Files.write(dir.resolve(SIZES[i] + ".gss"), stylesheet);
+        Files.write(dir.resolve(SIZES[i] + ".css"), stylesheet);
+        Files.write(dir.resolve(SIZES[i] + ".txt"), Fixtures.text(texts[i]).getBytes("UTF-8"));
+      }
+      Files.write(dir.resolve("small.png"), Fixtures.png(32));
+      Files.write(dir.resolve("large.png"), Fixtures.png(512));
+
+      JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      if (compiler == null) {
+        throw new IllegalStateException("The benchmarks must be run with a JDK");
+      }
+      DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+      List<String> options =
+          Arrays.asList("-proc:none", "-classpath", System.getProperty("java.class.path"));
+      JavacTask task =
+          (JavacTask)
+              compiler.getTask(
+                  null,
+                  null,
+                  diagnostics,
+                  options,
+                  null,
+                  Collections.singletonList(new Source(BUNDLE, bundleSource())));
+      task.analyze();
+      for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+          throw new IllegalStateException(diagnostic.toString());
+        }
+      }
+      return new BenchmarkEnvironment(root, task.getElements(), task.getTypes(), properties);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String bundleSource() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("package ").append(PACKAGE).append(";\n\n");
+    sb.append("import org.gwtproject.resources.client.ClientBundle;\n");
+    sb.append("import org.gwtproject.resources.client.CssResource;\n");
+    sb.append("import org.gwtproject.resources.client.ImageResource;\n");
+    sb.append("import org.gwtproject.resources.client.TextResource;\n\n");
+    sb.append("public interface BenchmarkBundle extends ClientBundle {\n");
+    for (String size : SIZES) {
+      sb.append("  @Source(\"").append(size).append(".gss\") Style ").append(size);
+      sb.append("Gss();\n");
+      sb.append("  @Source(\"").append(size).append(".css\") Style ").append(size);
+      sb.append("Css();\n");
+      sb.append("  @Source(\"").append(size).append(".txt\") TextResource ").append(size);
+      sb.append("Text();\n");
+    }
+    sb.append("  @Source(\"small.png\") ImageResource smallImage();\n");
+    sb.append("  @Source(\"large.png\") ImageResource largeImage();\n\n");
+    sb.append("  interface Style extends CssResource {\n");
+    for (int i = 0; i < Fixtures.CLASS_COUNT; i++) {
+      sb.append("    String ").append(Fixtures.className(i)).append("();\n");
+    }
+    sb.append("  }\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  private static TreeLogger createLogger() {
+    PrintWriterTreeLogger logger = new PrintWriterTreeLogger();
+    logger.setMaxDetail(TreeLogger.WARN);
+    return logger;
+  }
+
+  public TypeElement getBundle() {
+    return bundle;
+  }
+
+  public ExecutableElement getMethod(String name) {
+    for (ExecutableElement method : ElementFilter.methodsIn(bundle.getEnclosedElements())) {
+      if (method.getSimpleName().contentEquals(name)) {
+        return method;
+      }
+    }
+    throw new IllegalArgumentException("No method " + name + " in " + BUNDLE);
+  }
+
+  public InMemoryGeneratorContext getGeneratorContext() {
+    return generatorContext;
+  }
+
+  /**
+   * Returns a new inlining ResourceContext for the benchmark bundle, with its own cache, as used
+   * by a single generation of the bundle. The contexts share the pool of the environment.
+   */
+  public AbstractResourceContext createResourceContext() {
+    InlineResourceContext context =
+        new InlineResourceContext(LOGGER, generatorContext, bundle, new ClientBundleContext());
+    context.setSimpleSourceName("BenchmarkBundleImpl");
+    context.setPool(pool);
+    return context;
+  }
+
+  @Override
+  public void close() {
+    pool.shutdown();
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static class Source extends SimpleJavaFileObject {
+    private final String content;
+
+    Source(String className, String content) {
+      super(URI.create("string:///" + className.replace('.', '/') + ".java"), Kind.SOURCE);
+      this.content = content;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return content;
+    }
+  }
+
+  /** Only the element and type utilities are used by the generators. */
+  private static class Environment implements ProcessingEnvironment {
+    private final Elements elements;
+    private final Types types;
+
+    Environment(Elements elements, Types types) {
+      this.elements = elements;
+      this.types = types;
+    }
+
+    @Override
+    public Map<String, String> getOptions() {
+      return new LinkedHashMap<>();
+    }
+
+    @Override
+    public Messager getMessager() {
+      return null;
+    }
+
+    @Override
+    public Filer getFiler() {
+      return null;
+    }
+
+    @Override
+    public Elements getElementUtils() {
+      return elements;
+    }
+
+    @Override
+    public Types getTypeUtils() {
+      return types;
+    }
+
+    @Override
+    public SourceVersion getSourceVersion() {
+      return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public Locale getLocale() {
+      return Locale.ROOT;
+    }
+  }
+
+  private static class Round implements RoundEnvironment {
+    @Override
+    public boolean processingOver() {
+      return false;
+    }
+
+    @Override
+    public boolean errorRaised() {
+      return false;
+    }
+
+    @Override
+    public Set<? extends Element> getRootElements() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<? extends Element> getElementsAnnotatedWith(TypeElement a) {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<? extends Element> getElementsAnnotatedWith(Class<? extends Annotation> a) {
+      return Collections.emptySet();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import java.util.concurrent.TimeUnit;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inlines resources as base64 data: URLs with {@link InlineResourceContext#deploy}. The largest
+ * size is just below the limit past which the resource would be deployed as a file instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeployBenchmark {
+
+  @Param({"1024", "16384", "48000"})
+  public int size;
+
+  private BenchmarkEnvironment environment;
+  private AbstractResourceContext context;
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    environment = BenchmarkEnvironment.create();
+    context = environment.createResourceContext();
+    data = Fixtures.bytes(size);
+  }
+
+  @TearDown
+  public void tearDown() {
+    environment.close();
+  }
+
+  @Benchmark
+  public String inline() throws UnableToCompleteException {
+    return context.deploy("data.bin", "application/octet-stream", data, false);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/** Generates the synthetic stylesheets, images and text the benchmarks run on. */
+public final class Fixtures {
+  /** The number of style classes declared by the CssResource of the benchmark bundle. */
+  public static final int CLASS_COUNT = 50;
+
+  public static final int SMALL_RULES = CLASS_COUNT;
+  public static final int MEDIUM_RULES = 1_000;
+  public static final int HUGE_RULES = 20_000;
+
+  /** The lengths of the TextResources, only the small one fits in a single string literal. */
+  public static final int SMALL_TEXT = 1_024;
+
+  public static final int MEDIUM_TEXT = 100_000;
+  public static final int HUGE_TEXT = 1_048_576;
+
+  private Fixtures() {}
+
+  public static String className(int index) {
+    return "style" + index;
+  }
+
+  /**
+   * Returns a stylesheet with the given number of rules that is valid both as CSS and GSS. Every
+   * style class is used, and some selectors are repeated so that the merging passes have work to
+   * do.
+   */
+  public static String stylesheet(int rules) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rules; i++) {
+      sb.append('.').append(className(i % CLASS_COUNT));
+      if (i % 3 == 0) {
+        sb.append(" .").append(className((i * 7) % CLASS_COUNT));
+      }
+      if (i % 5 == 0) {
+        sb.append(":hover");
+      }
+      sb.append(" {\n");
+      sb.append("  color: #").append(String.format("%06x", (i * 2654435761L) & 0xffffff));
+      sb.append(";\n");
+      sb.append("  padding: ").append(i % 16).append("px;\n");
+      if (i % 2 == 0) {
+        sb.append("  margin: 0 auto;\n");
+      }
+      sb.append("}\n");
+    }
+    return sb.toString();
+  }
+
+  /** Returns a lossless PNG of the given size. */
+  public static byte[] png(int size) {
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2d = image.createGraphics();
+    g2d.setPaint(new GradientPaint(0, 0, Color.RED, size, size, new Color(0, 0, 255, 128)));
+    g2d.fillRect(0, 0, size, size);
+    g2d.dispose();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, "png", out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /** Returns random bytes, seeded so every run sees the same data. */
+  public static byte[] bytes(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+
+  /** Returns text of the given length with the characters Generator.escape has to escape. */
+  public static String text(int length) {
+    StringBuilder sb = new StringBuilder(length);
+    Random random = new Random(length);
+    while (sb.length() < length) {
+      int word = random.nextInt(12);
+      for (int i = 0; i < word; i++) {
+        sb.append((char) ('a' + random.nextInt(26)));
+      }
+      switch (random.nextInt(10)) {
+        case 0:
+          sb.append('\n');
+          break;
+        case 1:
+          sb.append('"');
+          break;
+        case 2:
+          sb.append('\\');
+          break;
+        default:
+          sb.append(' ');
+      }
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.client.ClientBundle.Source;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_CACHE_URL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_ENABLE_INLINING;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_ENABLE_RENAMING;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INLINE_BUDGET;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INLINING_POLICY;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_THREADS;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_ALLOWED_AT_RULES;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_ALLOWED_FUNCTIONS;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_CONVERSION_MODE;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_ENABLE_GSS;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_MERGE_ENABLED;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_OBFUSCATION_PREFIX;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_RESERVED_CLASS_PREFIXES;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_STYLE;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_GSS_DEFAULT_IN_UIBINDER;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_IMAGE_RESOURCE_ATLAS;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_IMAGE_RESOURCE_ATLAS_MAX_SIZE;
+
+import com.google.auto.common.MoreElements;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.ExecutableElement;
+import org.gwtproject.resources.ext.ConfigurationProperty;
+import org.gwtproject.resources.ext.DefaultConfigurationProperty;
+import org.gwtproject.resources.ext.DefaultInliningPolicy;
+import org.gwtproject.resources.ext.GeneratorContext;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContentCache;
+import org.gwtproject.resources.ext.ResourceOracle;
+import org.gwtproject.resources.ext.SelectionProperty;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+
+/**
+ * A GeneratorContext that keeps everything it is given in memory: generated sources and deployed
+ * resources are written to buffers which are then dropped, so that the benchmarks only measure
+ * the generators.
+ */
+public class InMemoryGeneratorContext implements GeneratorContext {
+  private final AptContext aptContext;
+  private final ResourceOracle resourceOracle;
+  private final PropertyOracle propertyOracle;
+
+  InMemoryGeneratorContext(
+      AptContext aptContext, ResourceOracle resourceOracle, PropertyOracle propertyOracle) {
+    this.aptContext = aptContext;
+    this.resourceOracle = resourceOracle;
+    this.propertyOracle = propertyOracle;
+  }
+
+  @Override
+  public boolean checkRebindRuleAvailable(String sourceTypeName) {
+    return false;
+  }
+
+  @Override
+  public void commit(TreeLogger logger, PrintWriter pw) {}
+
+  @Override
+  public void commitResource(TreeLogger logger, OutputStream os) {}
+
+  @Override
+  public PropertyOracle getPropertyOracle() {
+    return propertyOracle;
+  }
+
+  @Override
+  public ResourceOracle getResourcesOracle() {
+    return resourceOracle;
+  }
+
+  /** A new cache every time, so that each benchmark invocation reads the fixtures again. */
+  @Override
+  public ResourceContentCache getResourceContentCache() {
+    return new ResourceContentCache();
+  }
+
+  @Override
+  public AptContext getAptContext() {
+    return aptContext;
+  }
+
+  @Override
+  public PrintWriter tryCreate(TreeLogger logger, String packageName, String simpleName) {
+    return new PrintWriter(new StringWriter());
+  }
+
+  @Override
+  public OutputStream tryCreateResource(TreeLogger logger, String partialPath) {
+    return new ByteArrayOutputStream();
+  }
+
+  /** Finds the resources of the benchmark bundle in the directory the fixtures were written to. */
+  static class FixtureResourceOracle implements ResourceOracle {
+    private final Path root;
+
+    FixtureResourceOracle(Path root) {
+      this.root = root;
+    }
+
+    @Override
+    public URL[] findResources(CharSequence packageName, CharSequence[] pathName) {
+      List<URL> result = new ArrayList<>();
+      for (CharSequence path : pathName) {
+        URL resource = findResource(packageName, path);
+        if (resource == null) {
+          resource = findResource(path);
+        }
+        if (resource != null) {
+          result.add(resource);
+        }
+      }
+      return result.isEmpty() ? null : result.toArray(new URL[0]);
+    }
+
+    @Override
+    public URL findResource(CharSequence pkg, CharSequence relativeName) {
+      String path = pkg.length() == 0 ? "" : pkg.toString().replace('.', '/') + '/';
+      return findResource(path + relativeName);
+    }
+
+    @Override
+    public URL findResource(CharSequence fullPath) {
+      File file = root.resolve(fullPath.toString()).toFile();
+      if (!file.isFile()) {
+        return null;
+      }
+      try {
+        return file.toURI().toURL();
+      } catch (MalformedURLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public URL[] findResources(TreeLogger logger, ExecutableElement method)
+        throws UnableToCompleteException {
+      return findResources(logger, method, new String[0]);
+    }
+
+    @Override
+    public URL[] findResources(
+        TreeLogger logger, ExecutableElement method, String[] defaultSuffixes)
+        throws UnableToCompleteException {
+      String pkg = MoreElements.getPackage(method).getQualifiedName().toString();
+      Source source = method.getAnnotation(Source.class);
+      URL[] toReturn =
+          source == null
+              ? findResources(pkg, suffixed(method, defaultSuffixes))
+              : findResources(pkg, source.value());
+      if (toReturn == null) {
+        logger.log(TreeLogger.ERROR, "Resource for " + method + " not found");
+        throw new UnableToCompleteException();
+      }
+      return toReturn;
+    }
+
+    private static String[] suffixed(ExecutableElement method, String[] suffixes) {
+      String[] toReturn = new String[suffixes.length];
+      for (int i = 0; i < suffixes.length; i++) {
+        toReturn[i] = method.getSimpleName() + suffixes[i];
+      }
+      return toReturn;
+    }
+  }
+
+  /**
+   * Holds the configuration properties the generators read, with the defaults of {@link
+   * org.gwtproject.resources.rg.resource.ConfigurationProperties}. No selection property is
+   * defined.
+   */
+  static class MapPropertyOracle implements PropertyOracle {
+    private final Map<String, List<String>> properties = new HashMap<>();
+
+    MapPropertyOracle(String... overrides) {
+      properties.put(KEY_CLIENT_BUNDLE_ENABLE_INLINING, Arrays.asList("true"));
+      properties.put(KEY_CLIENT_BUNDLE_ENABLE_RENAMING, Arrays.asList("true"));
+      properties.put(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE, Arrays.asList("65536"));
+      properties.put(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE, new ArrayList<>());
+      properties.put(KEY_CLIENT_BUNDLE_INLINE_BUDGET, Arrays.asList("1048576"));
+      properties.put(
+          KEY_CLIENT_BUNDLE_INLINING_POLICY,
+          Arrays.asList(DefaultInliningPolicy.class.getCanonicalName()));
+      properties.put(KEY_CLIENT_BUNDLE_CACHE_URL, Arrays.asList("/gwt-cache/"));
+      properties.put(
+          KEY_CLIENT_BUNDLE_THREADS,
+          Arrays.asList(String.valueOf(Runtime.getRuntime().availableProcessors())));
+      properties.put(KEY_IMAGE_RESOURCE_ATLAS, Arrays.asList("false"));
+      properties.put(KEY_IMAGE_RESOURCE_ATLAS_MAX_SIZE, Arrays.asList("2048"));
+      properties.put(KEY_CSS_RESOURCE_ALLOWED_FUNCTIONS, new ArrayList<>());
+      properties.put(KEY_CSS_RESOURCE_ALLOWED_AT_RULES, Arrays.asList("-moz-document", "supports"));
+      properties.put(KEY_GSS_DEFAULT_IN_UIBINDER, Arrays.asList("false"));
+      properties.put(KEY_CSS_RESOURCE_MERGE_ENABLED, Arrays.asList("true"));
+      properties.put(KEY_CSS_RESOURCE_ENABLE_GSS, Arrays.asList("true"));
+      properties.put(KEY_CSS_RESOURCE_CONVERSION_MODE, Arrays.asList("off"));
+      properties.put(KEY_CSS_RESOURCE_STYLE, Arrays.asList("obf"));
+      properties.put(KEY_CSS_RESOURCE_OBFUSCATION_PREFIX, Arrays.asList("default"));
+      properties.put(KEY_CSS_RESOURCE_RESERVED_CLASS_PREFIXES, Arrays.asList("gwt-"));
+      for (String override : overrides) {
+        int index = override.indexOf('=');
+        properties.put(
+            override.substring(0, index), Arrays.asList(override.substring(index + 1).split(" ")));
+      }
+    }
+
+    @Override
+    public ConfigurationProperty getConfigurationProperty(TreeLogger logger, String propertyName)
+        throws UnableToCompleteException {
+      List<String> values = properties.get(propertyName);
+      if (values == null) {
+        logger.log(TreeLogger.ERROR, "Unable to get configuration property : " + propertyName);
+        throw new UnableToCompleteException();
+      }
+      return new DefaultConfigurationProperty(propertyName, new ArrayList<>(values));
+    }
+
+    @Override
+    public SelectionProperty getSelectionProperty(TreeLogger logger, String propertyName)
+        throws UnableToCompleteException {
+      logger.log(TreeLogger.ERROR, "Unable to get selection property : " + propertyName);
+      throw new UnableToCompleteException();
+    }
+  }
+}
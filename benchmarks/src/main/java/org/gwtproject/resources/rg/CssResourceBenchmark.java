@@ -0,0 +1,86 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_ENABLE_GSS;
+
+import java.util.concurrent.TimeUnit;
+import javax.lang.model.element.ExecutableElement;
+import org.gwtproject.resources.context.AbstractResourceContext;
+import org.gwtproject.resources.context.BenchmarkEnvironment;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generates a CssResource from a stylesheet with the legacy CSS pipeline, GSS disabled: parsing,
+ * then the visitor chain of {@code CssResourceGenerator.optimize} and the code generation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CssResourceBenchmark {
+
+  @Param({"small", "medium", "huge"})
+  public String size;
+
+  private BenchmarkEnvironment environment;
+  private ExecutableElement method;
+
+  @Setup
+  public void setUp() {
+    environment = BenchmarkEnvironment.create(KEY_CSS_RESOURCE_ENABLE_GSS + "=false");
+    method = environment.getMethod(size + "Css");
+  }
+
+  @TearDown
+  public void tearDown() {
+    environment.close();
+  }
+
+  @Benchmark
+  public String parseAndOptimize() throws UnableToCompleteException {
+    return generate(environment, method);
+  }
+
+  /** Runs a new CssResourceGenerator over a single method, the way a bundle generation does. */
+  static String generate(BenchmarkEnvironment environment, ExecutableElement method)
+      throws UnableToCompleteException {
+    TreeLogger logger = BenchmarkEnvironment.LOGGER;
+    AbstractResourceContext context = environment.createResourceContext();
+    CssResourceGenerator generator = new CssResourceGenerator();
+    context.setCurrentResourceGenerator(generator);
+    generator.init(logger, context);
+    generator.prepare(logger, context, method);
+    generator.createFields(logger, context, null);
+    return generator.createAssignment(logger, context, method);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.lang.model.element.ExecutableElement;
+import org.gwtproject.resources.context.AbstractResourceContext;
+import org.gwtproject.resources.context.BenchmarkEnvironment;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.ImageResourceGenerator.ImageRect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes and re-encodes images. {@link ImageResourceGenerator#prepare} reads the image with
+ * {@code addImage} and tries to re-compress it on the generator's pool, {@link
+ * ImageResourceGenerator#toPng} only encodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageResourceBenchmark {
+
+  @Param({"small", "large"})
+  public String image;
+
+  private BenchmarkEnvironment environment;
+  private ExecutableElement method;
+  private AbstractResourceContext context;
+  private ImageResourceGenerator generator;
+  private ImageRect rect;
+
+  @Setup
+  public void setUp() throws IOException, UnableToCompleteException {
+    environment = BenchmarkEnvironment.create();
+    method = environment.getMethod(image + "Image");
+    context = environment.createResourceContext();
+    generator = new ImageResourceGenerator();
+    context.setCurrentResourceGenerator(generator);
+    generator.init(BenchmarkEnvironment.LOGGER, context);
+
+    rect =
+        new ImageRect(
+            image,
+            ImageIO.read(
+                environment
+                    .getGeneratorContext()
+                    .getResourcesOracle()
+                    .findResources(BenchmarkEnvironment.LOGGER, method)[0]));
+  }
+
+  @TearDown
+  public void tearDown() {
+    environment.close();
+  }
+
+  @Benchmark
+  public void addImage() throws UnableToCompleteException {
+    generator.prepare(BenchmarkEnvironment.LOGGER, context, method);
+    generator.collectPreparedImages(BenchmarkEnvironment.LOGGER);
+  }
+
+  @Benchmark
+  public byte[] toPng() throws UnableToCompleteException {
+    return ImageResourceGenerator.toPng(BenchmarkEnvironment.LOGGER, rect);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.lang.model.element.ExecutableElement;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.gwtproject.resources.client.TextResource;
+import org.gwtproject.resources.context.AbstractResourceContext;
+import org.gwtproject.resources.context.BenchmarkEnvironment;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generates a TextResource, and reads the text of the generated class. Texts that do not fit in a
+ * single string literal are assembled from chunks by the generated {@code getText()}:
+ *
+ * <ul>
+ *   <li>{@code generate} runs {@link TextResourceGenerator} over the accessor,
+ *   <li>{@code getText} reads the text of the same resource again, which is assembled once,
+ *   <li>{@code getTextOfNewResource} reads the text of a new instance of the generated class,
+ *       which assembles the text on every call, as it was before the text was kept.
+ * </ul>
+ *
+ * The generated class is compiled with the javac of the running JVM, so this measures the JVM and
+ * not the browser, but the work saved is the same.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextResourceBenchmark {
+  private static final String HOLDER = BenchmarkEnvironment.PACKAGE + ".GeneratedText";
+
+  @Param({"small", "medium", "huge"})
+  public String size;
+
+  private BenchmarkEnvironment environment;
+  private ExecutableElement method;
+  private Path classes;
+  private Supplier<TextResource> generated;
+  private TextResource resource;
+
+  @Setup
+  public void setUp() throws Exception {
+    environment = BenchmarkEnvironment.create();
+    method = environment.getMethod(size + "Text");
+    classes = Files.createTempDirectory("gwt-resources-text-benchmark");
+    generated = compile(generate());
+    resource = generated.get();
+  }
+
+  @TearDown
+  public void tearDown() {
+    environment.close();
+    Util.recursiveDelete(classes.toFile(), false);
+  }
+
+  @Benchmark
+  public String generate() throws UnableToCompleteException {
+    TreeLogger logger = BenchmarkEnvironment.LOGGER;
+    AbstractResourceContext context = environment.createResourceContext();
+    TextResourceGenerator generator = new TextResourceGenerator();
+    context.setCurrentResourceGenerator(generator);
+    generator.init(logger, context);
+    generator.prepare(logger, context, method);
+    return generator.createAssignment(logger, context, method);
+  }
+
+  @Benchmark
+  public String getText() {
+    return resource.getText();
+  }
+
+  @Benchmark
+  public String getTextOfNewResource() {
+    return generated.get().getText();
+  }
+
+  /** Compiles the expression created by the generator into a factory of the resource. */
+  @SuppressWarnings("unchecked")
+  private Supplier<TextResource> compile(String assignment) throws Exception {
+    String simpleName = HOLDER.substring(HOLDER.lastIndexOf('.') + 1);
+    File source = classes.resolve(simpleName + ".java").toFile();
+    String content =
+        "package "
+            + BenchmarkEnvironment.PACKAGE
+            + ";\n\n"
+            + "public class "
+            + simpleName
+            + " implements java.util.function.Supplier<"
+            + TextResource.class.getName()
+            + "> {\n"
+            + "  public "
+            + TextResource.class.getName()
+            + " get() {\n"
+            + "    return "
+            + assignment
+            + ";\n"
+            + "  }\n"
+            + "}\n";
+    if (!Util.writeStringAsFile(source, content)) {
+      throw new IllegalStateException("Unable to write " + source);
+    }
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(null, null, null)) {
+      boolean compiled =
+          compiler
+              .getTask(
+                  null,
+                  fileManager,
+                  null,
+                  Arrays.asList(
+                      "-proc:none",
+                      "-classpath",
+                      System.getProperty("java.class.path"),
+                      "-d",
+                      classes.toString()),
+                  null,
+                  fileManager.getJavaFileObjects(source))
+              .call();
+      if (!compiled) {
+        throw new IllegalStateException("Unable to compile the generated TextResource");
+      }
+    }
+    ClassLoader loader =
+        new URLClassLoader(
+            new URL[] {classes.toUri().toURL()}, TextResourceBenchmark.class.getClassLoader());
+    return (Supplier<TextResource>)
+        loader.loadClass(HOLDER).asSubclass(Supplier.class).getDeclaredConstructor().newInstance();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg.css;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.gwtproject.resources.context.BenchmarkEnvironment;
+import org.gwtproject.resources.context.Fixtures;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.css.ast.CssStylesheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the rule merging visitors of the legacy CSS pipeline over stylesheets of growing size. The
+ * time per rule should stay about the same from one size to the next.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeRulesBenchmark {
+
+  @Param({"1000", "5000", "20000"})
+  public int rules;
+
+  private Path file;
+  private CssStylesheet sheet;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = Files.createTempFile("merge-rules", ".css");
+    Files.write(file, Fixtures.stylesheet(rules).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** The visitors modify the stylesheet, so every invocation gets a freshly parsed one. */
+  @Setup(Level.Invocation)
+  public void parse() throws IOException, UnableToCompleteException {
+    sheet = GenerateCssAst.exec(BenchmarkEnvironment.LOGGER, file.toUri().toURL());
+    new SplitRulesVisitor().accept(sheet);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public CssStylesheet mergeIdenticalSelectors() {
+    new MergeIdenticalSelectorsVisitor().accept(sheet);
+    return sheet;
+  }
+
+  @Benchmark
+  public CssStylesheet mergeIdenticalSelectorsAndContent() {
+    new MergeIdenticalSelectorsVisitor().accept(sheet);
+    new MergeRulesByContentVisitor().accept(sheet);
+    return sheet;
+  }
+}
@@ -19,6 +19,7 @@ import com.google.gwt.junit.tools.GWTTestSuite;
 import junit.framework.Test;
 import org.gwtproject.resources.client.*;
 import org.gwtproject.resources.client.gss.*;
+import org.gwtproject.resources.client.impl.PersistentTextCacheTest;
 
 /** Test suite for SafeHtml GWTTestCases. */
 public class ResourcesGwtSuite {
@@ -32,6 +33,7 @@ public class ResourcesGwtSuite {
     suite.addTestSuite(ExternalTextResourceTest.class);
     suite.addTestSuite(ImageResourceTest.class);
     suite.addTestSuite(NestedBundleTest.class);
+    suite.addTestSuite(PersistentTextCacheTest.class);
     suite.addTestSuite(TextResourceTest.class);
     suite.addTestSuite(CSSResourceTest.class);
     suite.addTestSuite(CSSResourceWithGSSTest.class);
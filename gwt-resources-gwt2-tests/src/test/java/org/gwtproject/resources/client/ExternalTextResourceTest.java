@@ -15,7 +15,10 @@
  */
 package org.gwtproject.resources.client;
 
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.junit.client.GWTTestCase;
+import org.gwtproject.resources.client.impl.ExternalTextResourcePrototype;
+import org.gwtproject.safehtml.shared.UriUtils;
 
 /** Tests for ExternalTextResource assembly and use. */
 public class ExternalTextResourceTest extends GWTTestCase {
@@ -23,6 +26,9 @@ public class ExternalTextResourceTest extends GWTTestCase {
   private static final String HELLO = "Hello World!";
   private static final String NEEDS_ESCAPE = "\"'\\";
 
+  /** The timeout of the tests that fetch a file. */
+  private static final int TEST_TIMEOUT = 10000;
+
   @Override
   public String getModuleName() {
     return "org.gwtproject.resources.ResourcesTestsModule";
@@ -35,6 +41,78 @@ public class ExternalTextResourceTest extends GWTTestCase {
     assertEquals("needsEscapeExternal", r.getResource("needsEscapeExternal").getName());
   }
 
+  public void testPrefetchWithoutTexts() {
+    final PrefetchResources r = new ExternalTextResourceTest_PrefetchResourcesImpl();
+    final boolean[] done = new boolean[1];
+    // Only data resources, so there is nothing to wait for
+    r.prefetch(
+        new ClientBundleWithPrefetch.PrefetchCallback() {
+          @Override
+          public void onError(ResourceException e) {
+            fail(e.toString());
+          }
+
+          @Override
+          public void onSuccess() {
+            done[0] = true;
+          }
+        });
+    assertTrue(done[0]);
+  }
+
+  public void testRequestsAreCoalesced() throws ResourceException {
+    String url = GWT.getModuleBaseURL() + "externalTextBundle.json";
+    TextResource[] cache = new TextResource[2];
+    ExternalTextResource first = createResource("first", url, cache, 0);
+    ExternalTextResource second = createResource("second", url, cache, 1);
+    int[] pending = {2};
+
+    delayTestFinish(TEST_TIMEOUT);
+    // Both resources join the request of the first one
+    first.getText(new ExpectText("first", pending, url));
+    second.getText(new ExpectText("second", pending, url));
+  }
+
+  public void testFailedRequestIsNotPending() throws ResourceException {
+    String url = GWT.getModuleBaseURL() + "missingExternalTextBundle.json";
+    ExternalTextResource resource = createResource("missing", url, new TextResource[1], 0);
+
+    delayTestFinish(TEST_TIMEOUT);
+    resource.getText(
+        new ResourceCallback<TextResource>() {
+          @Override
+          public void onError(ResourceException e) {
+            // The error page is neither parsed nor left pending, so a retry fails again
+            try {
+              resource.getText(
+                  new ResourceCallback<TextResource>() {
+                    @Override
+                    public void onError(ResourceException e) {
+                      finishTest();
+                    }
+
+                    @Override
+                    public void onSuccess(TextResource resource) {
+                      fail("Unexpected text " + resource.getText());
+                    }
+                  });
+            } catch (ResourceException retryFailure) {
+              fail(retryFailure.toString());
+            }
+          }
+
+          @Override
+          public void onSuccess(TextResource resource) {
+            fail("Unexpected text " + resource.getText());
+          }
+        });
+  }
+
+  private static ExternalTextResource createResource(
+      String name, String url, TextResource[] cache, int index) {
+    return new ExternalTextResourcePrototype(name, UriUtils.fromTrustedString(url), cache, index);
+  }
+
   @Resource
   interface ExternalTextResources extends ClientBundleWithLookup {
     @Source("hello.txt")
@@ -44,6 +122,63 @@ public class ExternalTextResourceTest extends GWTTestCase {
     ExternalTextResource needsEscapeExternal();
   }
 
+  @Resource
+  interface PrefetchResources extends ClientBundleWithPrefetch {
+    @Source("hello.txt")
+    DataResource helloData();
+  }
+
+  /**
+   * Expects the given text and, once every resource of the file has been read, checks that a new
+   * resource of the same file is served from the parsed file without waiting.
+   */
+  private class ExpectText implements ResourceCallback<TextResource> {
+    private final String expected;
+    private final int[] pending;
+    private final String url;
+
+    ExpectText(String expected, int[] pending, String url) {
+      this.expected = expected;
+      this.pending = pending;
+      this.url = url;
+    }
+
+    @Override
+    public void onError(ResourceException e) {
+      fail(e.toString());
+    }
+
+    @Override
+    public void onSuccess(TextResource resource) {
+      assertEquals(expected, resource.getText());
+      if (--pending[0] > 0) {
+        return;
+      }
+
+      TextResource[] result = new TextResource[1];
+      try {
+        createResource("again", url, new TextResource[2], 1)
+            .getText(
+                new ResourceCallback<TextResource>() {
+                  @Override
+                  public void onError(ResourceException e) {
+                    fail(e.toString());
+                  }
+
+                  @Override
+                  public void onSuccess(TextResource resource) {
+                    result[0] = resource;
+                  }
+                });
+      } catch (ResourceException e) {
+        fail(e.toString());
+      }
+      assertNotNull(result[0]);
+      assertEquals("second", result[0].getText());
+      finishTest();
+    }
+  }
+
   class MyResourceCallback implements ResourceCallback<TextResource> {
     String result;
 
@@ -124,6 +124,13 @@ public class ImageResourceTest extends GWTTestCase {
     assertFalse(a.getSafeUri().asString().equals(b.getSafeUri().asString()));
   }
 
+  public void testLargeImageIsExternal() {
+    ImageResources r = new ImageResourceTest_ImageResourcesImpl();
+
+    // Too large for a single String constant, and ClientBundle.maxInlineSize isn't raised
+    assertFalse(r.largeLossy().getSafeUri().asString().startsWith("data:"));
+  }
+
   @Resource
   interface ExternalResources extends ClientBundle {
 
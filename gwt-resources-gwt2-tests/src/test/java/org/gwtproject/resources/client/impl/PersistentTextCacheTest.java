@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.client.impl;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import org.gwtproject.timer.client.Timer;
+
+/** Tests for {@link PersistentTextCache}, skipped where the browser has no Cache API. */
+public class PersistentTextCacheTest extends GWTTestCase {
+
+  private static final int TEST_TIMEOUT = 10000;
+
+  /** How long to wait for a callback that must not run again. */
+  private static final int SETTLE_TIMEOUT = 500;
+
+  /** How often to look for an entry whose {@code put} has not completed yet. */
+  private static final int RETRY_INTERVAL = 50;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.resources.ResourcesTestsModule";
+  }
+
+  public void testThrowingCallbackRunsOnce() {
+    if (!PersistentTextCache.isAvailable()) {
+      return;
+    }
+
+    int[] calls = new int[1];
+    delayTestFinish(TEST_TIMEOUT);
+    PersistentTextCache.get(
+        "persistent-text-cache-test/missing",
+        "hash",
+        text -> {
+          calls[0]++;
+          assertNull(text);
+          // Must not be taken for a failure of the Cache API and answered again
+          throw new IllegalStateException("Thrown by the callback");
+        });
+    new Timer() {
+      @Override
+      public void run() {
+        assertEquals(1, calls[0]);
+        finishTest();
+      }
+    }.schedule(SETTLE_TIMEOUT);
+  }
+
+  public void testEntryIsValidatedAgainstItsHash() {
+    if (!PersistentTextCache.isAvailable()) {
+      return;
+    }
+
+    String url = "persistent-text-cache-test/stored";
+    delayTestFinish(TEST_TIMEOUT);
+    PersistentTextCache.put(url, "hash", "[\"text\"]");
+    awaitEntry(url);
+  }
+
+  /** Polls until the stored entry shows up, then checks that another hash does not match it. */
+  private void awaitEntry(String url) {
+    PersistentTextCache.get(
+        url,
+        "hash",
+        text -> {
+          if (text == null) {
+            // put() does not report when it is done
+            new Timer() {
+              @Override
+              public void run() {
+                awaitEntry(url);
+              }
+            }.schedule(RETRY_INTERVAL);
+            return;
+          }
+          assertEquals("[\"text\"]", text);
+          PersistentTextCache.get(
+              url,
+              "otherHash",
+              stale -> {
+                assertNull(stale);
+                finishTest();
+              });
+        });
+  }
+}
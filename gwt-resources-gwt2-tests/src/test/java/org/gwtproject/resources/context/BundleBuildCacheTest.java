@@ -0,0 +1,161 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_REPORT;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.gwtproject.resources.rg.util.Util;
+import org.json.JSONObject;
+
+/**
+ * Compiles the same bundle in two projects that share a build cache, as two workspaces or machines
+ * would, and checks when the second one reuses what the first one stored.
+ */
+public class BundleBuildCacheTest extends TestCase {
+  private static final String PACKAGE_PATH = "org/gwtproject/resources/buildcache/";
+  private static final String BUNDLE = "org.gwtproject.resources.buildcache.CachedBundle";
+  private static final String BUNDLE_PATH = PACKAGE_PATH + "CachedBundle.java";
+  private static final String IMPL_PATH = PACKAGE_PATH + "CachedBundleImpl.java";
+
+  private File cache;
+  private BundleCompiler first;
+  private BundleCompiler second;
+
+  @Override
+  protected void setUp() throws Exception {
+    cache = Files.createTempDirectory("build-cache").toFile();
+    first = createProject("first");
+    second = createProject("second");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cache, false);
+    Util.recursiveDelete(first.getRoot(), false);
+    Util.recursiveDelete(second.getRoot(), false);
+  }
+
+  public void testEntryIsSharedBetweenProjects() throws Exception {
+    compile(first);
+    assertFalse(first.wasUpToDate(BUNDLE));
+
+    compile(second);
+    assertTrue(second.wasUpToDate(BUNDLE));
+    assertEquals(first.getGeneratedSource(IMPL_PATH), second.getGeneratedSource(IMPL_PATH));
+    // The deployed resources are restored from the cache
+    File[] deployed = getDeployDir(first).listFiles();
+    assertEquals(1, deployed.length);
+    assertTrue(
+        Arrays.equals(
+            Util.readFileAsBytes(deployed[0]),
+            Util.readFileAsBytes(new File(getDeployDir(second), deployed[0].getName()))));
+  }
+
+  public void testCacheFilesAreComplete() throws Exception {
+    compile(first);
+
+    // Written to temporary files that are moved into place, none of them may be left behind
+    for (String dir : new String[] {"recipes", "entries", "blobs"}) {
+      File[] files = new File(cache, dir).listFiles();
+      assertTrue(dir, files != null && files.length > 0);
+      for (File file : files) {
+        assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+        if (dir.equals("blobs")) {
+          assertEquals(file.getName(), Util.computeStrongName(Util.readFileAsBytes(file)));
+        } else {
+          new JSONObject(Util.readFileAsString(file));
+        }
+      }
+    }
+  }
+
+  public void testPartialEntryIsIgnored() throws Exception {
+    compile(first);
+    for (File entry : new File(cache, "entries").listFiles()) {
+      String content = Util.readFileAsString(entry);
+      Util.writeStringAsFile(entry, content.substring(0, content.length() / 2));
+    }
+
+    compile(second);
+    assertFalse(second.wasUpToDate(BUNDLE));
+    assertEquals(first.getGeneratedSource(IMPL_PATH), second.getGeneratedSource(IMPL_PATH));
+  }
+
+  public void testDamagedBlobIsIgnored() throws Exception {
+    compile(first);
+    for (File blob : new File(cache, "blobs").listFiles()) {
+      Util.writeStringAsFile(blob, "damaged");
+    }
+
+    compile(second);
+    assertFalse(second.wasUpToDate(BUNDLE));
+    assertEquals(1, getDeployDir(second).listFiles().length);
+  }
+
+  public void testNewPreferredResourceIsNotReused() throws Exception {
+    compile(first);
+    // Looked up first, but did not exist when the entry was stored
+    second.write(PACKAGE_PATH + "cached.txt", "package text");
+
+    compile(second);
+    assertFalse(second.wasUpToDate(BUNDLE));
+    assertTrue(second.getGeneratedSource(IMPL_PATH).contains("package text"));
+  }
+
+  private static BundleCompiler createProject(String name) throws Exception {
+    BundleCompiler compiler = new BundleCompiler(Files.createTempDirectory(name).toFile());
+    compiler.write(
+        BUNDLE_PATH,
+        "package org.gwtproject.resources.buildcache;\n\n"
+            + "import org.gwtproject.resources.client.ClientBundle;\n"
+            + "import org.gwtproject.resources.client.ExternalTextResource;\n"
+            + "import org.gwtproject.resources.client.Resource;\n"
+            + "import org.gwtproject.resources.client.TextResource;\n\n"
+            + "@Resource\n"
+            + "public interface CachedBundle extends ClientBundle {\n"
+            + "  @Source(\"cached.txt\")\n"
+            + "  TextResource text();\n\n"
+            + "  @Source(\"cached.txt\")\n"
+            + "  ExternalTextResource external();\n"
+            + "}\n");
+    // Not in the package of the bundle, so it is found at the root of the source path
+    compiler.write("cached.txt", "root text");
+    return compiler;
+  }
+
+  private void compile(BundleCompiler compiler) throws Exception {
+    Map<String, String> properties = new HashMap<>();
+    properties.put(KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION, cache.getPath());
+    properties.put(KEY_CLIENT_BUNDLE_CACHE_LOCATION, getDeployDir(compiler).getPath());
+    properties.put(KEY_CLIENT_BUNDLE_INCREMENTAL, "false");
+    properties.put(KEY_CLIENT_BUNDLE_REPORT, "true");
+    compiler.compile(properties, BUNDLE_PATH);
+  }
+
+  private static File getDeployDir(BundleCompiler compiler) {
+    return new File(compiler.getRoot(), "target/gwt-cache");
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.gwtproject.resources.apt.ClientBundleAnnotationProcessor;
+import org.gwtproject.resources.rg.util.Util;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Runs the annotation processor over a throw-away project, laid out like a Maven module so that
+ * the state, the report and the deployed resources end up under its {@code target} directory.
+ * Every compilation is a new processing round, as in a new build.
+ */
+public class BundleCompiler {
+  private final File root;
+  private final File sources;
+  private final File generated;
+  private final File classes;
+
+  public BundleCompiler(File root) {
+    this.root = root;
+    this.sources = new File(root, "src");
+    this.generated = new File(root, "target/generated-sources/annotations");
+    this.classes = new File(root, "target/classes");
+  }
+
+  public File getRoot() {
+    return root;
+  }
+
+  /** Writes a file of the source path, e.g. a bundle interface or one of its resources. */
+  public void write(String path, String content) throws IOException {
+    File file = new File(sources, path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), Util.getBytes(content));
+  }
+
+  /**
+   * Compiles the given source files with the given configuration properties, which are only set
+   * for the duration of the compilation.
+   */
+  public void compile(Map<String, String> properties, String... paths) throws IOException {
+    generated.mkdirs();
+    classes.mkdirs();
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      System.setProperty(property.getKey(), property.getValue());
+    }
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(null, null, null)) {
+      File[] files = new File[paths.length];
+      for (int i = 0; i < paths.length; i++) {
+        files[i] = new File(sources, paths[i]);
+      }
+      JavaCompiler.CompilationTask task =
+          compiler.getTask(
+              null,
+              fileManager,
+              null,
+              Arrays.asList(
+                  "-classpath",
+                  System.getProperty("java.class.path"),
+                  "-sourcepath",
+                  sources.getPath(),
+                  "-d",
+                  classes.getPath(),
+                  "-s",
+                  generated.getPath()),
+              null,
+              fileManager.getJavaFileObjects(files));
+      task.setProcessors(Collections.singletonList(new ClientBundleAnnotationProcessor()));
+      if (!task.call()) {
+        throw new IllegalStateException("Compilation failed");
+      }
+    } finally {
+      for (String name : properties.keySet()) {
+        System.clearProperty(name);
+      }
+    }
+  }
+
+  /** Returns the source generated for a class, e.g. {@code org/example/BundleImpl.java}. */
+  public String getGeneratedSource(String path) {
+    return Util.readFileAsString(new File(generated, path));
+  }
+
+  /**
+   * Returns whether the last compilation reused the source of a bundle, which requires the
+   * ClientBundle.report property to be set.
+   */
+  public boolean wasUpToDate(String bundle) {
+    JSONObject report =
+        new JSONObject(
+            Util.readFileAsString(new File(root, "target/gwt-resources-report.json")));
+    JSONArray bundles = report.getJSONArray("bundles");
+    for (int i = 0; i < bundles.length(); i++) {
+      JSONObject entry = bundles.getJSONObject(i);
+      if (bundle.equals(entry.getString("bundle"))) {
+        return entry.getBoolean("upToDate");
+      }
+    }
+    throw new IllegalArgumentException(bundle + " is not in the report");
+  }
+
+  /** Creates an instance of a compiled class, e.g. the implementation of a bundle. */
+  public Object newInstance(String className) throws ReflectiveOperationException, IOException {
+    ClassLoader loader =
+        new URLClassLoader(
+            new URL[] {classes.toURI().toURL()}, BundleCompiler.class.getClassLoader());
+    Constructor<?> constructor = loader.loadClass(className).getDeclaredConstructor();
+    constructor.setAccessible(true);
+    return constructor.newInstance();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_REPORT;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.gwtproject.resources.rg.util.Util;
+
+/** Compiles a bundle several times in a row and checks when its previous source is reused. */
+public class IncrementalBundleCacheTest extends TestCase {
+  private static final String PACKAGE_PATH = "org/gwtproject/resources/incremental/";
+  private static final String BUNDLE = "org.gwtproject.resources.incremental.TextBundle";
+  private static final String BUNDLE_PATH = PACKAGE_PATH + "TextBundle.java";
+  private static final String IMPL_PATH = PACKAGE_PATH + "TextBundleImpl.java";
+
+  private BundleCompiler compiler;
+
+  @Override
+  protected void setUp() throws Exception {
+    compiler = new BundleCompiler(Files.createTempDirectory("incremental").toFile());
+    compiler.write(
+        BUNDLE_PATH,
+        "package org.gwtproject.resources.incremental;\n\n"
+            + "import org.gwtproject.resources.client.ClientBundle;\n"
+            + "import org.gwtproject.resources.client.Resource;\n"
+            + "import org.gwtproject.resources.client.TextResource;\n\n"
+            + "@Resource\n"
+            + "public interface TextBundle extends ClientBundle {\n"
+            + "  @Source(\"incremental.txt\")\n"
+            + "  TextResource text();\n"
+            + "}\n");
+    // Not in the package of the bundle, so it is found at the root of the source path
+    compiler.write("incremental.txt", "root text");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(compiler.getRoot(), false);
+  }
+
+  public void testUnchangedBundleIsReused() throws Exception {
+    compile();
+    assertFalse(compiler.wasUpToDate(BUNDLE));
+
+    compile();
+    assertTrue(compiler.wasUpToDate(BUNDLE));
+    assertTrue(compiler.getGeneratedSource(IMPL_PATH).contains("root text"));
+  }
+
+  public void testChangedResourceIsRegenerated() throws Exception {
+    compile();
+    compiler.write("incremental.txt", "changed text");
+
+    compile();
+    assertFalse(compiler.wasUpToDate(BUNDLE));
+    assertTrue(compiler.getGeneratedSource(IMPL_PATH).contains("changed text"));
+  }
+
+  public void testNewPreferredResourceIsRegenerated() throws Exception {
+    compile();
+    // Looked up first, but did not exist when the bundle was generated
+    compiler.write(PACKAGE_PATH + "incremental.txt", "package text");
+
+    compile();
+    assertFalse(compiler.wasUpToDate(BUNDLE));
+    assertTrue(compiler.getGeneratedSource(IMPL_PATH).contains("package text"));
+  }
+
+  private void compile() throws Exception {
+    Map<String, String> properties = new HashMap<>();
+    properties.put(KEY_CLIENT_BUNDLE_INCREMENTAL, "true");
+    properties.put(KEY_CLIENT_BUNDLE_REPORT, "true");
+    compiler.compile(properties, BUNDLE_PATH);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.context.InlineResourceContext.CHUNK_BYTES;
+import static org.gwtproject.resources.context.InlineResourceContext.MAX_ENCODED_SIZE;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+
+/** Checks the base64 data: URLs of inlined resources against {@link Base64}. */
+public class InlineResourceContextTest extends TestCase {
+  private static final Pattern APPENDED = Pattern.compile("\\.append\\(\"([^\"]*)\"\\)");
+
+  private final Random random = new Random(42);
+
+  public void testAppendBase64() {
+    // Covers the 0, 1 and 2 byte remainders
+    for (int length = 0; length < 10; length++) {
+      byte[] data = bytes(length);
+      StringBuilder sb = new StringBuilder();
+      AbstractResourceContext.appendBase64(sb, data, 0, length);
+      assertEquals(Base64.getEncoder().encodeToString(data), sb.toString());
+      assertEquals(sb.length(), AbstractResourceContext.base64Length(length));
+    }
+  }
+
+  public void testAppendBase64OfRange() {
+    byte[] data = bytes(20);
+    for (int from = 0; from < 4; from++) {
+      for (int to = from; to < data.length; to++) {
+        StringBuilder sb = new StringBuilder("prefix");
+        AbstractResourceContext.appendBase64(sb, data, from, to);
+        byte[] range = new byte[to - from];
+        System.arraycopy(data, from, range, 0, range.length);
+        assertEquals("prefix" + Base64.getEncoder().encodeToString(range), sb.toString());
+      }
+    }
+  }
+
+  public void testSmallDataUrlIsOneLiteral() {
+    for (int length = 0; length < 4; length++) {
+      byte[] data = bytes(length);
+      assertEquals(
+          "\"data:image/png;base64," + Base64.getEncoder().encodeToString(data) + "\"",
+          InlineResourceContext.toDataUrlExpression("image/png", data));
+    }
+  }
+
+  public void testQuotesOfMimeTypeAreEscaped() {
+    assertEquals(
+        "\"data:text/plain;a=\\\"b\\\";base64,AQID\"",
+        InlineResourceContext.toDataUrlExpression("text/plain;a=\"b\"", new byte[] {1, 2, 3}));
+  }
+
+  public void testFitsInOneLiteral() {
+    int largest = 0;
+    while (InlineResourceContext.fitsInOneLiteral("image/png", largest + 1)) {
+      largest++;
+    }
+    assertTrue(isLiteral(InlineResourceContext.toDataUrlExpression("image/png", bytes(largest))));
+    assertFalse(
+        isLiteral(InlineResourceContext.toDataUrlExpression("image/png", bytes(largest + 1))));
+    assertTrue(
+        InlineResourceContext.toDataUrlExpression("image/png", bytes(largest)).length()
+            < MAX_ENCODED_SIZE);
+  }
+
+  public void testLargeDataUrlIsChunked() {
+    // Chunk boundaries, with the 0, 1 and 2 byte remainders of the last chunk
+    int[] lengths = {
+      CHUNK_BYTES + 1,
+      2 * CHUNK_BYTES - 1,
+      2 * CHUNK_BYTES,
+      2 * CHUNK_BYTES + 1,
+      2 * CHUNK_BYTES + 2
+    };
+    for (int length : lengths) {
+      byte[] data = bytes(length);
+      String expression = InlineResourceContext.toDataUrlExpression("image/png", data);
+      String expected = "data:image/png;base64," + Base64.getEncoder().encodeToString(data);
+
+      assertTrue(expression.startsWith("new StringBuilder(" + expected.length() + ")"));
+      assertTrue(expression.endsWith(".toString()"));
+      StringBuilder joined = new StringBuilder();
+      Matcher matcher = APPENDED.matcher(expression);
+      int chunks = 0;
+      while (matcher.find()) {
+        assertTrue(matcher.group(1).length() + 2 < MAX_ENCODED_SIZE);
+        joined.append(matcher.group(1));
+        chunks++;
+      }
+      assertEquals(expected, joined.toString());
+      // The prefix, then one literal for each chunk
+      assertEquals(1 + (length + CHUNK_BYTES - 1) / CHUNK_BYTES, chunks);
+    }
+  }
+
+  private static boolean isLiteral(String expression) {
+    return expression.startsWith("\"") && expression.endsWith("\"");
+  }
+
+  private byte[] bytes(int length) {
+    byte[] data = new byte[length];
+    random.nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_PARALLEL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_THREADS;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.gwtproject.resources.rg.util.Util;
+
+/** Checks that generating bundles in parallel gives the same output as a serial run. */
+public class ParallelGenerationTest extends TestCase {
+  private static final String PACKAGE = "org.gwtproject.resources.parallel";
+  private static final String PACKAGE_PATH = "org/gwtproject/resources/parallel/";
+  private static final String[] BUNDLES = {"FirstBundle", "SecondBundle", "ThirdBundle"};
+
+  private BundleCompiler serial;
+  private BundleCompiler parallel;
+
+  @Override
+  protected void setUp() throws Exception {
+    serial = createProject("serial");
+    parallel = createProject("parallel");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(serial.getRoot(), false);
+    Util.recursiveDelete(parallel.getRoot(), false);
+  }
+
+  public void testParallelOutputEqualsSerialOutput() throws Exception {
+    compile(serial, false);
+    compile(parallel, true);
+
+    for (String bundle : BUNDLES) {
+      String impl = PACKAGE_PATH + bundle + "Impl.java";
+      assertEquals(impl, serial.getGeneratedSource(impl), parallel.getGeneratedSource(impl));
+    }
+    String[] deployed = getDeployDir(serial).list();
+    Arrays.sort(deployed);
+    String[] deployedInParallel = getDeployDir(parallel).list();
+    Arrays.sort(deployedInParallel);
+    assertTrue(deployed.length > 0);
+    assertEquals(Arrays.asList(deployed), Arrays.asList(deployedInParallel));
+    for (String name : deployed) {
+      assertTrue(
+          name,
+          Arrays.equals(
+              Util.readFileAsBytes(new File(getDeployDir(serial), name)),
+              Util.readFileAsBytes(new File(getDeployDir(parallel), name))));
+    }
+  }
+
+  public void testInvalidThreadsAreIgnoredWithoutParallel() throws Exception {
+    Map<String, String> properties = getProperties(serial, false);
+    properties.put(KEY_CLIENT_BUNDLE_THREADS, "none");
+
+    serial.compile(properties, getBundlePaths());
+    assertTrue(getDeployDir(serial).list().length > 0);
+  }
+
+  private static BundleCompiler createProject(String name) throws Exception {
+    BundleCompiler compiler = new BundleCompiler(Files.createTempDirectory(name).toFile());
+    compiler.write(
+        PACKAGE_PATH + "Style.java",
+        "package " + PACKAGE + ";\n\n"
+            + "import org.gwtproject.resources.client.CssResource;\n\n"
+            + "public interface Style extends CssResource {\n"
+            + "  String shared();\n\n"
+            + "  String own();\n"
+            + "}\n");
+    for (String bundle : BUNDLES) {
+      String name = bundle.toLowerCase();
+      compiler.write(
+          PACKAGE_PATH + bundle + ".java",
+          "package " + PACKAGE + ";\n\n"
+              + "import org.gwtproject.resources.client.ClientBundle;\n"
+              + "import org.gwtproject.resources.client.DataResource;\n"
+              + "import org.gwtproject.resources.client.ExternalTextResource;\n"
+              + "import org.gwtproject.resources.client.Resource;\n"
+              + "import org.gwtproject.resources.client.TextResource;\n\n"
+              + "@Resource\n"
+              + "public interface "
+              + bundle
+              + " extends ClientBundle {\n"
+              + "  @Source(\""
+              + name
+              + ".gss\")\n"
+              + "  Style style();\n\n"
+              + "  @Source(\""
+              + name
+              + ".txt\")\n"
+              + "  TextResource text();\n\n"
+              + "  @Source(\""
+              + name
+              + ".txt\")\n"
+              + "  ExternalTextResource external();\n\n"
+              + "  @Source(\""
+              + name
+              + ".txt\")\n"
+              + "  DataResource data();\n"
+              + "}\n");
+      compiler.write(
+          PACKAGE_PATH + name + ".gss",
+          ".shared {\n  color: #123456;\n}\n\n.own {\n  width: " + name.length() + "px;\n}\n");
+      compiler.write(PACKAGE_PATH + name + ".txt", "The text of " + bundle);
+    }
+    return compiler;
+  }
+
+  private static void compile(BundleCompiler compiler, boolean parallel) throws Exception {
+    compiler.compile(getProperties(compiler, parallel), getBundlePaths());
+  }
+
+  private static Map<String, String> getProperties(BundleCompiler compiler, boolean parallel) {
+    Map<String, String> properties = new HashMap<>();
+    properties.put(KEY_CLIENT_BUNDLE_CACHE_LOCATION, getDeployDir(compiler).getPath());
+    properties.put(KEY_CLIENT_BUNDLE_INCREMENTAL, "false");
+    properties.put(KEY_CLIENT_BUNDLE_PARALLEL, Boolean.toString(parallel));
+    properties.put(KEY_CLIENT_BUNDLE_THREADS, "4");
+    return properties;
+  }
+
+  private static String[] getBundlePaths() {
+    String[] paths = new String[BUNDLES.length];
+    for (int i = 0; i < BUNDLES.length; i++) {
+      paths[i] = PACKAGE_PATH + BUNDLES[i] + ".java";
+    }
+    return paths;
+  }
+
+  private static File getDeployDir(BundleCompiler compiler) {
+    return new File(compiler.getRoot(), "target/gwt-cache");
+  }
+}
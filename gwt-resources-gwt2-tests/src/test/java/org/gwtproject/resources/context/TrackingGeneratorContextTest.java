@@ -0,0 +1,108 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_STATE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_THREADS;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_STYLE;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.gwtproject.resources.ext.ConfigurationProperty;
+import org.gwtproject.resources.ext.DefaultConfigurationProperty;
+import org.gwtproject.resources.ext.GeneratorContext;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.SelectionProperty;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+
+/** Tests what the incremental state and the build cache record of the properties of a bundle. */
+public class TrackingGeneratorContextTest extends TestCase {
+
+  public void testMachineSpecificPropertiesAreNotTracked() throws UnableToCompleteException {
+    Map<String, List<String>> first =
+        readProperties(properties("4", "/home/user/project/target/gwt-resources-state", "obf"));
+    Map<String, List<String>> second =
+        readProperties(properties("32", "/var/ci/workspace/build/state", "obf"));
+
+    assertEquals(first, second);
+    assertFalse(first.containsKey(KEY_CLIENT_BUNDLE_THREADS));
+    assertFalse(first.containsKey(KEY_CLIENT_BUNDLE_STATE_LOCATION));
+  }
+
+  public void testOutputPropertiesAreTracked() throws UnableToCompleteException {
+    Map<String, List<String>> obf = readProperties(properties("4", "/tmp/state", "obf"));
+    Map<String, List<String>> pretty = readProperties(properties("4", "/tmp/state", "pretty"));
+
+    assertEquals(Collections.singletonList("obf"), obf.get(KEY_CSS_RESOURCE_STYLE));
+    assertFalse(obf.equals(pretty));
+  }
+
+  private static Map<String, String> properties(
+      String threads, String stateLocation, String style) {
+    Map<String, String> properties = new HashMap<>();
+    properties.put(KEY_CLIENT_BUNDLE_THREADS, threads);
+    properties.put(KEY_CLIENT_BUNDLE_STATE_LOCATION, stateLocation);
+    properties.put(KEY_CSS_RESOURCE_STYLE, style);
+    return properties;
+  }
+
+  /** Reads every property through the tracker, as the generators of a bundle do. */
+  private static Map<String, List<String>> readProperties(Map<String, String> properties)
+      throws UnableToCompleteException {
+    TrackingGeneratorContext tracker =
+        new TrackingGeneratorContext(createContext(new MapPropertyOracle(properties)));
+    for (String name : properties.keySet()) {
+      tracker.getPropertyOracle().getConfigurationProperty(TreeLogger.NULL, name);
+    }
+    return tracker.getConfigurationProperties();
+  }
+
+  /** Only the property and resource oracles are used by the tracker. */
+  private static GeneratorContext createContext(PropertyOracle propertyOracle) {
+    return (GeneratorContext)
+        Proxy.newProxyInstance(
+            GeneratorContext.class.getClassLoader(),
+            new Class<?>[] {GeneratorContext.class},
+            (proxy, method, args) ->
+                method.getName().equals("getPropertyOracle") ? propertyOracle : null);
+  }
+
+  private static class MapPropertyOracle implements PropertyOracle {
+    private final Map<String, String> properties;
+
+    MapPropertyOracle(Map<String, String> properties) {
+      this.properties = properties;
+    }
+
+    @Override
+    public ConfigurationProperty getConfigurationProperty(TreeLogger logger, String propertyName) {
+      return new DefaultConfigurationProperty(
+          propertyName, Collections.singletonList(properties.get(propertyName)));
+    }
+
+    @Override
+    public SelectionProperty getSelectionProperty(TreeLogger logger, String propertyName)
+        throws UnableToCompleteException {
+      throw new UnableToCompleteException();
+    }
+  }
+}
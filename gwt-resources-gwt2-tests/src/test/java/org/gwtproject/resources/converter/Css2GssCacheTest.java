@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.converter;
+
+import com.google.common.base.Predicates;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.util.Util;
+
+/** Tests the in-memory conversion and the conversion cache. */
+public class Css2GssCacheTest extends TestCase {
+  private static final String CSS = "@def myWidth 10px;\n.foo {\n  width: myWidth;\n}\n";
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = Files.createTempDirectory("css2gss").toFile();
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(dir, false);
+  }
+
+  public void testInMemoryConversionMatchesFileConversion()
+      throws IOException, UnableToCompleteException {
+    File file = new File(dir, "test.css");
+    Files.write(file.toPath(), Util.getBytes(CSS));
+    URL url = file.toURI().toURL();
+
+    Css2Gss fromFile = new Css2Gss(url, TreeLogger.NULL, false, Predicates.alwaysFalse());
+    Css2Gss inMemory = new Css2Gss(url, CSS, TreeLogger.NULL, false, Predicates.alwaysFalse());
+
+    assertEquals(fromFile.toGss(), inMemory.toGss());
+    assertEquals(fromFile.getDefNameMapping(), inMemory.getDefNameMapping());
+    assertEquals("MY_WIDTH", inMemory.getDefNameMapping().get("myWidth"));
+  }
+
+  public void testStoredConversionIsFound() {
+    Css2GssCache cache = new Css2GssCache(dir);
+    Map<String, String> defs = Collections.singletonMap("myWidth", "MY_WIDTH");
+    cache.store(
+        TreeLogger.NULL,
+        CSS,
+        false,
+        new Css2GssCache.Entry("gss", defs),
+        Collections.<String, Boolean>emptyMap());
+
+    Css2GssCache.Entry entry =
+        new Css2GssCache(dir).find(TreeLogger.NULL, CSS, false, Predicates.alwaysFalse());
+    assertNotNull(entry);
+    assertEquals("gss", entry.getGss());
+    assertEquals(defs, entry.getDefNameMapping());
+
+    // The mode and the content are part of the key
+    assertNull(cache.find(TreeLogger.NULL, CSS, true, Predicates.alwaysFalse()));
+    assertNull(cache.find(TreeLogger.NULL, CSS + " ", false, Predicates.alwaysFalse()));
+  }
+
+  public void testChangedConditionInvalidatesConversion() {
+    Css2GssCache cache = new Css2GssCache(dir);
+    cache.store(
+        TreeLogger.NULL,
+        CSS,
+        false,
+        new Css2GssCache.Entry("gss", Collections.<String, String>emptyMap()),
+        Collections.singletonMap("isDebug", true));
+
+    assertNotNull(cache.find(TreeLogger.NULL, CSS, false, Predicates.alwaysTrue()));
+    assertNull(cache.find(TreeLogger.NULL, CSS, false, Predicates.alwaysFalse()));
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.ext;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_ENABLE_INLINING;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INLINE_BUDGET;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** Tests the inlining decisions of {@link DefaultInliningPolicy}. */
+public class DefaultInliningPolicyTest extends TestCase {
+  private final Map<String, List<String>> properties = new HashMap<>();
+  private final Random random = new Random(42);
+
+  @Override
+  protected void setUp() {
+    set(KEY_CLIENT_BUNDLE_ENABLE_INLINING, "true");
+    set(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE, "100");
+    set(KEY_CLIENT_BUNDLE_INLINE_BUDGET, "1048576");
+    properties.put(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE, Collections.emptyList());
+  }
+
+  public void testMaxInlineSize() throws UnableToCompleteException {
+    DefaultInliningPolicy policy = createPolicy();
+
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "image/png", bytes(99)));
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "image/png", bytes(100)));
+  }
+
+  public void testDisabledInlining() throws UnableToCompleteException {
+    set(KEY_CLIENT_BUNDLE_ENABLE_INLINING, "false");
+    DefaultInliningPolicy policy = createPolicy();
+
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "image/png", bytes(1)));
+  }
+
+  public void testMaxInlineSizeByType() throws UnableToCompleteException {
+    properties.put(
+        KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE,
+        Arrays.asList("image/*=200", "image/svg*=300", "IMAGE/PNG=50", "font/*=0"));
+    DefaultInliningPolicy policy = createPolicy();
+
+    // An exact match wins over the wildcards, whatever the case
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "image/png", bytes(49)));
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "image/png", bytes(50)));
+    // The longest wildcard wins
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "image/gif", bytes(199)));
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "image/gif", bytes(200)));
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "image/svg+xml", bytes(299)));
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "image/svg+xml", bytes(300)));
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "font/woff2", bytes(1)));
+    // Parameters are ignored
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "image/png; charset=UTF-8", bytes(50)));
+    // Other types use ClientBundle.maxInlineSize
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "text/plain", bytes(99)));
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "text/plain", bytes(100)));
+  }
+
+  public void testInvalidMaxInlineSizeByType() {
+    for (String entry : Arrays.asList("image/png", "=10", "image/png=big", "image/png=-1")) {
+      properties.put(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE, Collections.singletonList(entry));
+      try {
+        createPolicy();
+        fail("Accepted " + entry);
+      } catch (UnableToCompleteException expected) {
+        // expected
+      }
+    }
+  }
+
+  public void testInvalidMaxInlineSize() {
+    set(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE, "-1");
+    try {
+      createPolicy();
+      fail();
+    } catch (UnableToCompleteException expected) {
+      // expected
+    }
+  }
+
+  public void testBudgetIsDepleted() throws UnableToCompleteException {
+    byte[] data = bytes(90);
+    long cost = new DefaultInliningPolicy().estimateGzippedSize(data);
+    set(KEY_CLIENT_BUNDLE_INLINE_BUDGET, Long.toString(3 * cost - 1));
+    DefaultInliningPolicy policy = createPolicy();
+
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "image/png", data));
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "image/png", data));
+    assertFalse(policy.shouldInline(TreeLogger.NULL, "image/png", data));
+    // What is left may still be used by a smaller resource
+    assertTrue(policy.shouldInline(TreeLogger.NULL, "image/png", new byte[0]));
+  }
+
+  private DefaultInliningPolicy createPolicy() throws UnableToCompleteException {
+    DefaultInliningPolicy policy = new DefaultInliningPolicy();
+    policy.init(TreeLogger.NULL, new MapPropertyOracle());
+    return policy;
+  }
+
+  private void set(String name, String value) {
+    properties.put(name, Collections.singletonList(value));
+  }
+
+  private byte[] bytes(int length) {
+    byte[] data = new byte[length];
+    random.nextBytes(data);
+    return data;
+  }
+
+  private class MapPropertyOracle implements PropertyOracle {
+    @Override
+    public ConfigurationProperty getConfigurationProperty(TreeLogger logger, String propertyName) {
+      return new DefaultConfigurationProperty(propertyName, properties.get(propertyName));
+    }
+
+    @Override
+    public SelectionProperty getSelectionProperty(TreeLogger logger, String propertyName)
+        throws UnableToCompleteException {
+      throw new UnableToCompleteException();
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.ext;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_PRECOMPRESS;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_THREADS;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import junit.framework.TestCase;
+import org.gwtproject.resources.rg.util.Util;
+
+/**
+ * Tests how {@link StandardGeneratorContext} writes the committed resources and their gzipped
+ * variants to disk.
+ */
+public class StandardGeneratorContextTest extends TestCase {
+  private static final FileTime OLD = FileTime.fromMillis(1_000_000_000_000L);
+
+  private final Map<String, String> properties = new HashMap<>();
+  private File cacheDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    cacheDir = Files.createTempDirectory("gwt-cache").toFile();
+    properties.put(KEY_CLIENT_BUNDLE_CACHE_LOCATION, cacheDir.getAbsolutePath());
+    properties.put(KEY_CLIENT_BUNDLE_PRECOMPRESS, "false");
+    properties.put(KEY_CLIENT_BUNDLE_THREADS, "2");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+  }
+
+  public void testUnchangedFileIsLeftAlone() throws Exception {
+    Path file = commit("a/file.txt", "content");
+    Files.setLastModifiedTime(file, OLD);
+
+    commit("a/file.txt", "content");
+    assertEquals(OLD, Files.getLastModifiedTime(file));
+  }
+
+  public void testChangedFileIsReplaced() throws Exception {
+    Path file = commit("a/file.txt", "content");
+    Files.setLastModifiedTime(file, OLD);
+
+    commit("a/file.txt", "changed content");
+    assertEquals("changed content", read(file));
+    assertFalse(OLD.equals(Files.getLastModifiedTime(file)));
+    // The temporary file was moved in place
+    assertEquals(1, file.getParent().toFile().list().length);
+  }
+
+  public void testWriteFailureIsReported() throws Exception {
+    // A file where the directory of the resource should be created
+    Files.write(cacheDir.toPath().resolve("a"), new byte[0]);
+    StandardGeneratorContext context = createContext();
+    OutputStream out = context.tryCreateResource(TreeLogger.NULL, "a/file.txt");
+    out.write(bytes("content"));
+    context.commitResource(TreeLogger.NULL, out);
+
+    try {
+      context.awaitCommittedResources(TreeLogger.NULL);
+      fail();
+    } catch (UnableToCompleteException expected) {
+      // expected
+    }
+  }
+
+  public void testDoubleCommitIsRejected() throws Exception {
+    StandardGeneratorContext context = createContext();
+    OutputStream out = context.tryCreateResource(TreeLogger.NULL, "file.txt");
+    out.write(bytes("content"));
+    context.commitResource(TreeLogger.NULL, out);
+
+    try {
+      context.commitResource(TreeLogger.NULL, out);
+      fail();
+    } catch (UnableToCompleteException expected) {
+      // expected
+    }
+    context.awaitCommittedResources(TreeLogger.NULL);
+    assertEquals("content", read(cacheDir.toPath().resolve("file.txt")));
+  }
+
+  public void testGzipVariantIsWrittenWhenSmaller() throws Exception {
+    properties.put(KEY_CLIENT_BUNDLE_PRECOMPRESS, "true");
+    byte[] css = repeat(".a { color: red; }\n", 100);
+    Path file = commit("a/style.css", css);
+
+    Path variant = file.resolveSibling("style.css.gz");
+    assertTrue(Files.size(variant) < css.length);
+    assertEquals(read(css), read(gunzip(variant)));
+  }
+
+  public void testIncompressibleFileRemovesStaleVariant() throws Exception {
+    properties.put(KEY_CLIENT_BUNDLE_PRECOMPRESS, "true");
+    Path variant = cacheDir.toPath().resolve("a/data.txt.gz");
+    Files.createDirectories(variant.getParent());
+    Files.write(variant, bytes("stale"));
+
+    byte[] random = new byte[1024];
+    new Random(42).nextBytes(random);
+    commit("a/data.txt", random);
+    assertFalse(Files.exists(variant));
+  }
+
+  public void testOtherExtensionsAreNotCompressed() throws Exception {
+    properties.put(KEY_CLIENT_BUNDLE_PRECOMPRESS, "true");
+    Path file = commit("a/image.png", repeat("compressible", 100));
+
+    assertFalse(Files.exists(file.resolveSibling("image.png.gz")));
+  }
+
+  public void testNothingIsCompressedWhenDisabled() throws Exception {
+    Path file = commit("a/style.css", repeat(".a { color: red; }\n", 100));
+
+    assertFalse(Files.exists(file.resolveSibling("style.css.gz")));
+  }
+
+  private Path commit(String partialPath, String content)
+      throws IOException, UnableToCompleteException {
+    return commit(partialPath, bytes(content));
+  }
+
+  /** Commits a resource in a new context, as a new build would, and waits until it is written. */
+  private Path commit(String partialPath, byte[] content)
+      throws IOException, UnableToCompleteException {
+    StandardGeneratorContext context = createContext();
+    OutputStream out = context.tryCreateResource(TreeLogger.NULL, partialPath);
+    out.write(content);
+    context.commitResource(TreeLogger.NULL, out);
+    context.awaitCommittedResources(TreeLogger.NULL);
+    return cacheDir.toPath().resolve(partialPath);
+  }
+
+  private StandardGeneratorContext createContext() {
+    return new StandardGeneratorContext(null, null, new MapPropertyOracle());
+  }
+
+  private static byte[] bytes(String content) {
+    return content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] repeat(String content, int times) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      sb.append(content);
+    }
+    return bytes(sb.toString());
+  }
+
+  private static String read(Path file) throws IOException {
+    return read(Files.readAllBytes(file));
+  }
+
+  private static String read(byte[] content) {
+    return new String(content, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] gunzip(Path file) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPInputStream in =
+        new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+      Util.copyNoClose(in, out);
+    }
+    return out.toByteArray();
+  }
+
+  private class MapPropertyOracle implements PropertyOracle {
+    @Override
+    public ConfigurationProperty getConfigurationProperty(TreeLogger logger, String propertyName) {
+      return new DefaultConfigurationProperty(
+          propertyName, Collections.singletonList(properties.get(propertyName)));
+    }
+
+    @Override
+    public SelectionProperty getSelectionProperty(TreeLogger logger, String propertyName)
+        throws UnableToCompleteException {
+      throw new UnableToCompleteException();
+    }
+  }
+}
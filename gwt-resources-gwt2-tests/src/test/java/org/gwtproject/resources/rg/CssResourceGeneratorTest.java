@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Collections;
+import junit.framework.TestCase;
+import org.gwtproject.resources.client.CssResource;
+import org.gwtproject.resources.context.BundleCompiler;
+import org.gwtproject.resources.rg.util.Util;
+
+/**
+ * Compiles a bundle of stylesheets and checks how the getText() method of its generated
+ * CssResources is computed: a literal without substitutions, once when values are evaluated at
+ * runtime, and on every call when the stylesheet has runtime conditions.
+ */
+public class CssResourceGeneratorTest extends TestCase {
+  private static final String PACKAGE = "org.gwtproject.resources.csstext";
+  private static final String PACKAGE_PATH = "org/gwtproject/resources/csstext/";
+
+  private BundleCompiler compiler;
+  private Object bundle;
+
+  @Override
+  protected void setUp() throws Exception {
+    compiler = new BundleCompiler(Files.createTempDirectory("csstext").toFile());
+    compiler.write(
+        PACKAGE_PATH + "Theme.java",
+        "package " + PACKAGE + ";\n\n"
+            + "public class Theme {\n"
+            + "  public static String color = \"#123456\";\n"
+            + "  public static boolean dark = true;\n\n"
+            + "  public static String color() {\n"
+            + "    return color;\n"
+            + "  }\n"
+            + "}\n");
+    compiler.write(
+        PACKAGE_PATH + "StyleBundle.java",
+        "package " + PACKAGE + ";\n\n"
+            + "import org.gwtproject.resources.client.ClientBundle;\n"
+            + "import org.gwtproject.resources.client.CssResource;\n"
+            + "import org.gwtproject.resources.client.Resource;\n\n"
+            + "@Resource\n"
+            + "public interface StyleBundle extends ClientBundle {\n"
+            + "  interface Style extends CssResource {\n"
+            + "    String a();\n"
+            + "  }\n\n"
+            + "  @Source(\"plain.gss\")\n"
+            + "  Style plain();\n\n"
+            + "  @Source(\"evaluated.gss\")\n"
+            + "  Style evaluated();\n\n"
+            + "  @Source(\"conditional.gss\")\n"
+            + "  Style conditional();\n"
+            + "}\n");
+    compiler.write(PACKAGE_PATH + "plain.gss", ".a {\n  color: #abcdef;\n}\n");
+    compiler.write(
+        PACKAGE_PATH + "evaluated.gss",
+        "@def COLOR eval('" + PACKAGE + ".Theme.color()');\n\n.a {\n  color: COLOR;\n}\n");
+    compiler.write(
+        PACKAGE_PATH + "conditional.gss",
+        "@if (eval('" + PACKAGE + ".Theme.dark')) {\n"
+            + "  .a {\n    color: #000000;\n  }\n"
+            + "} @else {\n"
+            + "  .a {\n    color: #ffffff;\n  }\n"
+            + "}\n");
+    compiler.compile(
+        Collections.singletonMap(KEY_CLIENT_BUNDLE_INCREMENTAL, "false"),
+        PACKAGE_PATH + "StyleBundle.java");
+    bundle = compiler.newInstance(PACKAGE + ".StyleBundleImpl");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(compiler.getRoot(), false);
+  }
+
+  public void testStaticTextIsALiteral() throws Exception {
+    CssResource css = resource("plain");
+
+    assertFalse(hasTextField(css));
+    assertTrue(css.getText().contains("#abcdef"));
+  }
+
+  public void testEvaluatedTextIsComputedOnce() throws Exception {
+    CssResource css = resource("evaluated");
+
+    assertTrue(hasTextField(css));
+    String text = css.getText();
+    assertTrue(text.contains("#123456"));
+
+    themeField("color").set(null, "#654321");
+    assertSame(text, css.getText());
+  }
+
+  public void testTextWithRuntimeConditionsIsNotCached() throws Exception {
+    CssResource css = resource("conditional");
+
+    assertFalse(hasTextField(css));
+    assertTrue(css.getText().contains("#000"));
+
+    themeField("dark").setBoolean(null, false);
+    assertTrue(css.getText().contains("#fff"));
+  }
+
+  private CssResource resource(String method) throws Exception {
+    Method accessor = bundle.getClass().getMethod(method);
+    accessor.setAccessible(true);
+    return (CssResource) accessor.invoke(bundle);
+  }
+
+  private Field themeField(String name) throws Exception {
+    return bundle.getClass().getClassLoader().loadClass(PACKAGE + ".Theme").getField(name);
+  }
+
+  private static boolean hasTextField(CssResource css) {
+    try {
+      css.getClass().getDeclaredField("text");
+      return true;
+    } catch (NoSuchFieldException e) {
+      return false;
+    }
+  }
+}
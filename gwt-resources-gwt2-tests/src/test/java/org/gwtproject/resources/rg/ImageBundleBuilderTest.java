@@ -0,0 +1,227 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import junit.framework.TestCase;
+import org.gwtproject.resources.rg.ImageBundleBuilder.Arranger;
+import org.gwtproject.resources.rg.ImageBundleBuilder.HorizontalArranger;
+import org.gwtproject.resources.rg.ImageBundleBuilder.MaxRectsArranger;
+import org.gwtproject.resources.rg.ImageBundleBuilder.Page;
+import org.gwtproject.resources.rg.ImageBundleBuilder.VerticalArranger;
+import org.gwtproject.resources.rg.ImageResourceGenerator.ImageRect;
+
+/** Tests how the images of a composite image are positioned and split into pages. */
+public class ImageBundleBuilderTest extends TestCase {
+
+  public void testMaxRectsPagesDoNotOverlap() {
+    Random random = new Random(42);
+    List<ImageRect> rects = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      rects.add(rect("image" + i, 1 + random.nextInt(64), 1 + random.nextInt(64)));
+    }
+
+    List<Page> pages = new MaxRectsArranger().arrange(rects, 128);
+
+    assertTrue(pages.size() > 1);
+    assertEveryImageOnOnePage(rects, pages);
+    for (Page page : pages) {
+      assertWithinPage(page, 128);
+      assertNoOverlap(page);
+    }
+  }
+
+  public void testMaxRectsSplitsPagesAtMaxSize() {
+    List<ImageRect> rects = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      rects.add(rect("image" + i, 100, 100));
+    }
+
+    List<Page> pages = new MaxRectsArranger().arrange(rects, 256);
+
+    // Only 2x2 images fit on a page
+    assertEquals(3, pages.size());
+    assertEquals(4, pages.get(0).getRects().size());
+    assertEquals(4, pages.get(1).getRects().size());
+    assertEquals(2, pages.get(2).getRects().size());
+    assertEveryImageOnOnePage(rects, pages);
+    for (Page page : pages) {
+      assertWithinPage(page, 256);
+      assertNoOverlap(page);
+    }
+  }
+
+  public void testMaxRectsImageFillingAPage() {
+    List<ImageRect> rects = Arrays.asList(rect("full", 64, 64), rect("small", 8, 8));
+
+    List<Page> pages = new MaxRectsArranger().arrange(rects, 64);
+
+    assertEquals(2, pages.size());
+    assertEveryImageOnOnePage(rects, pages);
+  }
+
+  public void testMaxRectsRejectsImageLargerThanMaxSize() throws Exception {
+    assertRejected(
+        new MaxRectsArranger(), Arrays.asList(rect("small", 8, 8), rect("tall", 16, 300)));
+  }
+
+  public void testHorizontalRejectsImageWiderThanMaxSize() throws Exception {
+    assertRejected(new HorizontalArranger(), Arrays.asList(rect("wide", 300, 16)));
+  }
+
+  public void testVerticalRejectsImageTallerThanMaxSize() throws Exception {
+    assertRejected(new VerticalArranger(), Arrays.asList(rect("tall", 16, 300)));
+  }
+
+  public void testHorizontalTilesToLeastCommonMultiple() {
+    ImageRect a = rect("a", 4, 10);
+    ImageRect b = rect("b", 6, 20);
+
+    List<Page> pages = new HorizontalArranger().arrange(Arrays.asList(a, b), 256);
+
+    assertEquals(1, pages.size());
+    assertEquals(12, pages.get(0).getWidth());
+    assertEquals(30, pages.get(0).getHeight());
+    assertPosition(a, 0, 0);
+    assertPosition(b, 0, 10);
+  }
+
+  public void testHorizontalSplitsPagesAtMaxSize() {
+    // lcm(16, 17) = 272 is wider than the page
+    ImageRect a = rect("a", 16, 10);
+    ImageRect b = rect("b", 17, 10);
+    // Does not fit below the first images
+    ImageRect c = rect("c", 17, 250);
+
+    List<Page> pages = new HorizontalArranger().arrange(Arrays.asList(a, b, c), 256);
+
+    assertEquals(3, pages.size());
+    assertEquals(16, pages.get(0).getWidth());
+    assertEquals(17, pages.get(1).getWidth());
+    assertEquals(Arrays.asList(c), pages.get(2).getRects());
+    assertPosition(b, 0, 0);
+    assertPosition(c, 0, 0);
+    for (Page page : pages) {
+      assertWithinPage(page, 256);
+    }
+  }
+
+  public void testVerticalTilesToLeastCommonMultiple() {
+    ImageRect a = rect("a", 10, 4);
+    ImageRect b = rect("b", 20, 6);
+
+    List<Page> pages = new VerticalArranger().arrange(Arrays.asList(a, b), 256);
+
+    assertEquals(1, pages.size());
+    assertEquals(30, pages.get(0).getWidth());
+    assertEquals(12, pages.get(0).getHeight());
+    assertPosition(a, 0, 0);
+    assertPosition(b, 10, 0);
+  }
+
+  public void testVerticalSplitsPagesAtMaxSize() {
+    ImageRect a = rect("a", 10, 16);
+    ImageRect b = rect("b", 10, 17);
+    ImageRect c = rect("c", 250, 17);
+
+    List<Page> pages = new VerticalArranger().arrange(Arrays.asList(a, b, c), 256);
+
+    assertEquals(3, pages.size());
+    assertEquals(16, pages.get(0).getHeight());
+    assertEquals(17, pages.get(1).getHeight());
+    assertEquals(Arrays.asList(c), pages.get(2).getRects());
+    for (Page page : pages) {
+      assertWithinPage(page, 256);
+    }
+  }
+
+  private static ImageRect rect(String name, int width, int height) {
+    return new ImageRect(name, new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+  }
+
+  private static void assertPosition(ImageRect rect, int left, int top) {
+    assertEquals(rect.getName() + " left", left, rect.getLeft());
+    assertEquals(rect.getName() + " top", top, rect.getTop());
+  }
+
+  private static void assertEveryImageOnOnePage(List<ImageRect> rects, List<Page> pages) {
+    Map<ImageRect, Page> placed = new IdentityHashMap<>();
+    for (Page page : pages) {
+      assertFalse(page.getRects().isEmpty());
+      for (ImageRect rect : page.getRects()) {
+        assertNull(rect.getName() + " is on two pages", placed.put(rect, page));
+        assertTrue(rect.hasBeenPositioned());
+      }
+    }
+    assertEquals(rects.size(), placed.size());
+  }
+
+  private static void assertWithinPage(Page page, int maxSize) {
+    assertTrue(page.getWidth() <= maxSize);
+    assertTrue(page.getHeight() <= maxSize);
+    for (ImageRect rect : page.getRects()) {
+      assertTrue(rect.getLeft() >= 0 && rect.getTop() >= 0);
+      assertTrue(rect.getName(), rect.getLeft() + rect.getWidth() <= page.getWidth());
+      assertTrue(rect.getName(), rect.getTop() + rect.getHeight() <= page.getHeight());
+    }
+  }
+
+  private static void assertNoOverlap(Page page) {
+    List<ImageRect> rects = page.getRects();
+    for (int i = 0; i < rects.size(); i++) {
+      for (int j = i + 1; j < rects.size(); j++) {
+        assertFalse(
+            rects.get(i).getName() + " overlaps " + rects.get(j).getName(),
+            bounds(rects.get(i)).intersects(bounds(rects.get(j))));
+      }
+    }
+  }
+
+  private static Rectangle bounds(ImageRect rect) {
+    return new Rectangle(rect.getLeft(), rect.getTop(), rect.getWidth(), rect.getHeight());
+  }
+
+  /** Runs on another thread so that an arranger that never terminates fails the test. */
+  private static void assertRejected(Arranger arranger, List<ImageRect> rects)
+      throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<Page>> pages = executor.submit(() -> arranger.arrange(rects, 256));
+      pages.get(10, TimeUnit.SECONDS);
+      fail("Expected an IllegalArgumentException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    } catch (TimeoutException e) {
+      fail("The arranger did not terminate");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_IMAGE_RESOURCE_ATLAS;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import javax.imageio.ImageIO;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import junit.framework.TestCase;
+import org.gwtproject.resources.apt.ClientBundleAnnotationProcessor;
+import org.gwtproject.resources.client.impl.ImageResourcePrototype;
+import org.gwtproject.resources.rg.util.Util;
+
+/**
+ * Runs the annotation processor with composite images enabled and checks that every image of the
+ * generated bundle points at its own pixels in the composite image.
+ */
+public class ImageResourceAtlasTest extends TestCase {
+  private static final String PACKAGE = "org.gwtproject.resources.client";
+  private static final String BUNDLE = "AtlasTestBundle";
+
+  private File root;
+  private Object bundle;
+
+  @Override
+  protected void setUp() throws Exception {
+    root = Files.createTempDirectory("atlas").toFile();
+    System.setProperty(KEY_IMAGE_RESOURCE_ATLAS, "true");
+    System.setProperty(KEY_CLIENT_BUNDLE_INCREMENTAL, "false");
+    try {
+      bundle = compile();
+    } finally {
+      System.clearProperty(KEY_IMAGE_RESOURCE_ATLAS);
+      System.clearProperty(KEY_CLIENT_BUNDLE_INCREMENTAL);
+    }
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(root, false);
+  }
+
+  public void testImagesShareOneCompositeImage() throws Exception {
+    ImageResourcePrototype i16 = image("i16x16");
+    ImageResourcePrototype i32 = image("i32x32");
+    ImageResourcePrototype i64 = image("i64x64");
+
+    assertTrue(i16 instanceof ImageResourcePrototype.Bundle);
+    assertTrue(i16.getURL().startsWith("data:image/png;base64,"));
+    assertEquals(i16.getURL(), i32.getURL());
+    assertEquals(i16.getURL(), i64.getURL());
+
+    BufferedImage composite = decode(i16.getURL());
+    assertPixels(composite, i16, "16x16.png", 0);
+    assertPixels(composite, i32, "32x32.png", 0);
+    assertPixels(composite, i64, "64x64.png", 0);
+  }
+
+  public void testHorizontalImagesAreTiled() throws Exception {
+    ImageResourcePrototype i16 = image("i16x16Horizontal");
+    ImageResourcePrototype i32 = image("i32x32Horizontal");
+
+    assertEquals(i16.getURL(), i32.getURL());
+    assertEquals(0, i16.getLeft());
+    assertEquals(0, i16.getTop());
+    assertEquals(0, i32.getLeft());
+    assertEquals(16, i32.getTop());
+
+    // Tiled across the least common multiple of the widths
+    BufferedImage composite = decode(i16.getURL());
+    assertEquals(32, composite.getWidth());
+    assertEquals(48, composite.getHeight());
+    assertPixels(composite, i16, "16x16.png", 0);
+    assertPixels(composite, i16, "16x16.png", 16);
+    assertPixels(composite, i32, "32x32.png", 0);
+  }
+
+  private Object compile() throws Exception {
+    File sources = new File(root, "src");
+    File generated = new File(root, "target/generated-sources/annotations");
+    File classes = new File(root, "target/classes");
+    File source = new File(sources, PACKAGE.replace('.', '/') + "/" + BUNDLE + ".java");
+    source.getParentFile().mkdirs();
+    generated.mkdirs();
+    classes.mkdirs();
+    Files.write(source.toPath(), Util.getBytes(bundleSource()));
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(null, null, null)) {
+      JavaCompiler.CompilationTask task =
+          compiler.getTask(
+              null,
+              fileManager,
+              null,
+              Arrays.asList(
+                  "-classpath",
+                  System.getProperty("java.class.path"),
+                  "-d",
+                  classes.getPath(),
+                  "-s",
+                  generated.getPath()),
+              null,
+              fileManager.getJavaFileObjects(source));
+      task.setProcessors(Collections.singletonList(new ClientBundleAnnotationProcessor()));
+      assertTrue("Compilation failed", task.call());
+    }
+
+    ClassLoader loader =
+        new URLClassLoader(new URL[] {classes.toURI().toURL()}, getClass().getClassLoader());
+    Constructor<?> constructor =
+        loader.loadClass(PACKAGE + "." + BUNDLE + "Impl").getDeclaredConstructor();
+    constructor.setAccessible(true);
+    return constructor.newInstance();
+  }
+
+  private static String bundleSource() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("package ").append(PACKAGE).append(";\n\n");
+    sb.append("import org.gwtproject.resources.client.ImageResource.ImageOptions;\n");
+    sb.append("import org.gwtproject.resources.client.ImageResource.RepeatStyle;\n\n");
+    sb.append("@Resource\n");
+    sb.append("public interface ").append(BUNDLE).append(" extends ClientBundle {\n");
+    sb.append("  @Source(\"16x16.png\") ImageResource i16x16();\n");
+    sb.append("  @Source(\"32x32.png\") ImageResource i32x32();\n");
+    sb.append("  @Source(\"64x64.png\") ImageResource i64x64();\n");
+    sb.append("  @Source(\"16x16.png\") @ImageOptions(repeatStyle = RepeatStyle.Horizontal)\n");
+    sb.append("  ImageResource i16x16Horizontal();\n");
+    sb.append("  @Source(\"32x32.png\") @ImageOptions(repeatStyle = RepeatStyle.Horizontal)\n");
+    sb.append("  ImageResource i32x32Horizontal();\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  private ImageResourcePrototype image(String method) throws Exception {
+    return (ImageResourcePrototype) bundle.getClass().getMethod(method).invoke(bundle);
+  }
+
+  private static BufferedImage decode(String dataUrl) throws IOException {
+    byte[] png = Base64.getDecoder().decode(dataUrl.substring(dataUrl.indexOf(',') + 1));
+    return ImageIO.read(new ByteArrayInputStream(png));
+  }
+
+  /**
+   * Compares the source image with the part of the composite image at the position of the
+   * resource, shifted right by <code>dx</code>.
+   */
+  private static void assertPixels(
+      BufferedImage composite, ImageResourcePrototype resource, String fileName, int dx)
+      throws IOException {
+    BufferedImage expected =
+        ImageIO.read(
+            ImageResourceAtlasTest.class.getResource(
+                "/" + PACKAGE.replace('.', '/') + "/" + fileName));
+    assertEquals(expected.getWidth(), resource.getWidth());
+    assertEquals(expected.getHeight(), resource.getHeight());
+    assertTrue(resource.getLeft() + dx + resource.getWidth() <= composite.getWidth());
+    assertTrue(resource.getTop() + resource.getHeight() <= composite.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals(
+            resource.getName() + " at " + x + "," + y,
+            expected.getRGB(x, y),
+            composite.getRGB(resource.getLeft() + dx + x, resource.getTop() + y));
+      }
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Collections;
+import junit.framework.TestCase;
+import org.gwtproject.resources.client.TextResource;
+import org.gwtproject.resources.context.BundleCompiler;
+import org.gwtproject.resources.rg.util.Util;
+
+/**
+ * Compiles a bundle with a short and a long text and checks the TextResources of its generated
+ * implementation. A long text does not fit in one string literal and is assembled from chunks,
+ * only on the first call.
+ */
+public class TextResourceGeneratorTest extends TestCase {
+  private static final String PACKAGE_PATH = "org/gwtproject/resources/text/";
+  private static final String BUNDLE = "org.gwtproject.resources.text.TextBundle";
+
+  /** Longer than the chunks of the generator, with characters to escape. */
+  private static final String LONG_TEXT = longText();
+
+  private BundleCompiler compiler;
+  private Object bundle;
+
+  @Override
+  protected void setUp() throws Exception {
+    compiler = new BundleCompiler(Files.createTempDirectory("text").toFile());
+    compiler.write(
+        PACKAGE_PATH + "TextBundle.java",
+        "package org.gwtproject.resources.text;\n\n"
+            + "import org.gwtproject.resources.client.ClientBundle;\n"
+            + "import org.gwtproject.resources.client.Resource;\n"
+            + "import org.gwtproject.resources.client.TextResource;\n\n"
+            + "@Resource\n"
+            + "public interface TextBundle extends ClientBundle {\n"
+            + "  @Source(\"short.txt\")\n"
+            + "  TextResource shortText();\n\n"
+            + "  @Source(\"long.txt\")\n"
+            + "  TextResource longText();\n"
+            + "}\n");
+    compiler.write(PACKAGE_PATH + "short.txt", "short \"text\"");
+    compiler.write(PACKAGE_PATH + "long.txt", LONG_TEXT);
+    compiler.compile(
+        Collections.singletonMap(KEY_CLIENT_BUNDLE_INCREMENTAL, "false"),
+        PACKAGE_PATH + "TextBundle.java");
+    bundle = compiler.newInstance(BUNDLE + "Impl");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(compiler.getRoot(), false);
+  }
+
+  public void testShortTextIsALiteral() throws Exception {
+    TextResource resource = resource("shortText");
+
+    assertEquals("short \"text\"", resource.getText());
+    assertFalse(hasTextField(resource));
+  }
+
+  public void testLongTextIsAssembledOnce() throws Exception {
+    TextResource resource = resource("longText");
+
+    assertTrue(hasTextField(resource));
+    String text = resource.getText();
+    assertEquals(LONG_TEXT, text);
+    assertSame(text, resource.getText());
+  }
+
+  private TextResource resource(String method) throws Exception {
+    Method accessor = bundle.getClass().getMethod(method);
+    accessor.setAccessible(true);
+    return (TextResource) accessor.invoke(bundle);
+  }
+
+  private static boolean hasTextField(TextResource resource) {
+    try {
+      resource.getClass().getDeclaredField("text");
+      return true;
+    } catch (NoSuchFieldException e) {
+      return false;
+    }
+  }
+
+  private static String longText() {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 40000) {
+      sb.append("line ").append(sb.length()).append(" \"quoted\" \\\n");
+    }
+    return sb.toString();
+  }
+}
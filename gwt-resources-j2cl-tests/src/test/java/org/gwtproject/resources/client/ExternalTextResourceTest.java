@@ -30,6 +30,25 @@ public class ExternalTextResourceTest {
     assertEquals("needsEscapeExternal", r.getResource("needsEscapeExternal").getName());
   }
 
+  public void testPrefetchWithoutTexts() {
+    final PrefetchResources r = new ExternalTextResourceTest_PrefetchResourcesImpl();
+    final boolean[] done = new boolean[1];
+    // Only data resources, so there is nothing to wait for
+    r.prefetch(
+        new ClientBundleWithPrefetch.PrefetchCallback() {
+          @Override
+          public void onError(ResourceException e) {
+            fail(e.toString());
+          }
+
+          @Override
+          public void onSuccess() {
+            done[0] = true;
+          }
+        });
+    assertTrue(done[0]);
+  }
+
   @Resource
   interface ExternalTextResources extends ClientBundleWithLookup {
     @Source("hello.txt")
@@ -39,6 +58,12 @@ public class ExternalTextResourceTest {
     ExternalTextResource needsEscapeExternal();
   }
 
+  @Resource
+  interface PrefetchResources extends ClientBundleWithPrefetch {
+    @Source("hello.txt")
+    DataResource helloData();
+  }
+
   class MyResourceCallback implements ResourceCallback<TextResource> {
     String result;
 
@@ -37,6 +37,16 @@ public class TextResourceTest {
     assertEquals(6, resources.length);
   }
 
+  public void testLookup() {
+    Resources r = new TextResourceTest_ResourcesImpl();
+
+    assertSame(r.helloWorldRelative(), r.getResource("helloWorldRelative"));
+    assertSame(r.helloWorldExternal(), r.getResource("helloWorldExternal"));
+    assertNull(r.getResource("missing"));
+    assertNull(r.getResource(null));
+    assertSame(r.getResources(), r.getResources());
+  }
+
   public void testAnotatelessExternalText() {
     Resources r = new TextResourceTest_ResourcesImpl();
 
@@ -41,6 +41,10 @@ public class ClientBundleClassBuilder {
   public void process() throws UnableToCompleteException {
     StandardGeneratorContext standardGeneratorContext = new StandardGeneratorContext(context);
     InlineClientBundleGenerator inlineClientBundleGenerator = new InlineClientBundleGenerator();
-    inlineClientBundleGenerator.generate(logger, standardGeneratorContext, elements);
+    try {
+      inlineClientBundleGenerator.generate(logger, standardGeneratorContext, elements);
+    } finally {
+      standardGeneratorContext.awaitCommittedResources(logger);
+    }
   }
 }
@@ -15,11 +15,23 @@
  */
 package org.gwtproject.resources.context;
 
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_PARALLEL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_REPORT;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_REPORT_LOCATION;
+
 import com.google.auto.common.MoreElements;
 import com.google.auto.common.MoreTypes;
 import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
@@ -28,14 +40,19 @@ import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import org.gwtproject.resources.client.ClientBundleWithLookup;
+import org.gwtproject.resources.client.ClientBundleWithPrefetch;
+import org.gwtproject.resources.client.DataResource;
+import org.gwtproject.resources.client.ExternalTextResource;
 import org.gwtproject.resources.client.Resource;
 import org.gwtproject.resources.client.ResourcePrototype;
+import org.gwtproject.resources.client.impl.ResourcePrefetcher;
 import org.gwtproject.resources.ext.*;
 import org.gwtproject.resources.rg.BundleResourceGenerator;
 import org.gwtproject.resources.rg.Generator;
 import org.gwtproject.resources.rg.NameFactory;
 import org.gwtproject.resources.rg.rebind.ClassSourceFileComposerFactory;
 import org.gwtproject.resources.rg.util.MoreTypeUtils;
+import org.gwtproject.resources.rg.util.PhaseTimer;
 import org.gwtproject.resources.rg.util.SourceWriter;
 import org.gwtproject.resources.rg.util.Util;
 
@@ -63,29 +80,26 @@ import org.gwtproject.resources.rg.util.Util;
  * }
  * // Other ResourceGenerator-defined fields
  * private static ResourceType resource;
- * private static HashMap&lt;String, ResourcePrototype&gt; resourceMap;
+ * private static ResourcePrototype[] resources;
  * public ResourcePrototype[] getResources() {
- *   return new ResourcePrototype[] { resource() };
+ *   if (resources == null) {
+ *     resources = new ResourcePrototype[] { resource() };
+ *   }
+ *   return resources;
  * }
  * public ResourcePrototype getResource(String name) {
- *   if (GWT.isScript()) {
- *     return getResourceNative(name);
- *   } else {
- *     if (resourceMap == null) {
- *       resourceMap = new HashMap<String, ResourcePrototype>();
- *       resourceMap.put("resource", resource());
- *     }
- *     return resourceMap.get(name);
+ *   if (name == null) {
+ *     return null;
  *   }
- * }
- * private native ResourcePrototype getResourceNative(String name) /-{
  *   switch (name) {
- *     case 'resource': return this.@...::resource()();
+ *     case "resource": return resource();
  *   }
  *   return null;
- * }-/
+ * }
  * </pre>
  *
+ * Looking a resource up by name only initializes that resource.
+ *
  * The instantiation of the individual ResourcePrototypes is done in the content of an instance of
  * the ClientBundle type so that resources can refer to one another by simply emitting a call to
  * <code>resource()</code>.
@@ -99,62 +113,395 @@ public abstract class AbstractClientBundleGenerator extends Generator {
       new HashMap<>();
   private Map<TypeElement, Map<ResourceGenerator, List<ExecutableElement>>>
       typeElementResourceGeneratorsMap = new HashMap<>();
+  private Map<TypeElement, TrackingGeneratorContext> typeElementTrackersMap = new HashMap<>();
+  private Map<TypeElement, String> typeElementKeysMap = new HashMap<>();
+  private Map<TypeElement, String> upToDateSources = new HashMap<>();
+  private Map<TypeElement, Map<String, byte[]>> cachedResources = new HashMap<>();
 
   private AptContext aptContext;
+  private BundleFingerprint fingerprint;
+  private IncrementalBundleCache incrementalCache;
+  private BundleBuildCache buildCache;
+  private BundleReport report;
+  private ForkJoinPool pool;
 
   @Override
   public void generate(
       TreeLogger logger, GeneratorContext generatorContext, Set<TypeElement> bundles)
       throws UnableToCompleteException {
     this.aptContext = generatorContext.getAptContext();
+    PropertyOracle propertyOracle = generatorContext.getPropertyOracle();
+    if (propertyOracle
+        .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_INCREMENTAL)
+        .asSingleBooleanValue()) {
+      incrementalCache = new IncrementalBundleCache(logger, generatorContext);
+    }
+    List<String> buildCacheLocation =
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION)
+            .getValues();
+    if (!buildCacheLocation.isEmpty()) {
+      buildCache = new BundleBuildCache(logger, generatorContext, buildCacheLocation.get(0));
+    }
+    if (incrementalCache != null || buildCache != null) {
+      fingerprint = new BundleFingerprint(aptContext);
+    }
+    if (propertyOracle
+        .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_REPORT)
+        .asSingleBooleanValue()) {
+      report =
+          new BundleReport(
+              new File(
+                  propertyOracle
+                      .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_REPORT_LOCATION)
+                      .asSingleValue()));
+    }
+    boolean parallel =
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_PARALLEL)
+            .asSingleBooleanValue();
+    if (parallel) {
+      // One pool for the whole round, shared by the bundles and their ResourceGenerators. Without
+      // it, ResourceGenerators use the common pool.
+      pool = new ForkJoinPool(Util.getThreadCount(logger, propertyOracle));
+    }
+    try (PhaseTimer timer = PhaseTimer.start("generate", null, null, getClass())) {
+      if (parallel && bundles.size() > 1) {
+        generateInParallel(logger, generatorContext, bundles);
+      } else {
+        generateSerially(logger, generatorContext, bundles);
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+        pool = null;
+      }
+    }
+    if (report != null) {
+      report.write(logger);
+    }
+  }
+
+  private void generateSerially(
+      TreeLogger logger, GeneratorContext generatorContext, Set<TypeElement> bundles)
+      throws UnableToCompleteException {
     for (TypeElement bundle : bundles) {
-      initAndPrepare(logger, generatorContext, bundle);
+      init(logger, createBundleContext(generatorContext, bundle), bundle);
+      if (!isUpToDate(logger, bundle)) {
+        prepare(logger, bundle);
+      }
     }
     for (TypeElement bundle : bundles) {
-      process(logger, generatorContext, bundle);
+      process(logger, bundle);
     }
   }
 
-  private void initAndPrepare(
-      TreeLogger logger, GeneratorContext generatorContext, TypeElement bundle)
+  /**
+   * Generates the bundles on the pool of the round. Everything that depends on the order in which
+   * the bundles are visited (ResourceGenerator initialization, the Filer, resource files) stays on
+   * the calling thread and runs in bundle order, so the output is the same as a serial run. Only
+   * {@link ResourceGenerator#prepare} and the creation of the fields and assignments of each bundle
+   * run concurrently.
+   */
+  private void generateInParallel(
+      TreeLogger logger, GeneratorContext generatorContext, Set<TypeElement> bundles)
       throws UnableToCompleteException {
-    // Ensure that the requested type exists
-    if (bundle == null) {
-      logger.log(TreeLogger.ERROR, "Could not find requested typeName");
+    Map<TypeElement, DeferredGeneratorContext> deferredContexts = new LinkedHashMap<>();
+    Set<TypeElement> outdated = new LinkedHashSet<>();
+    for (TypeElement bundle : bundles) {
+      DeferredGeneratorContext deferredContext =
+          new DeferredGeneratorContext(createBundleContext(generatorContext, bundle));
+      deferredContexts.put(bundle, deferredContext);
+      init(logger, deferredContext, bundle);
+      if (!isUpToDate(logger, bundle)) {
+        outdated.add(bundle);
+      }
+    }
+
+    forEachBundle(logger, pool, outdated, bundle -> prepare(logger, bundle));
+
+    Map<TypeElement, PrintWriter> writers = new LinkedHashMap<>();
+    for (TypeElement bundle : outdated) {
+      PrintWriter out = createBundle(logger, deferredContexts.get(bundle), bundle);
+      if (out != null) {
+        writers.put(bundle, out);
+      }
+    }
+
+    Map<TypeElement, RecordingSourceWriter> bodies =
+        forEachBundle(
+            logger,
+            pool,
+            writers.keySet(),
+            bundle -> {
+              RecordingSourceWriter body = new RecordingSourceWriter();
+              writeBundleBody(logger, body, bundle);
+              return body;
+            });
+
+    for (TypeElement bundle : bundles) {
+      DeferredGeneratorContext deferredContext = deferredContexts.get(bundle);
+      if (!outdated.contains(bundle)) {
+        // Nothing was deferred, let the bundle write straight through
+        deferredContext.flush(logger);
+        process(logger, bundle);
+        continue;
+      }
+      PrintWriter out = writers.get(bundle);
+      if (out != null) {
+        SourceWriter sw = createSourceWriter(deferredContext, bundle, out);
+        bodies.get(bundle).replay(sw);
+        sw.commit(logger);
+      }
+      deferredContext.flush(logger);
+      finish(
+          logger,
+          typeElementResourceContextsMap.get(bundle),
+          typeElementResourceGeneratorsMap.get(bundle).keySet());
+      doFinish(logger);
+      storeState(logger, bundle);
+      addToReport(bundle);
+    }
+  }
+
+  /**
+   * Runs the task for every bundle on the pool and waits for all of them to complete, so that as
+   * many errors as possible are reported before failing.
+   */
+  private <T> Map<TypeElement, T> forEachBundle(
+      TreeLogger logger, ForkJoinPool pool, Set<TypeElement> bundles, BundleTask<T> task)
+      throws UnableToCompleteException {
+    Map<TypeElement, ForkJoinTask<T>> tasks = new LinkedHashMap<>();
+    for (TypeElement bundle : bundles) {
+      tasks.put(bundle, pool.submit(() -> task.run(bundle)));
+    }
+
+    boolean fail = false;
+    Map<TypeElement, T> toReturn = new LinkedHashMap<>();
+    for (Map.Entry<TypeElement, ForkJoinTask<T>> entry : tasks.entrySet()) {
+      try {
+        toReturn.put(entry.getKey(), entry.getValue().get());
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof UnableToCompleteException)) {
+          logger.log(
+              TreeLogger.ERROR,
+              "Unexpected error while generating "
+                  + MoreTypeUtils.getQualifiedSourceName(entry.getKey()),
+              e.getCause());
+        }
+        fail = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        logger.log(TreeLogger.ERROR, "Interrupted while generating ClientBundles", e);
+        throw new UnableToCompleteException();
+      }
+    }
+
+    if (fail) {
       throw new UnableToCompleteException();
-    } else if (!bundle.getKind().isInterface()) {
-      // The incoming type wasn't a plain interface, we don't support
-      // abstract base classes
+    }
+    return toReturn;
+  }
+
+  /** A unit of per-bundle work that may be run on a pool thread. */
+  private interface BundleTask<T> {
+    T run(TypeElement bundle) throws UnableToCompleteException;
+  }
+
+  /**
+   * Returns the GeneratorContext the ResourceGenerators of a bundle are run with. When incremental
+   * generation, the build cache or the report is enabled it records what the bundle depends on.
+   */
+  private GeneratorContext createBundleContext(
+      GeneratorContext generatorContext, TypeElement bundle) {
+    if (fingerprint == null && report == null) {
+      return generatorContext;
+    }
+    TrackingGeneratorContext tracker = new TrackingGeneratorContext(generatorContext);
+    typeElementTrackersMap.put(bundle, tracker);
+    return tracker;
+  }
+
+  /**
+   * Checks whether the source generated for an initialized bundle by a previous build, or found in
+   * the build cache, can be reused, in which case its ResourceGenerators are not prepared. Must be
+   * called in bundle order.
+   */
+  private boolean isUpToDate(TreeLogger logger, TypeElement bundle) {
+    if (fingerprint == null) {
+      return false;
+    }
+    String key = fingerprint.computeKey(bundle);
+    typeElementKeysMap.put(bundle, key);
+    String source = null;
+    if (incrementalCache != null) {
+      source = incrementalCache.findSource(logger, bundle, key);
+    }
+    if (source == null && buildCache != null) {
+      BundleBuildCache.Entry entry = buildCache.find(logger, key);
+      if (entry != null) {
+        source = entry.getSource();
+        cachedResources.put(bundle, entry.getResources());
+      }
+    }
+    if (source == null) {
+      return false;
+    }
+    if (logger.isLoggable(TreeLogger.DEBUG)) {
       logger.log(
-          TreeLogger.ERROR,
-          MoreTypeUtils.getQualifiedSourceName(bundle) + " is not an interface.",
-          null);
+          TreeLogger.DEBUG,
+          MoreTypeUtils.getQualifiedSourceName(bundle)
+              + (cachedResources.containsKey(bundle)
+                  ? " was found in the build cache"
+                  : " is up to date"));
+    }
+    upToDateSources.put(bundle, source);
+    return true;
+  }
+
+  private void storeState(TreeLogger logger, TypeElement bundle) {
+    String key = typeElementKeysMap.get(bundle);
+    TrackingGeneratorContext tracker = typeElementTrackersMap.get(bundle);
+    if (incrementalCache != null) {
+      incrementalCache.store(logger, bundle, key, tracker);
+    }
+    if (buildCache != null) {
+      buildCache.store(logger, key, tracker);
+    }
+  }
+
+  private void addToReport(TypeElement bundle) {
+    if (report != null) {
+      report.addBundle(
+          bundle.getQualifiedName().toString(),
+          typeElementTrackersMap.get(bundle),
+          upToDateSources.containsKey(bundle));
+    }
+  }
+
+  /** Starts timing a phase of the generation of a bundle, see {@link #endPhase}. */
+  private PhaseTimer startPhase(
+      String phase, ResourceContext context, ExecutableElement method, ResourceGenerator rg) {
+    return PhaseTimer.start(
+        phase, context.getClientBundleType(), method, rg == null ? null : rg.getClass());
+  }
+
+  private void endPhase(PhaseTimer timer) {
+    timer.close();
+    if (report != null) {
+      report.add(timer);
+    }
+  }
+
+  /** Deploys the resources of a bundle found in the build cache. */
+  private void writeCachedResources(
+      TreeLogger logger, GeneratorContext generatorContext, Map<String, byte[]> resources)
+      throws UnableToCompleteException {
+    for (Map.Entry<String, byte[]> entry : resources.entrySet()) {
+      OutputStream out = generatorContext.tryCreateResource(logger, entry.getKey());
+      // Another bundle may already have written the same file
+      if (out == null) {
+        continue;
+      }
+      try {
+        out.write(entry.getValue());
+      } catch (IOException e) {
+        logger.log(TreeLogger.ERROR, "Unable to write data to output name " + entry.getKey(), e);
+        throw new UnableToCompleteException();
+      }
+      generatorContext.commitResource(logger, out);
+    }
+  }
+
+  /**
+   * Computes what is needed to generate a bundle and initializes its ResourceGenerators. Unless the
+   * bundle is up to date, {@link #prepare(TreeLogger, TypeElement)} must be called afterwards.
+   * ResourceGenerators are initialized in bundle order since some of them, e.g. CssResource
+   * obfuscation, share state between bundles.
+   */
+  private void init(TreeLogger logger, GeneratorContext generatorContext, TypeElement bundle)
+      throws UnableToCompleteException {
+    Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList =
+        createBundleState(logger, generatorContext, bundle);
+    AbstractResourceContext resourceContext = typeElementResourceContextsMap.get(bundle);
+
+    boolean success = true;
+    Map<ResourceGenerator, List<ExecutableElement>> generators = new LinkedHashMap<>();
+    for (Map.Entry<Class<? extends ResourceGenerator>, List<ExecutableElement>> entry :
+        taskList.entrySet()) {
+      ResourceGenerator rg = instantiateResourceGenerator(logger, entry.getKey());
+      generators.put(rg, entry.getValue());
+      success &= init(logger, resourceContext, rg);
+    }
+    typeElementResourceGeneratorsMap.put(bundle, generators);
+
+    if (!success) {
       throw new UnableToCompleteException();
     }
+  }
+
+  /** Computes the task list, resource context and fields of a bundle. */
+  private Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> createBundleState(
+      TreeLogger logger, GeneratorContext generatorContext, TypeElement bundle)
+      throws UnableToCompleteException {
+    validateBundleType(logger, bundle);
 
     /*
      * This associates the methods to implement with the ResourceGenerator class
      * that will generate the implementations of those methods.
      */
-    Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList =
-        createTaskList(logger, bundle, generatorContext);
+    PhaseTimer timer = PhaseTimer.start("createTaskList", bundle, null, null);
+    Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList;
+    try {
+      taskList = createTaskList(logger, bundle, generatorContext);
+    } finally {
+      endPhase(timer);
+    }
     taskListByTypeElement.put(bundle, taskList);
     /*
      * Additional objects that hold state during the generation process.
      */
     AbstractResourceContext resourceContext =
         createResourceContext(logger, generatorContext, bundle);
+    resourceContext.setPool(pool);
     typeElementResourceContextsMap.put(bundle, resourceContext);
     FieldsImpl fields = new FieldsImpl();
     typeElementFieldsMap.put(bundle, fields);
     doAddFields(logger, generatorContext, fields);
+    return taskList;
+  }
 
-    /* Initialize the ResourceGenerators and prepare them for subsequent code
-     * generation.
-     */
-    Map<ResourceGenerator, List<ExecutableElement>> generators =
-        initAndPrepare(logger, taskList, resourceContext);
-    typeElementResourceGeneratorsMap.put(bundle, generators);
+  /** Prepares the ResourceGenerators of a bundle initialized by {@link #init}. */
+  private Void prepare(TreeLogger logger, TypeElement bundle) throws UnableToCompleteException {
+    AbstractResourceContext resourceContext = typeElementResourceContextsMap.get(bundle);
+    boolean success = true;
+    for (Map.Entry<ResourceGenerator, List<ExecutableElement>> entry :
+        typeElementResourceGeneratorsMap.get(bundle).entrySet()) {
+      resourceContext.setCurrentResourceGenerator(entry.getKey());
+      success &= prepare(logger, resourceContext, entry.getKey(), entry.getValue());
+    }
+
+    if (!success) {
+      throw new UnableToCompleteException();
+    }
+    return null;
+  }
+
+  private void validateBundleType(TreeLogger logger, TypeElement bundle)
+      throws UnableToCompleteException {
+    // Ensure that the requested type exists
+    if (bundle == null) {
+      logger.log(TreeLogger.ERROR, "Could not find requested typeName");
+      throw new UnableToCompleteException();
+    } else if (!bundle.getKind().isInterface()) {
+      // The incoming type wasn't a plain interface, we don't support
+      // abstract base classes
+      logger.log(
+          TreeLogger.ERROR,
+          MoreTypeUtils.getQualifiedSourceName(bundle) + " is not an interface.",
+          null);
+      throw new UnableToCompleteException();
+    }
   }
 
   /**
@@ -203,7 +550,9 @@ public abstract class AbstractClientBundleGenerator extends Generator {
         MoreElements.getLocalAndInheritedMethods(sourceType, types, elements);
     for (ExecutableElement method : methods) {
       TypeMirror theReturn = method.getReturnType();
-      if (MoreTypes.isTypeOf(ClientBundleWithLookup.class, method.getEnclosingElement().asType())) {
+      if (MoreTypes.isTypeOf(ClientBundleWithLookup.class, method.getEnclosingElement().asType())
+          || MoreTypes.isTypeOf(
+              ClientBundleWithPrefetch.class, method.getEnclosingElement().asType())) {
         // Methods that we must generate, but that are not resources
         continue;
       } else if (!MoreTypeUtils.isAbstract(method)) {
@@ -287,36 +636,9 @@ public abstract class AbstractClientBundleGenerator extends Generator {
     throw new UnableToCompleteException();
   }
 
-  private Map<ResourceGenerator, List<ExecutableElement>> initAndPrepare(
-      TreeLogger logger,
-      Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList,
-      AbstractResourceContext resourceContext)
-      throws UnableToCompleteException {
-
-    // Try to provide as many errors as possible before failing.
-    boolean success = true;
-    Map<ResourceGenerator, List<ExecutableElement>> toReturn = new LinkedHashMap<>();
-
-    // Run the ResourceGenerators to generate implementations of the methods
-    for (Map.Entry<Class<? extends ResourceGenerator>, List<ExecutableElement>> entry :
-        taskList.entrySet()) {
-      ResourceGenerator rg = instantiateResourceGenerator(logger, entry.getKey());
-      toReturn.put(rg, entry.getValue());
-      success &= initAndPrepare(logger, resourceContext, rg, entry.getValue());
-    }
-
-    if (!success) {
-      throw new UnableToCompleteException();
-    }
-
-    return toReturn;
-  }
-
-  private boolean initAndPrepare(
-      TreeLogger logger,
-      AbstractResourceContext resourceContext,
-      ResourceGenerator rg,
-      List<ExecutableElement> generatorMethods) {
+  private boolean init(
+      TreeLogger logger, AbstractResourceContext resourceContext, ResourceGenerator rg) {
+    PhaseTimer timer = startPhase("init", resourceContext, null, rg);
     try {
       resourceContext.setCurrentResourceGenerator(rg);
       rg.init(
@@ -326,13 +648,23 @@ public abstract class AbstractClientBundleGenerator extends Generator {
           resourceContext);
     } catch (UnableToCompleteException e) {
       return false;
+    } finally {
+      endPhase(timer);
     }
+    return true;
+  }
 
+  private boolean prepare(
+      TreeLogger logger,
+      AbstractResourceContext resourceContext,
+      ResourceGenerator rg,
+      List<ExecutableElement> generatorMethods) {
     boolean fail = false;
 
     // Prepare the ResourceGenerator by telling it all methods that it is
     // expected to produce.
     for (ExecutableElement m : generatorMethods) {
+      PhaseTimer timer = startPhase("prepare", resourceContext, m, rg);
       try {
         rg.prepare(
             logger.branch(TreeLogger.DEBUG, "Preparing method " + m.getSimpleName().toString()),
@@ -340,6 +672,8 @@ public abstract class AbstractClientBundleGenerator extends Generator {
             m);
       } catch (UnableToCompleteException e) {
         fail = true;
+      } finally {
+        endPhase(timer);
       }
     }
     return !fail;
@@ -362,14 +696,50 @@ public abstract class AbstractClientBundleGenerator extends Generator {
     throw new UnableToCompleteException();
   }
 
-  private void process(TreeLogger logger, GeneratorContext generatorContext, TypeElement bundle)
+  private void process(TreeLogger logger, TypeElement bundle) throws UnableToCompleteException {
+    GeneratorContext generatorContext =
+        typeElementResourceContextsMap.get(bundle).getGeneratorContext();
+    PrintWriter out = createBundle(logger, generatorContext, bundle);
+    String upToDateSource = upToDateSources.get(bundle);
+    if (upToDateSource != null) {
+      if (cachedResources.containsKey(bundle)) {
+        writeCachedResources(logger, generatorContext, cachedResources.get(bundle));
+      }
+      // The ResourceGenerators weren't prepared, so there is nothing to finish
+      if (out != null) {
+        out.print(upToDateSource);
+        out.close();
+        generatorContext.commit(logger, out);
+      }
+      addToReport(bundle);
+      return;
+    }
+    // If an implementation already exists, we don't need to do any work
+    if (out != null) {
+      // All source gets written through this Writer
+      SourceWriter sw = createSourceWriter(generatorContext, bundle, out);
+      writeBundleBody(logger, sw, bundle);
+      sw.commit(logger);
+    }
+    finish(
+        logger,
+        typeElementResourceContextsMap.get(bundle),
+        typeElementResourceGeneratorsMap.get(bundle).keySet());
+    doFinish(logger);
+    storeState(logger, bundle);
+    addToReport(bundle);
+  }
+
+  /**
+   * Opens the implementation class of a prepared bundle.
+   *
+   * @return the writer for the new class, or <code>null</code> if it already exists
+   */
+  private PrintWriter createBundle(
+      TreeLogger logger, GeneratorContext generatorContext, TypeElement bundle)
       throws UnableToCompleteException {
-    Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList =
-        taskListByTypeElement.get(bundle);
     FieldsImpl fields = typeElementFieldsMap.get(bundle);
     AbstractResourceContext resourceContext = typeElementResourceContextsMap.get(bundle);
-    Map<ResourceGenerator, List<ExecutableElement>> generators =
-        typeElementResourceGeneratorsMap.get(bundle);
     /*
      * Now that the ResourceGenerators have been initialized and prepared, we
      * can compute the actual name of the implementation class in order to
@@ -378,48 +748,64 @@ public abstract class AbstractClientBundleGenerator extends Generator {
     String generatedSimpleSourceName = generateSimpleSourceName(logger, resourceContext);
     String packageName = MoreElements.getPackage(bundle).getQualifiedName().toString();
     PrintWriter out = generatorContext.tryCreate(logger, packageName, generatedSimpleSourceName);
-    // If an implementation already exists, we don't need to do any work
     if (out != null) {
       // There is actual work to do
       doCreateBundleForPermutation(logger, generatorContext, fields, generatedSimpleSourceName);
-      // Begin writing the generated source.
-      ClassSourceFileComposerFactory f =
-          new ClassSourceFileComposerFactory(packageName, generatedSimpleSourceName);
+      // Set the now-calculated simple source name
+      resourceContext.setSimpleSourceName(generatedSimpleSourceName);
+    }
+    return out;
+  }
 
-      // Used by the map methods
-      f.addImport(ResourcePrototype.class.getName());
+  private SourceWriter createSourceWriter(
+      GeneratorContext generatorContext, TypeElement bundle, PrintWriter out) {
+    String packageName = MoreElements.getPackage(bundle).getQualifiedName().toString();
+    String generatedSimpleSourceName =
+        typeElementResourceContextsMap.get(bundle).getImplementationSimpleSourceName();
+    // Begin writing the generated source.
+    ClassSourceFileComposerFactory f =
+        new ClassSourceFileComposerFactory(packageName, generatedSimpleSourceName);
 
-      // The whole point of this exercise
-      f.addImplementedInterface(Util.getQualifiedSourceName(bundle, aptContext.elements));
+    // Used by the map methods
+    f.addImport(ResourcePrototype.class.getName());
 
-      // All source gets written through this Writer
-      SourceWriter sw = f.createSourceWriter(generatorContext, out);
-      // Set the now-calculated simple source name
-      resourceContext.setSimpleSourceName(generatedSimpleSourceName);
+    // The whole point of this exercise
+    f.addImplementedInterface(Util.getQualifiedSourceName(bundle, aptContext.elements));
 
-      String hashMapStringResource = "java.util.HashMap<String, ResourcePrototype>";
-      String resourceMapField = fields.define(hashMapStringResource, "resourceMap");
+    return f.createSourceWriter(generatorContext, out);
+  }
 
-      // Write a static instance for use by the static initializers.
-      sw.print("private static " + generatedSimpleSourceName + " ");
-      sw.println(INSTANCE_NAME + " = new " + generatedSimpleSourceName + "();");
+  /** Writes everything between the class declaration and its closing brace. */
+  private void writeBundleBody(TreeLogger logger, SourceWriter sw, TypeElement bundle)
+      throws UnableToCompleteException {
+    Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList =
+        taskListByTypeElement.get(bundle);
+    FieldsImpl fields = typeElementFieldsMap.get(bundle);
+    AbstractResourceContext resourceContext = typeElementResourceContextsMap.get(bundle);
+    Map<ResourceGenerator, List<ExecutableElement>> generators =
+        typeElementResourceGeneratorsMap.get(bundle);
+    String generatedSimpleSourceName = resourceContext.getImplementationSimpleSourceName();
 
-      // Write the generated code to disk
-      createFieldsAndAssignments(logger, sw, generators, resourceContext, fields);
+    String resourcesField = fields.define("ResourcePrototype[]", "resources");
 
-      // Print the accumulated field definitions
-      sw.println(fields.getCode());
+    // Write a static instance for use by the static initializers.
+    sw.print("private static " + generatedSimpleSourceName + " ");
+    sw.println(INSTANCE_NAME + " = new " + generatedSimpleSourceName + "();");
 
-      /*
-       *The map -accessor methods use JSNI and need a fully - qualified class
-       *name, but should not include any sub - bundles.
-       */
-      writeMapMethods(sw, taskList, hashMapStringResource, resourceMapField);
-      sw.commit(logger);
-    }
+    // Write the generated code to disk
+    createFieldsAndAssignments(logger, sw, generators, resourceContext, fields);
 
-    finish(logger, resourceContext, generators.keySet());
-    doFinish(logger);
+    // Print the accumulated field definitions
+    sw.println(fields.getCode());
+
+    // getResources() and getResource(String) call the accessor methods, sub-bundles are left out
+    writeMapMethods(sw, taskList, resourcesField);
+
+    TypeElement prefetchType =
+        MoreTypeUtils.getTypeElementFromClass(ClientBundleWithPrefetch.class, aptContext.elements);
+    if (aptContext.types.isAssignable(bundle.asType(), prefetchType.asType())) {
+      writePrefetchMethod(sw, taskList);
+    }
   }
 
   /**
@@ -452,10 +838,13 @@ public abstract class AbstractClientBundleGenerator extends Generator {
     // Finalize the ResourceGenerator
     for (ResourceGenerator rg : generators) {
       context.setCurrentResourceGenerator(rg);
+      PhaseTimer timer = startPhase("finish", context, null, rg);
       try {
         rg.finish(logger.branch(TreeLogger.DEBUG, "Finishing ResourceGenerator"), context);
       } catch (UnableToCompleteException e) {
         fail = true;
+      } finally {
+        endPhase(timer);
       }
     }
     if (fail) {
@@ -506,10 +895,13 @@ public abstract class AbstractClientBundleGenerator extends Generator {
     boolean fail = false;
     resourceContext.setCurrentResourceGenerator(rg);
     // Write all field values
+    PhaseTimer fieldsTimer = startPhase("createFields", resourceContext, null, rg);
     try {
       rg.createFields(logger.branch(TreeLogger.DEBUG, "Creating fields"), resourceContext, fields);
     } catch (UnableToCompleteException e) {
       return false;
+    } finally {
+      endPhase(fieldsTimer);
     }
 
     // Create the instance variables in the IRB subclass by calling
@@ -517,6 +909,7 @@ public abstract class AbstractClientBundleGenerator extends Generator {
     for (ExecutableElement m : generatorMethods) {
       String rhs;
 
+      PhaseTimer timer = startPhase("createAssignment", resourceContext, m, rg);
       try {
         rhs =
             rg.createAssignment(
@@ -528,6 +921,8 @@ public abstract class AbstractClientBundleGenerator extends Generator {
       } catch (UnableToCompleteException e) {
         fail = true;
         continue;
+      } finally {
+        endPhase(timer);
       }
 
       // Define a field that will hold the ResourcePrototype
@@ -580,61 +975,100 @@ public abstract class AbstractClientBundleGenerator extends Generator {
   }
 
   /**
-   * Emits getResources() and getResourceMap() implementations.
+   * Emits getResources() and getResource() implementations. The array returned by getResources()
+   * is built on first use, getResource() switches on the name so that only the requested resource
+   * is initialized.
    *
    * @param sw the output writer
    * @param taskList the list of methods to map by name
-   * @param resourceMapField field containing the Java String to Resource map
+   * @param resourcesField field caching the array returned by getResources()
    */
   private void writeMapMethods(
       SourceWriter sw,
       Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList,
-      String resourceMapType,
-      String resourceMapField) {
-
-    // Complete the IRB contract
-    sw.println("public ResourcePrototype[] getResources() {");
-    sw.indent();
-    sw.println("return new ResourcePrototype[] {");
-    sw.indent();
+      String resourcesField) {
+    List<String> names = new ArrayList<>();
     for (List<ExecutableElement> methods : taskList.values()) {
       for (ExecutableElement method : methods) {
         // ignore ClientBundles TODO
         TypeElement methodType = (TypeElement) MoreTypes.asElement(method.getReturnType());
-        if (methodType.getAnnotation(Resource.class) == null)
-          sw.println(method.getSimpleName() + "(), ");
+        if (methodType.getAnnotation(Resource.class) == null) {
+          names.add(method.getSimpleName().toString());
+        }
       }
     }
+
+    // Complete the IRB contract
+    sw.println("public ResourcePrototype[] getResources() {");
+    sw.indent();
+    sw.println("if (" + resourcesField + " == null) {");
+    sw.indent();
+    sw.println(resourcesField + " = new ResourcePrototype[] {");
+    sw.indent();
+    for (String name : names) {
+      sw.println(name + "(), ");
+    }
     sw.outdent();
     sw.println("};");
     sw.outdent();
     sw.println("}");
+    sw.println("return " + resourcesField + ";");
+    sw.outdent();
+    sw.println("}");
 
-    // Map implementation for dev mode.
     sw.println("public ResourcePrototype getResource(String name) {");
     sw.indent();
+    sw.println("if (name == null) {");
+    sw.indentln("return null;");
+    sw.println("}");
+    sw.println("switch (name) {");
     sw.indent();
-    sw.println("if (" + resourceMapField + " == null) {");
+    for (String name : names) {
+      sw.println("case \"" + name + "\": return " + name + "();");
+    }
+    sw.outdent();
+    sw.println("}");
+    sw.println("return null;");
+    sw.outdent();
+    sw.println("}");
+  }
+
+  /**
+   * Emits the prefetch() implementation of a {@link ClientBundleWithPrefetch}, which hands the
+   * bundle's external text and data resources to {@link ResourcePrefetcher}.
+   *
+   * @param sw the output writer
+   * @param taskList the methods of the bundle
+   */
+  private void writePrefetchMethod(
+      SourceWriter sw, Map<Class<? extends ResourceGenerator>, List<ExecutableElement>> taskList) {
+    TypeMirror externalTextType =
+        MoreTypeUtils.getTypeElementFromClass(ExternalTextResource.class, aptContext.elements)
+            .asType();
+    TypeMirror dataType =
+        MoreTypeUtils.getTypeElementFromClass(DataResource.class, aptContext.elements).asType();
+
+    sw.println(
+        "public void prefetch("
+            + ClientBundleWithPrefetch.PrefetchCallback.class.getCanonicalName()
+            + " callback) {");
     sw.indent();
-    sw.println(resourceMapField + " = new " + resourceMapType + "();");
-    for (List<ExecutableElement> list : taskList.values()) {
-      for (ExecutableElement method : list) {
-        // ignore ClientBundles TODO
-        TypeElement methodType = (TypeElement) MoreTypes.asElement(method.getReturnType());
-        if (methodType.getAnnotation(Resource.class) == null) {
-          sw.println(
-              resourceMapField
-                  + ".put(\""
-                  + method.getSimpleName()
-                  + "\", "
-                  + method.getSimpleName()
-                  + "());");
+    sw.println(ResourcePrefetcher.class.getCanonicalName() + ".prefetch(");
+    sw.indent();
+    sw.println("new ResourcePrototype[] {");
+    sw.indent();
+    for (List<ExecutableElement> methods : taskList.values()) {
+      for (ExecutableElement method : methods) {
+        TypeMirror returnType = method.getReturnType();
+        if (aptContext.types.isAssignable(returnType, externalTextType)
+            || aptContext.types.isAssignable(returnType, dataType)) {
+          sw.println(method.getSimpleName() + "(), ");
         }
       }
     }
     sw.outdent();
-    sw.println("}");
-    sw.println("return resourceMap.get(name);");
+    sw.println("},");
+    sw.println("callback);");
     sw.outdent();
     sw.outdent();
     sw.println("}");
@@ -15,18 +15,17 @@
  */
 package org.gwtproject.resources.context;
 
-import com.google.common.io.BaseEncoding;
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.ForkJoinPool;
 import javax.lang.model.element.TypeElement;
 import org.gwtproject.resources.ext.*;
-import org.gwtproject.resources.rg.util.Util;
 
 /** Defines base methods for ResourceContext implementations. */
 public abstract class AbstractResourceContext implements ResourceContext {
   /**
-   * The largest file size that will be inlined. Note that this value is taken before any encodings
-   * are applied.
+   * The default largest file size that will be inlined, see {@code ClientBundle.maxInlineSize}.
+   * Note that this value is taken before any encodings are applied.
    */
   protected static final int MAX_INLINE_SIZE = 2 << 15;
 
@@ -36,6 +35,7 @@ public abstract class AbstractResourceContext implements ResourceContext {
   private final TypeElement resourceBundleType;
   private String currentResourceGeneratorType;
   private String simpleSourceName;
+  private ForkJoinPool pool;
 
   protected AbstractResourceContext(
       TreeLogger logger,
@@ -48,8 +48,38 @@ public abstract class AbstractResourceContext implements ResourceContext {
     this.clientBundleCtx = clientBundleCtx;
   }
 
+  private static final char[] BASE64_ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
   protected static String toBase64(byte[] data) {
-    return BaseEncoding.base64().encode(data).replaceAll("\\s+", "");
+    StringBuilder sb = new StringBuilder(base64Length(data.length));
+    appendBase64(sb, data, 0, data.length);
+    return sb.toString();
+  }
+
+  /** Returns the number of characters needed to encode the given number of bytes in base64. */
+  protected static int base64Length(int byteCount) {
+    return 4 * ((byteCount + 2) / 3);
+  }
+
+  /**
+   * Appends the base64 encoding of a range of bytes, without line breaks. The range is padded
+   * only if its length is not a multiple of 3.
+   */
+  protected static void appendBase64(StringBuilder sb, byte[] data, int from, int to) {
+    int i = from;
+    for (; i + 2 < to; i += 3) {
+      int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+      sb.append(BASE64_ALPHABET[bits >>> 18])
+          .append(BASE64_ALPHABET[(bits >>> 12) & 0x3f])
+          .append(BASE64_ALPHABET[(bits >>> 6) & 0x3f])
+          .append(BASE64_ALPHABET[bits & 0x3f]);
+    }
+    if (i < to) {
+      int bits = (data[i] & 0xff) << 16 | (i + 1 < to ? (data[i + 1] & 0xff) << 8 : 0);
+      sb.append(BASE64_ALPHABET[bits >>> 18]).append(BASE64_ALPHABET[(bits >>> 12) & 0x3f]);
+      sb.append(i + 1 < to ? BASE64_ALPHABET[(bits >>> 6) & 0x3f] : '=').append('=');
+    }
   }
 
   @Deprecated
@@ -60,7 +90,7 @@ public abstract class AbstractResourceContext implements ResourceContext {
   public String deploy(URL resource, String mimeType, boolean forceExternal)
       throws UnableToCompleteException {
     String fileName = ResourceGeneratorUtil.baseName(resource);
-    byte[] bytes = Util.readURLAsBytes(resource);
+    byte[] bytes = context.getResourceContentCache().getBytes(resource);
     try {
       String finalMimeType =
           (mimeType != null) ? mimeType : resource.openConnection().getContentType();
@@ -94,6 +124,11 @@ public abstract class AbstractResourceContext implements ResourceContext {
     return simpleSourceName;
   }
 
+  public ForkJoinPool getPool() {
+    // Only parallel generation creates a pool of its own
+    return pool != null ? pool : ForkJoinPool.commonPool();
+  }
+
   public <T> boolean putCachedData(String key, T value) {
     key = currentResourceGeneratorType + ":" + key;
     return value != clientBundleCtx.putCachedData(key, value);
@@ -110,4 +145,8 @@ public abstract class AbstractResourceContext implements ResourceContext {
   void setSimpleSourceName(String name) {
     simpleSourceName = name;
   }
+
+  void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
 }
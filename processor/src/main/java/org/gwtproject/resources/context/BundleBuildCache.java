@@ -0,0 +1,292 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_CACHE_LOCATION;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.gwtproject.resources.ext.GeneratorContext;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContentCache;
+import org.gwtproject.resources.ext.ResourceOracle;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.util.Util;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A content-addressed cache of generated bundles that can be shared between workspaces and
+ * machines, located by the {@code ClientBundle.buildCacheLocation} property.
+ *
+ * <p>The cache directory holds three kinds of files:
+ *
+ * <ul>
+ *   <li><code>recipes/&lt;key&gt;.json</code> lists, for a {@link BundleFingerprint key}, the
+ *       resource paths and properties the bundle read when it was generated, and the resource
+ *       paths it looked up without finding a file,
+ *   <li><code>entries/&lt;hash&gt;.json</code> holds the generated source and the deployed
+ *       resources of a bundle, the hash covers the key, the content of the resources, the values
+ *       of the properties and the missing paths listed by the recipe,
+ *   <li><code>blobs/&lt;hash&gt;</code> holds the content of a deployed resource.
+ * </ul>
+ *
+ * Resources are recorded by the path the ResourceOracle finds them with rather than by URL, so an
+ * entry is found regardless of where the sources are checked out. All files are written
+ * atomically and never modified, concurrent builds may share a cache directory.
+ */
+class BundleBuildCache {
+
+  private final File cacheRoot;
+  private final File deployDir;
+  private final ResourceOracle resourceOracle;
+  private final PropertyOracle propertyOracle;
+  private final ResourceContentCache contentCache;
+
+  BundleBuildCache(TreeLogger logger, GeneratorContext context, String cacheRoot)
+      throws UnableToCompleteException {
+    this.cacheRoot = new File(cacheRoot);
+    this.resourceOracle = context.getResourcesOracle();
+    this.propertyOracle = context.getPropertyOracle();
+    this.contentCache = context.getResourceContentCache();
+    this.deployDir =
+        new File(
+            propertyOracle
+                .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_CACHE_LOCATION)
+                .asSingleValue());
+  }
+
+  /** Returns the cached generation of the bundle with the given key, or null. */
+  Entry find(TreeLogger logger, String key) {
+    File recipeFile = new File(cacheRoot, "recipes/" + key + ".json");
+    if (!recipeFile.isFile()) {
+      return null;
+    }
+    try {
+      String hash = computeEntryHash(key, new JSONObject(Util.readFileAsString(recipeFile)));
+      if (hash == null) {
+        return null;
+      }
+      File entryFile = new File(cacheRoot, "entries/" + hash + ".json");
+      if (!entryFile.isFile()) {
+        return null;
+      }
+      JSONObject state = new JSONObject(Util.readFileAsString(entryFile));
+      JSONObject resources = state.getJSONObject("resources");
+      Map<String, byte[]> deployed = new LinkedHashMap<>();
+      for (String partialPath : resources.keySet()) {
+        String blobHash = resources.getString(partialPath);
+        byte[] content = Util.readFileAsBytes(new File(cacheRoot, "blobs/" + blobHash));
+        if (content == null || !Util.computeStrongName(content).equals(blobHash)) {
+          return null;
+        }
+        deployed.put(partialPath, content);
+      }
+      return new Entry(state.getString("source"), deployed);
+    } catch (JSONException | NullPointerException e) {
+      logger.log(TreeLogger.DEBUG, "Ignoring unreadable build cache entry for " + key, e);
+      return null;
+    }
+  }
+
+  /** Adds a freshly generated bundle to the cache. */
+  void store(TreeLogger logger, String key, TrackingGeneratorContext tracker) {
+    if (tracker.getSource() == null) {
+      return;
+    }
+    JSONArray inputs = new JSONArray();
+    for (URL url : tracker.getInputs()) {
+      String path = findResourcePath(url);
+      if (path == null) {
+        logger.log(TreeLogger.DEBUG, "Not caching, unable to find a resource path for " + url);
+        return;
+      }
+      inputs.put(path);
+    }
+    JSONObject recipe = new JSONObject();
+    recipe.put("inputs", inputs);
+    recipe.put("missingResources", new JSONArray(tracker.getMissingResources()));
+    recipe.put(
+        "configurationProperties", new JSONArray(tracker.getConfigurationProperties().keySet()));
+    recipe.put("selectionProperties", new JSONArray(tracker.getSelectionProperties().keySet()));
+
+    String hash = computeEntryHash(key, recipe);
+    if (hash == null) {
+      return;
+    }
+
+    try {
+      // The deployed resources are read back from disk, they may still be being written
+      tracker.awaitCommittedResources(logger);
+    } catch (UnableToCompleteException e) {
+      logger.log(TreeLogger.DEBUG, "Not caching, the resources of the bundle were not written");
+      return;
+    }
+
+    try {
+      JSONObject resources = new JSONObject();
+      for (String partialPath : tracker.getOutputs()) {
+        byte[] content = Util.readFileAsBytes(new File(deployDir, partialPath));
+        if (content == null) {
+          return;
+        }
+        String blobHash = Util.computeStrongName(content);
+        File blob = new File(cacheRoot, "blobs/" + blobHash);
+        if (!blob.isFile()) {
+          write(blob, content);
+        }
+        resources.put(partialPath, blobHash);
+      }
+      JSONObject state = new JSONObject();
+      state.put("source", tracker.getSource());
+      state.put("resources", resources);
+      // The recipe goes last, it is useless without the entry
+      write(new File(cacheRoot, "entries/" + hash + ".json"), Util.getBytes(state.toString()));
+      write(new File(cacheRoot, "recipes/" + key + ".json"), Util.getBytes(recipe.toString()));
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to write to the build cache " + cacheRoot, e);
+    }
+  }
+
+  /**
+   * Hashes the key with the current content of the resources and the current values of the
+   * properties listed by the recipe. Returns null if one of the resources can't be found, or if
+   * one of the paths that were missing now has a file, which the bundle may prefer.
+   */
+  private String computeEntryHash(String key, JSONObject recipe) {
+    StringBuilder sb = new StringBuilder(key);
+    JSONArray inputs = recipe.getJSONArray("inputs");
+    for (int i = 0; i < inputs.length(); i++) {
+      String path = inputs.getString(i);
+      URL url = resourceOracle.findResource(path);
+      String strongName = url == null ? null : contentCache.getStrongName(url);
+      if (strongName == null) {
+        return null;
+      }
+      sb.append('\n').append(path).append('=').append(strongName);
+    }
+    JSONArray missingResources = recipe.getJSONArray("missingResources");
+    for (int i = 0; i < missingResources.length(); i++) {
+      String path = missingResources.getString(i);
+      if (resourceOracle.findResource(path) != null) {
+        return null;
+      }
+      sb.append('\n').append(path).append(" missing");
+    }
+    JSONArray configurationProperties = recipe.getJSONArray("configurationProperties");
+    for (int i = 0; i < configurationProperties.length(); i++) {
+      String name = configurationProperties.getString(i);
+      List<String> values;
+      try {
+        values = propertyOracle.getConfigurationProperty(TreeLogger.NULL, name).getValues();
+      } catch (UnableToCompleteException e) {
+        return null;
+      }
+      sb.append('\n').append(name).append('=').append(values);
+    }
+    JSONArray selectionProperties = recipe.getJSONArray("selectionProperties");
+    for (int i = 0; i < selectionProperties.length(); i++) {
+      String name = selectionProperties.getString(i);
+      String value;
+      try {
+        value = propertyOracle.getSelectionProperty(TreeLogger.NULL, name).getCurrentValue();
+      } catch (UnableToCompleteException e) {
+        value = null;
+      }
+      sb.append('\n').append(name).append(':').append(value);
+    }
+    return Util.computeStrongName(Util.getBytes(sb.toString()));
+  }
+
+  /**
+   * Finds the shortest path the ResourceOracle resolves to the given URL, e.g. <code>
+   * org/example/style.gss</code> for a file in a source folder or a jar.
+   */
+  private String findResourcePath(URL url) {
+    String spec = url.toExternalForm();
+    int separator = spec.indexOf("!/");
+    String path = separator >= 0 ? spec.substring(separator + 2) : url.getPath();
+    try {
+      path = URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+
+    String[] segments = path.split("/");
+    String candidate = null;
+    for (int i = segments.length - 1; i >= 0 && !segments[i].isEmpty(); i--) {
+      candidate = candidate == null ? segments[i] : segments[i] + "/" + candidate;
+      URL found = resourceOracle.findResource(candidate);
+      if (found != null && found.toExternalForm().equals(spec)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private static void write(File file, byte[] content) throws IOException {
+    File dir = file.getParentFile();
+    dir.mkdirs();
+    File temp = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      Files.write(temp.toPath(), content);
+      try {
+        Files.move(
+            temp.toPath(),
+            file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+
+  /** A bundle found in the cache. */
+  static class Entry {
+    private final String source;
+    private final Map<String, byte[]> resources;
+
+    private Entry(String source, Map<String, byte[]> resources) {
+      this.source = source;
+      this.resources = resources;
+    }
+
+    /** Returns the source of the bundle implementation. */
+    String getSource() {
+      return source;
+    }
+
+    /** Returns the content of the deployed resources, by partial path. */
+    Map<String, byte[]> getResources() {
+      return resources;
+    }
+  }
+}
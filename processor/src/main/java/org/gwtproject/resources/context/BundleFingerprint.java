@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import com.google.auto.common.MoreElements;
+import java.util.Collections;
+import java.util.List;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.MirroredTypesException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import org.gwtproject.resources.client.CssResource.Import;
+import org.gwtproject.resources.rg.util.Util;
+
+/**
+ * Computes the keys used to find the result of a previous generation of a bundle. A key covers the
+ * signature of the bundle, of the types its methods return or {@link Import import}, and of every
+ * bundle generated before it, since CssResource obfuscation depends on the order in which the
+ * CssResource types are seen. It does not cover the resource files or properties the bundle reads,
+ * which are only known once it has been generated.
+ *
+ * <p>Nor does it cover the implementation of the generators, which is why incremental generation
+ * is opt-in: {@link #FORMAT_VERSION} must be bumped whenever the generated code changes.
+ */
+class BundleFingerprint {
+  /** Bump when the generated code changes in a way the key does not capture. */
+  private static final String FORMAT_VERSION = "9";
+
+  private final Types types;
+  private final Elements elements;
+  private String roundFingerprint = FORMAT_VERSION;
+
+  BundleFingerprint(AptContext aptContext) {
+    this.types = aptContext.types;
+    this.elements = aptContext.elements;
+  }
+
+  /**
+   * Computes the key of a bundle. Must be called for every bundle, in the order the bundles are
+   * generated.
+   */
+  String computeKey(TypeElement bundle) {
+    StringBuilder sb = new StringBuilder(roundFingerprint);
+    sb.append('\n').append(System.getProperty("gwt.resourceBundle.stripComments") != null);
+    sb.append('\n').append(System.getProperty("gwt.imageResource.maxBundleSize"));
+    appendSignature(sb, bundle);
+    for (ExecutableElement method :
+        MoreElements.getLocalAndInheritedMethods(bundle, types, elements)) {
+      appendSignature(sb, method);
+      if (method.getReturnType().getKind() == TypeKind.DECLARED) {
+        appendType(sb, (TypeElement) types.asElement(method.getReturnType()));
+      }
+      // The obfuscated names of a CssResource depend on the methods of the types it imports
+      for (TypeMirror imported : getImportedTypes(method)) {
+        appendType(sb, (TypeElement) types.asElement(imported));
+      }
+    }
+    roundFingerprint = Util.computeStrongName(Util.getBytes(sb.toString()));
+    return roundFingerprint;
+  }
+
+  private void appendType(StringBuilder sb, TypeElement type) {
+    appendSignature(sb, type);
+    for (ExecutableElement method :
+        MoreElements.getLocalAndInheritedMethods(type, types, elements)) {
+      appendSignature(sb, method);
+    }
+  }
+
+  private static List<? extends TypeMirror> getImportedTypes(ExecutableElement method) {
+    Import imp = method.getAnnotation(Import.class);
+    if (imp != null) {
+      try {
+        imp.value();
+      } catch (MirroredTypesException mte) {
+        return mte.getTypeMirrors();
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  private void appendSignature(StringBuilder sb, Element element) {
+    sb.append('\n').append(element.getEnclosingElement()).append('#').append(element);
+    if (element instanceof ExecutableElement) {
+      sb.append(':').append(((ExecutableElement) element).getReturnType());
+    }
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      sb.append(' ').append(annotation);
+    }
+  }
+}
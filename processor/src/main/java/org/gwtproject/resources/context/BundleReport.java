@@ -0,0 +1,161 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.rg.util.PhaseTimer;
+import org.gwtproject.resources.rg.util.Util;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Collects the time spent in every phase of the generation of each bundle, and writes it as a JSON
+ * file named by the {@code ClientBundle.reportLocation} property, slowest bundles first. For every
+ * bundle the report holds:
+ *
+ * <ul>
+ *   <li><code>timeMillis</code>, the wall-clock time from the start of the first phase of the
+ *       bundle until it was generated,
+ *   <li><code>bytesRead</code>, the size of the resource files it read,
+ *   <li><code>bytesEmitted</code>, the size of the generated source and deployed resources,
+ *   <li><code>phases</code> and <code>methods</code>, the time broken down by phase and by method.
+ * </ul>
+ *
+ * <p>The bundles of a round are all prepared before any of them is written, or at the same time
+ * with <code>ClientBundle.parallel</code>. Their wall-clock times overlap, so they don't add up to
+ * the time of the round. Only the phases run by the framework are listed. The finer phases of the
+ * ResourceGenerators, such as <code>gss.*</code> and <code>image.*</code>, are only emitted as Java
+ * Flight Recorder events. Work that a ResourceGenerator runs on the pool is charged to the phase
+ * that waits for it, usually <code>createFields</code>.
+ */
+class BundleReport {
+  private final File reportFile;
+  private final Map<String, BundleStats> bundles = new LinkedHashMap<>();
+  private final long start = System.nanoTime();
+
+  BundleReport(File reportFile) {
+    this.reportFile = reportFile;
+  }
+
+  /** Adds a finished phase to the statistics of its bundle. */
+  synchronized void add(PhaseTimer timer) {
+    if (timer.getBundle() == null) {
+      return;
+    }
+    BundleStats stats = bundles.computeIfAbsent(timer.getBundle(), k -> new BundleStats());
+    long elapsed = timer.getElapsedNanos();
+    stats.start = Math.min(stats.start, timer.getStartNanos());
+    stats.end = Math.max(stats.end, timer.getStartNanos() + elapsed);
+    stats.phases.merge(timer.getPhase(), elapsed, Long::sum);
+    if (timer.getMethod() != null) {
+      stats.methods.merge(timer.getMethod(), elapsed, Long::sum);
+    }
+  }
+
+  /** Records what a bundle read and wrote once it has been generated. */
+  synchronized void addBundle(String bundle, TrackingGeneratorContext tracker, boolean upToDate) {
+    BundleStats stats = bundles.computeIfAbsent(bundle, k -> new BundleStats());
+    stats.end = Math.max(stats.end, System.nanoTime());
+    stats.upToDate = upToDate;
+    stats.bytesEmitted = tracker.getBytesEmitted();
+    stats.bytesRead = 0;
+    for (URL url : tracker.getInputs()) {
+      stats.bytesRead += getContentLength(url);
+    }
+  }
+
+  synchronized void write(TreeLogger logger) {
+    List<Map.Entry<String, BundleStats>> entries = new ArrayList<>(bundles.entrySet());
+    entries.sort(
+        Comparator.comparingLong((Map.Entry<String, BundleStats> e) -> e.getValue().getNanos())
+            .reversed());
+    JSONArray array = new JSONArray();
+    for (Map.Entry<String, BundleStats> entry : entries) {
+      BundleStats stats = entry.getValue();
+      JSONObject bundle = new JSONObject();
+      bundle.put("bundle", entry.getKey());
+      bundle.put("upToDate", stats.upToDate);
+      bundle.put("timeMillis", toMillis(stats.getNanos()));
+      bundle.put("bytesRead", stats.bytesRead);
+      bundle.put("bytesEmitted", stats.bytesEmitted);
+      bundle.put("phases", toMillis(stats.phases));
+      bundle.put("methods", toMillis(stats.methods));
+      array.put(bundle);
+    }
+    JSONObject report = new JSONObject();
+    report.put("timeMillis", toMillis(System.nanoTime() - start));
+    report.put("bundles", array);
+
+    if (!Util.writeStringAsFile(reportFile.getAbsoluteFile(), report.toString(2))) {
+      logger.log(TreeLogger.WARN, "Unable to write the ClientBundle report to " + reportFile);
+    } else if (logger.isLoggable(TreeLogger.DEBUG)) {
+      logger.log(TreeLogger.DEBUG, "Wrote the ClientBundle report to " + reportFile);
+    }
+  }
+
+  private static double toMillis(long nanos) {
+    return Math.round(nanos / 1e4) / 100d;
+  }
+
+  private static JSONObject toMillis(Map<String, Long> nanos) {
+    JSONObject toReturn = new JSONObject();
+    for (Map.Entry<String, Long> entry : nanos.entrySet()) {
+      toReturn.put(entry.getKey(), toMillis(entry.getValue()));
+    }
+    return toReturn;
+  }
+
+  private static long getContentLength(URL url) {
+    try {
+      if ("file".equals(url.getProtocol())) {
+        return new File(url.toURI()).length();
+      }
+      URLConnection conn = url.openConnection();
+      try {
+        return Math.max(conn.getContentLengthLong(), 0);
+      } finally {
+        conn.getInputStream().close();
+      }
+    } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+      return 0;
+    }
+  }
+
+  private static class BundleStats {
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Long> methods = new LinkedHashMap<>();
+    private long start = Long.MAX_VALUE;
+    private long end = Long.MIN_VALUE;
+    private long bytesRead;
+    private long bytesEmitted;
+    private boolean upToDate;
+
+    long getNanos() {
+      return start <= end ? end - start : 0;
+    }
+  }
+}
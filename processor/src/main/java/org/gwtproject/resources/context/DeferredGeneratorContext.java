@@ -0,0 +1,166 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.gwtproject.resources.ext.GeneratorContext;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContentCache;
+import org.gwtproject.resources.ext.ResourceOracle;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+
+/**
+ * A GeneratorContext used while a bundle is generated off the processor thread. Resources created
+ * through {@link #tryCreateResource} are kept in memory and only handed to the delegate, in
+ * creation order, when {@link #flush} is called from the processor thread. After a flush the
+ * context passes every call straight through to the delegate.
+ */
+class DeferredGeneratorContext implements GeneratorContext {
+
+  private final GeneratorContext delegate;
+  private final List<DeferredResource> committed = new ArrayList<>();
+  private final Set<String> pendingPaths = new HashSet<>();
+  private boolean flushed;
+
+  DeferredGeneratorContext(GeneratorContext delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public boolean checkRebindRuleAvailable(String sourceTypeName) {
+    return delegate.checkRebindRuleAvailable(sourceTypeName);
+  }
+
+  @Override
+  public void commit(TreeLogger logger, PrintWriter pw) {
+    delegate.commit(logger, pw);
+  }
+
+  @Override
+  public synchronized void commitResource(TreeLogger logger, OutputStream os)
+      throws UnableToCompleteException {
+    if (flushed) {
+      delegate.commitResource(logger, os);
+      return;
+    }
+    if (!(os instanceof DeferredResource) || ((DeferredResource) os).owner != this) {
+      logger.log(TreeLogger.WARN, "Generator attempted to commit an unknown OutputStream", null);
+      throw new UnableToCompleteException();
+    }
+    committed.add((DeferredResource) os);
+  }
+
+  @Override
+  public void awaitCommittedResources(TreeLogger logger) throws UnableToCompleteException {
+    delegate.awaitCommittedResources(logger);
+  }
+
+  @Override
+  public PropertyOracle getPropertyOracle() {
+    return delegate.getPropertyOracle();
+  }
+
+  @Override
+  public ResourceOracle getResourcesOracle() {
+    return delegate.getResourcesOracle();
+  }
+
+  @Override
+  public ResourceContentCache getResourceContentCache() {
+    return delegate.getResourceContentCache();
+  }
+
+  @Override
+  public AptContext getAptContext() {
+    return delegate.getAptContext();
+  }
+
+  @Override
+  public PrintWriter tryCreate(TreeLogger logger, String packageName, String simpleName)
+      throws UnableToCompleteException {
+    return delegate.tryCreate(logger, packageName, simpleName);
+  }
+
+  @Override
+  public synchronized OutputStream tryCreateResource(TreeLogger logger, String partialPath)
+      throws UnableToCompleteException {
+    if (flushed) {
+      return delegate.tryCreateResource(logger, partialPath);
+    }
+    if (!pendingPaths.add(partialPath)) {
+      logger.log(
+          TreeLogger.DEBUG, "The file '" + partialPath + "' is already a pending resource", null);
+      return null;
+    }
+    return new DeferredResource(this, partialPath);
+  }
+
+  /**
+   * Writes the resources committed so far through the delegate and switches to pass-through mode.
+   * Must be called from the thread that owns the delegate.
+   */
+  synchronized void flush(TreeLogger logger) throws UnableToCompleteException {
+    flushed = true;
+    for (DeferredResource resource : committed) {
+      OutputStream out = delegate.tryCreateResource(logger, resource.partialPath);
+      // Another bundle may already have written the same file
+      if (out == null) {
+        continue;
+      }
+      try {
+        resource.baos.writeTo(out);
+      } catch (IOException e) {
+        logger.log(
+            TreeLogger.ERROR, "Unable to write data to output name " + resource.partialPath, e);
+        throw new UnableToCompleteException();
+      }
+      delegate.commitResource(logger, out);
+    }
+    committed.clear();
+    pendingPaths.clear();
+  }
+
+  /** An in-memory resource waiting for {@link #flush}. */
+  private static class DeferredResource extends OutputStream {
+    private final DeferredGeneratorContext owner;
+    private final String partialPath;
+    private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    DeferredResource(DeferredGeneratorContext owner, String partialPath) {
+      this.owner = owner;
+      this.partialPath = partialPath;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      baos.write(b, off, len);
+    }
+
+    @Override
+    public void write(int b) {
+      baos.write(b);
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_STATE_LOCATION;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import org.gwtproject.resources.ext.GeneratorContext;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContentCache;
+import org.gwtproject.resources.ext.ResourceOracle;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.util.Util;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Remembers, for every bundle, what its last generation depended on so that an unchanged bundle
+ * can be written again without running its ResourceGenerators.
+ *
+ * <p>A bundle is up to date when:
+ *
+ * <ul>
+ *   <li>its {@link BundleFingerprint key} is unchanged,
+ *   <li>every resource file it read still has the same content,
+ *   <li>every path it looked up without finding a file still has none,
+ *   <li>every property it read still has the same value,
+ *   <li>every resource it deployed still exists.
+ * </ul>
+ *
+ * The state of each bundle is kept in a JSON file in the directory named by the {@code
+ * ClientBundle.stateLocation} property.
+ */
+class IncrementalBundleCache {
+  private final File stateDir;
+  private final File cacheDir;
+  private final PropertyOracle propertyOracle;
+  private final ResourceOracle resourceOracle;
+  private final ResourceContentCache contentCache;
+  private final Elements elements;
+
+  IncrementalBundleCache(TreeLogger logger, GeneratorContext context)
+      throws UnableToCompleteException {
+    this.propertyOracle = context.getPropertyOracle();
+    this.resourceOracle = context.getResourcesOracle();
+    this.contentCache = context.getResourceContentCache();
+    this.stateDir =
+        new File(
+            propertyOracle
+                .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_STATE_LOCATION)
+                .asSingleValue());
+    this.cacheDir =
+        new File(
+            propertyOracle
+                .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_CACHE_LOCATION)
+                .asSingleValue());
+    this.elements = context.getAptContext().elements;
+  }
+
+  /**
+   * Returns the previously generated source of the bundle if it is still up to date, otherwise
+   * null.
+   */
+  String findSource(TreeLogger logger, TypeElement bundle, String key) {
+    File file = getStateFile(bundle);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      JSONObject state = new JSONObject(Util.readFileAsString(file));
+      if (!key.equals(state.getString("key"))
+          || !isUpToDate(state.getJSONObject("inputs"))
+          || !stillMissing(state.getJSONArray("missingResources"))
+          || !isUpToDate(
+              state.getJSONObject("configurationProperties"),
+              state.getJSONObject("selectionProperties"))
+          || !outputsExist(state.getJSONArray("outputs"))) {
+        return null;
+      }
+      return state.getString("source");
+    } catch (JSONException | NullPointerException e) {
+      logger.log(TreeLogger.DEBUG, "Ignoring unreadable state " + file, e);
+      return null;
+    }
+  }
+
+  private boolean isUpToDate(JSONObject inputs) {
+    for (String url : inputs.keySet()) {
+      String strongName;
+      try {
+        strongName = contentCache.getStrongName(new URL(url));
+      } catch (MalformedURLException | RuntimeException e) {
+        return false;
+      }
+      if (strongName == null || !strongName.equals(inputs.getString(url))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean stillMissing(JSONArray missingResources) {
+    for (int i = 0; i < missingResources.length(); i++) {
+      if (resourceOracle.findResource(missingResources.getString(i)) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isUpToDate(JSONObject configurationProperties, JSONObject selectionProperties) {
+    for (String name : configurationProperties.keySet()) {
+      List<Object> expected = configurationProperties.getJSONArray(name).toList();
+      try {
+        if (!expected.equals(
+            new ArrayList<>(
+                propertyOracle.getConfigurationProperty(TreeLogger.NULL, name).getValues()))) {
+          return false;
+        }
+      } catch (UnableToCompleteException e) {
+        return false;
+      }
+    }
+    for (String name : selectionProperties.keySet()) {
+      String expected =
+          selectionProperties.isNull(name) ? null : selectionProperties.getString(name);
+      String actual;
+      try {
+        actual = propertyOracle.getSelectionProperty(TreeLogger.NULL, name).getCurrentValue();
+      } catch (UnableToCompleteException e) {
+        actual = null;
+      }
+      if (!Util.equalsNullCheck(expected, actual)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean outputsExist(JSONArray outputs) {
+    for (int i = 0; i < outputs.length(); i++) {
+      if (!new File(cacheDir, outputs.getString(i)).isFile()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Remembers what the generation of the bundle depended on. */
+  void store(TreeLogger logger, TypeElement bundle, String key, TrackingGeneratorContext tracker) {
+    if (tracker.getSource() == null) {
+      return;
+    }
+    JSONObject inputs = new JSONObject();
+    for (URL url : tracker.getInputs()) {
+      String strongName = contentCache.getStrongName(url);
+      if (strongName == null) {
+        // Can't be checked later on, don't remember this bundle at all
+        return;
+      }
+      inputs.put(url.toExternalForm(), strongName);
+    }
+    JSONObject configurationProperties = new JSONObject();
+    for (Map.Entry<String, List<String>> entry : tracker.getConfigurationProperties().entrySet()) {
+      configurationProperties.put(entry.getKey(), new JSONArray(entry.getValue()));
+    }
+    JSONObject selectionProperties = new JSONObject();
+    for (Map.Entry<String, String> entry : tracker.getSelectionProperties().entrySet()) {
+      selectionProperties.put(
+          entry.getKey(), entry.getValue() == null ? JSONObject.NULL : entry.getValue());
+    }
+
+    JSONObject state = new JSONObject();
+    state.put("key", key);
+    state.put("inputs", inputs);
+    state.put("missingResources", new JSONArray(tracker.getMissingResources()));
+    state.put("configurationProperties", configurationProperties);
+    state.put("selectionProperties", selectionProperties);
+    state.put("outputs", new JSONArray(tracker.getOutputs()));
+    state.put("source", tracker.getSource());
+
+    File file = getStateFile(bundle);
+    if (!Util.writeStringAsFile(file, state.toString())) {
+      logger.log(TreeLogger.WARN, "Unable to write " + file);
+    }
+  }
+
+  private File getStateFile(TypeElement bundle) {
+    return new File(stateDir, elements.getBinaryName(bundle) + ".json");
+  }
+}
@@ -22,8 +22,9 @@ import org.gwtproject.resources.ext.TreeLogger;
 
 /**
  * This is a refinement that will use data urls for browsers that support them. Only files whose
- * size are smaller than MAX_INLINE_SIZE will be inlined. Larger files will use the standard
- * CacheBundle behavior.
+ * size are smaller than ClientBundle.maxInlineSize (MAX_INLINE_SIZE by default) will be inlined.
+ * Larger files will use the standard CacheBundle behavior. With the default limit, so will files
+ * whose data url doesn't fit in a single String constant.
  *
  * @see "RFC 2397"
  */
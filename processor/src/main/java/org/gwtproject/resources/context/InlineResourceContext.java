@@ -16,8 +16,16 @@
  */
 package org.gwtproject.resources.context;
 
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INLINING_POLICY;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import javax.lang.model.element.TypeElement;
 import org.gwtproject.resources.ext.GeneratorContext;
+import org.gwtproject.resources.ext.InliningPolicy;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContext.ContentWriter;
 import org.gwtproject.resources.ext.TreeLogger;
 import org.gwtproject.resources.ext.UnableToCompleteException;
 
@@ -26,6 +34,15 @@ class InlineResourceContext extends StaticResourceContext {
   /** String constants in Java have a maximum limit that we must obey. */
   public static final int MAX_ENCODED_SIZE = (2 << 15) - 1;
 
+  /**
+   * The number of bytes encoded in each literal of a chunked data: URL. A multiple of 3, so that
+   * only the last literal is padded.
+   */
+  static final int CHUNK_BYTES = 3 * ((MAX_ENCODED_SIZE - 2) / 4);
+
+  private InliningPolicy inliningPolicy;
+  private Boolean chunksAllowed;
+
   InlineResourceContext(
       TreeLogger logger,
       GeneratorContext context,
@@ -41,26 +58,141 @@ class InlineResourceContext extends StaticResourceContext {
     TreeLogger logger = getLogger();
 
     // data: URLs are not compatible with XHRs on FF and Safari browsers
-    if ((!forceExternal) && (data.length < MAX_INLINE_SIZE)) {
+    if ((!forceExternal)
+        && (fitsInOneLiteral(mimeType, data.length) || areChunksAllowed(logger))
+        && getInliningPolicy(logger).shouldInline(logger, mimeType, data)) {
       logger.log(TreeLogger.DEBUG, "Inlining", null);
+      return toDataUrlExpression(mimeType, data);
+    }
 
-      String base64Contents = toBase64(data);
+    return super.deploy(suggestedFileName, mimeType, data, true);
+  }
 
-      // CHECKSTYLE_OFF
-      String encoded =
-          "\"data:" + mimeType.replaceAll("\"", "\\\\\"") + ";base64," + base64Contents + "\"";
-      // CHECKSTYLE_ON
+  @Override
+  public String deploy(
+      String suggestedFileName, String mimeType, ContentWriter content, boolean forceExternal)
+      throws UnableToCompleteException {
+    if (forceExternal) {
+      return super.deploy(suggestedFileName, mimeType, content, true);
+    }
 
-      /*
-       * We know that the encoded format will be one byte per character, since
-       * we're using only ASCII characters.
-       */
-      if (encoded.length() < MAX_ENCODED_SIZE) {
-        return encoded;
+    // The inlining policy decides on the bytes
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      content.writeTo(baos);
+    } catch (IOException e) {
+      getLogger().log(TreeLogger.ERROR, "Unable to write data for " + suggestedFileName, e);
+      throw new UnableToCompleteException();
+    }
+    return deploy(suggestedFileName, mimeType, baos.toByteArray(), false);
+  }
+
+  /**
+   * Returns a Java expression evaluating to the data: URL of the given bytes. The base64 text is
+   * encoded straight into the expression. If it does not fit in a single String constant, it is
+   * split into several literals that are joined by a StringBuilder when the expression is
+   * evaluated, which happens once, when the field holding it is initialized.
+   */
+  static String toDataUrlExpression(String mimeType, byte[] data) {
+    // CHECKSTYLE_OFF
+    String prefix = "data:" + mimeType.replaceAll("\"", "\\\\\"") + ";base64,";
+    // CHECKSTYLE_ON
+
+    /*
+     * We know that the encoded format will be one byte per character, since
+     * we're using only ASCII characters.
+     */
+    int encodedLength = prefix.length() + base64Length(data.length);
+    if (fitsInOneLiteral(mimeType, data.length)) {
+      StringBuilder sb = new StringBuilder(encodedLength + 2);
+      sb.append('"').append(prefix);
+      appendBase64(sb, data, 0, data.length);
+      return sb.append('"').toString();
+    }
+
+    int chunks = (data.length + CHUNK_BYTES - 1) / CHUNK_BYTES;
+    StringBuilder sb = new StringBuilder(encodedLength + 64 + 12 * chunks);
+    // The escaped quotes of the MIME type are a single character at runtime
+    int runtimeLength = "data:;base64,".length() + mimeType.length() + base64Length(data.length);
+    sb.append("new StringBuilder(").append(runtimeLength).append(")");
+    sb.append(".append(\"").append(prefix).append("\")");
+    for (int offset = 0; offset < data.length; offset += CHUNK_BYTES) {
+      sb.append(".append(\"");
+      appendBase64(sb, data, offset, Math.min(offset + CHUNK_BYTES, data.length));
+      sb.append("\")");
+    }
+    return sb.append(".toString()").toString();
+  }
+
+  /** Returns true if the quoted data: URL of the given number of bytes is a valid constant. */
+  static boolean fitsInOneLiteral(String mimeType, int byteCount) {
+    // Quotes in the MIME type are escaped, the data: URL is enclosed in quotes
+    int quotes = mimeType.length() - mimeType.replace("\"", "").length();
+    int encodedLength =
+        "data:;base64,".length() + mimeType.length() + quotes + base64Length(byteCount) + 2;
+    return encodedLength < MAX_ENCODED_SIZE;
+  }
+
+  /**
+   * Data: URLs that don't fit in one constant are split into several literals only if
+   * <code>ClientBundle.maxInlineSize</code> was raised above its default. Otherwise such resources
+   * are deployed as external files, as they always were.
+   */
+  private boolean areChunksAllowed(TreeLogger logger) throws UnableToCompleteException {
+    if (chunksAllowed == null) {
+      String maxInlineSize =
+          getGeneratorContext()
+              .getPropertyOracle()
+              .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE)
+              .asSingleValue();
+      try {
+        chunksAllowed = Integer.parseInt(maxInlineSize) > MAX_INLINE_SIZE;
+      } catch (NumberFormatException e) {
+        // Reported by the inlining policy, if it uses the property at all
+        chunksAllowed = false;
+      }
+    }
+    return chunksAllowed;
+  }
+
+  /** The policy is created on first use, one for each bundle. */
+  private InliningPolicy getInliningPolicy(TreeLogger logger) throws UnableToCompleteException {
+    if (inliningPolicy == null) {
+      PropertyOracle propertyOracle = getGeneratorContext().getPropertyOracle();
+      String className =
+          propertyOracle
+              .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_INLINING_POLICY)
+              .asSingleValue();
+      InliningPolicy policy;
+      try {
+        policy = loadClass(className).asSubclass(InliningPolicy.class).newInstance();
+      } catch (ClassNotFoundException
+          | ClassCastException
+          | InstantiationException
+          | IllegalAccessException e) {
+        logger.log(TreeLogger.ERROR, "Unable to create the inlining policy " + className, e);
+        throw new UnableToCompleteException();
       }
+      policy.init(logger, propertyOracle);
+      inliningPolicy = policy;
     }
+    return inliningPolicy;
+  }
 
-    return super.deploy(suggestedFileName, mimeType, data, true);
+  /**
+   * Policies may come from the project being compiled rather than from the processor's classpath,
+   * so the context class loader is tried first.
+   */
+  private static Class<?> loadClass(String className) throws ClassNotFoundException {
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (loader != null) {
+      try {
+        return Class.forName(className, true, loader);
+      } catch (ClassNotFoundException e) {
+        // fall back to the class loader of the processor
+      }
+    }
+    return Class.forName(className);
   }
 
   @Override
@@ -0,0 +1,99 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.rg.util.SourceWriter;
+
+/**
+ * A SourceWriter that records the calls made on it so they can be replayed later against the
+ * real writer. Replaying keeps the exact indentation and line breaks the real writer would have
+ * produced, which lets bundle bodies be built before their source file is opened.
+ */
+class RecordingSourceWriter implements SourceWriter {
+
+  private final List<Consumer<SourceWriter>> calls = new ArrayList<>();
+
+  /** Replays every recorded call, except {@link #commit}, on the given writer. */
+  void replay(SourceWriter sw) {
+    for (Consumer<SourceWriter> call : calls) {
+      call.accept(sw);
+    }
+  }
+
+  @Override
+  public void beginJavaDocComment() {
+    calls.add(SourceWriter::beginJavaDocComment);
+  }
+
+  /** This is a no-op, the writer the calls are replayed on is committed instead. */
+  @Override
+  public void commit(TreeLogger logger) {}
+
+  @Override
+  public void endJavaDocComment() {
+    calls.add(SourceWriter::endJavaDocComment);
+  }
+
+  @Override
+  public void indent() {
+    calls.add(SourceWriter::indent);
+  }
+
+  @Override
+  public void indentln(String s) {
+    calls.add(sw -> sw.indentln(s));
+  }
+
+  @Override
+  public void indentln(String s, Object... args) {
+    indentln(String.format(s, args));
+  }
+
+  @Override
+  public void outdent() {
+    calls.add(SourceWriter::outdent);
+  }
+
+  @Override
+  public void print(String s) {
+    calls.add(sw -> sw.print(s));
+  }
+
+  @Override
+  public void print(String s, Object... args) {
+    print(String.format(s, args));
+  }
+
+  @Override
+  public void println() {
+    calls.add(SourceWriter::println);
+  }
+
+  @Override
+  public void println(String s) {
+    calls.add(sw -> sw.println(s));
+  }
+
+  @Override
+  public void println(String s, Object... args) {
+    println(String.format(s, args));
+  }
+}
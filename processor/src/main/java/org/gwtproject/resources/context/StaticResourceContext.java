@@ -24,6 +24,7 @@ import java.io.OutputStream;
 import javax.lang.model.element.TypeElement;
 import org.gwtproject.resources.ext.GeneratorContext;
 import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContext.ContentWriter;
 import org.gwtproject.resources.ext.TreeLogger;
 import org.gwtproject.resources.ext.UnableToCompleteException;
 import org.gwtproject.resources.rg.util.Util;
@@ -53,23 +54,8 @@ class StaticResourceContext extends AbstractResourceContext {
             .asSingleBooleanValue();
 
     // Determine the final filename for the resource's file
-    String outputName;
-    if (enableRenaming) {
-      String strongName = Util.computeStrongName(data);
-
-      // Determine the extension of the original file
-      String extension;
-      int lastIdx = suggestedFileName.lastIndexOf('.');
-      if (lastIdx != -1) {
-        extension = suggestedFileName.substring(lastIdx + 1);
-      } else {
-        extension = "noext";
-      }
-      // The name will be MD5.cache.ext
-      outputName = strongName + ".cache." + extension;
-    } else {
-      outputName = suggestedFileName.substring(suggestedFileName.lastIndexOf('/') + 1);
-    }
+    String outputName =
+        getOutputName(suggestedFileName, enableRenaming ? Util.computeStrongName(data) : null);
 
     // Ask the context for an OutputStream into the named resource
     OutputStream out = context.tryCreateResource(logger, outputName);
@@ -93,9 +79,70 @@ class StaticResourceContext extends AbstractResourceContext {
       }
     }
 
-    // Return a Java expression
+    return toUrlExpression(outputName);
+  }
+
+  @Override
+  public String deploy(
+      String suggestedFileName, String mimeType, ContentWriter content, boolean forceExternal)
+      throws UnableToCompleteException {
+    TreeLogger logger = getLogger();
+    GeneratorContext context = getGeneratorContext();
+    boolean enableRenaming =
+        context
+            .getPropertyOracle()
+            .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_ENABLE_RENAMING)
+            .asSingleBooleanValue();
+
+    String outputName = suggestedFileName;
+    try {
+      outputName =
+          getOutputName(
+              suggestedFileName, enableRenaming ? Util.computeStrongName(content) : null);
+
+      OutputStream out = context.tryCreateResource(logger, outputName);
+      if (out != null) {
+        content.writeTo(out);
+        context.commitResource(logger, out);
+        if (logger.isLoggable(TreeLogger.DEBUG)) {
+          logger.log(TreeLogger.DEBUG, "Streamed data to " + outputName, null);
+        }
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.ERROR, "Unable to write data to output name " + outputName, e);
+      throw new UnableToCompleteException();
+    }
+
+    return toUrlExpression(outputName);
+  }
+
+  /**
+   * Returns the name of the deployed file, {@code MD5.cache.ext} if a strong name is given, the
+   * last segment of the suggested name otherwise.
+   */
+  private static String getOutputName(String suggestedFileName, String strongName) {
+    if (strongName == null) {
+      return suggestedFileName.substring(suggestedFileName.lastIndexOf('/') + 1);
+    }
+    // Determine the extension of the original file
+    String extension;
+    int lastIdx = suggestedFileName.lastIndexOf('.');
+    if (lastIdx != -1) {
+      extension = suggestedFileName.substring(lastIdx + 1);
+    } else {
+      extension = "noext";
+    }
+    // The name will be MD5.cache.ext
+    return strongName + ".cache." + extension;
+  }
+
+  /** Returns a Java expression evaluating to the URL of a deployed file. */
+  private String toUrlExpression(String outputName) throws UnableToCompleteException {
     return "\""
-        + oracle.getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_CACHE_URL).asSingleValue()
+        + getGeneratorContext()
+            .getPropertyOracle()
+            .getConfigurationProperty(getLogger(), KEY_CLIENT_BUNDLE_CACHE_URL)
+            .asSingleValue()
         + outputName
         + "\"";
   }
@@ -0,0 +1,345 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.context;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_PARALLEL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_REPORT;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_REPORT_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_STATE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_THREADS;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.gwtproject.resources.ext.AbstractResourceOracle;
+import org.gwtproject.resources.ext.ConfigurationProperty;
+import org.gwtproject.resources.ext.GeneratorContext;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContentCache;
+import org.gwtproject.resources.ext.ResourceOracle;
+import org.gwtproject.resources.ext.SelectionProperty;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.util.Util;
+
+/**
+ * A per-bundle GeneratorContext that records everything the generation of a bundle depends on:
+ * the resource files found through the {@link ResourceOracle} and the paths it did not find, the
+ * properties read from the {@link PropertyOracle}, the resources deployed and the text of the
+ * generated source. It is used by {@link IncrementalBundleCache} to decide whether a bundle must be
+ * regenerated, and by {@link BundleReport} to measure the size of what the bundle reads and writes.
+ * Lookups may come from the worker threads of a resource generator, so the records are guarded by
+ * the context.
+ *
+ * <p>The properties that only tune how the bundles are generated, see {@link
+ * #UNTRACKED_PROPERTIES}, are not recorded. Their defaults depend on the machine, e.g. the number
+ * of processors or an absolute path, and recording them would keep a build cache from being
+ * shared.
+ */
+class TrackingGeneratorContext implements GeneratorContext {
+
+  /** Properties that do not change the generated output. */
+  static final Set<String> UNTRACKED_PROPERTIES =
+      Collections.unmodifiableSet(
+          new HashSet<>(
+              Arrays.asList(
+                  KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION,
+                  KEY_CLIENT_BUNDLE_INCREMENTAL,
+                  KEY_CLIENT_BUNDLE_PARALLEL,
+                  KEY_CLIENT_BUNDLE_REPORT,
+                  KEY_CLIENT_BUNDLE_REPORT_LOCATION,
+                  KEY_CLIENT_BUNDLE_STATE_LOCATION,
+                  KEY_CLIENT_BUNDLE_THREADS)));
+
+  private final GeneratorContext delegate;
+  private final ResourceOracle resourceOracle;
+  private final PropertyOracle propertyOracle;
+  private final Set<URL> inputs = new LinkedHashSet<>();
+  private final Set<String> missingResources = new LinkedHashSet<>();
+  private final Map<String, List<String>> configurationProperties = new LinkedHashMap<>();
+  private final Map<String, String> selectionProperties = new LinkedHashMap<>();
+  private final Set<String> outputs = new LinkedHashSet<>();
+  private final Map<PrintWriter, TeeWriter> sources = new IdentityHashMap<>();
+  private final Map<OutputStream, CountingOutputStream> resources = new IdentityHashMap<>();
+  private String source;
+  private long bytesEmitted;
+
+  TrackingGeneratorContext(GeneratorContext delegate) {
+    this.delegate = delegate;
+    this.resourceOracle = new TrackingResourceOracle(delegate.getResourcesOracle());
+    this.propertyOracle = new TrackingPropertyOracle(delegate.getPropertyOracle());
+  }
+
+  @Override
+  public boolean checkRebindRuleAvailable(String sourceTypeName) {
+    return delegate.checkRebindRuleAvailable(sourceTypeName);
+  }
+
+  @Override
+  public void commit(TreeLogger logger, PrintWriter pw) {
+    TeeWriter tee = sources.remove(pw);
+    if (tee == null) {
+      delegate.commit(logger, pw);
+      return;
+    }
+    source = tee.copy.toString();
+    bytesEmitted += Util.getBytes(source).length;
+    delegate.commit(logger, tee.out);
+  }
+
+  @Override
+  public void commitResource(TreeLogger logger, OutputStream os)
+      throws UnableToCompleteException {
+    CountingOutputStream counter = resources.remove(os);
+    if (counter == null) {
+      delegate.commitResource(logger, os);
+      return;
+    }
+    bytesEmitted += counter.count;
+    delegate.commitResource(logger, counter.out);
+  }
+
+  @Override
+  public void awaitCommittedResources(TreeLogger logger) throws UnableToCompleteException {
+    delegate.awaitCommittedResources(logger);
+  }
+
+  @Override
+  public PropertyOracle getPropertyOracle() {
+    return propertyOracle;
+  }
+
+  @Override
+  public ResourceOracle getResourcesOracle() {
+    return resourceOracle;
+  }
+
+  @Override
+  public ResourceContentCache getResourceContentCache() {
+    return delegate.getResourceContentCache();
+  }
+
+  @Override
+  public AptContext getAptContext() {
+    return delegate.getAptContext();
+  }
+
+  @Override
+  public PrintWriter tryCreate(TreeLogger logger, String packageName, String simpleName)
+      throws UnableToCompleteException {
+    PrintWriter out = delegate.tryCreate(logger, packageName, simpleName);
+    if (out == null) {
+      return null;
+    }
+    TeeWriter tee = new TeeWriter(out);
+    PrintWriter pw = new PrintWriter(tee);
+    sources.put(pw, tee);
+    return pw;
+  }
+
+  @Override
+  public OutputStream tryCreateResource(TreeLogger logger, String partialPath)
+      throws UnableToCompleteException {
+    // Recorded even if another bundle already created it, this bundle still refers to it
+    outputs.add(partialPath);
+    OutputStream out = delegate.tryCreateResource(logger, partialPath);
+    if (out == null) {
+      return null;
+    }
+    CountingOutputStream counter = new CountingOutputStream(out);
+    resources.put(counter, counter);
+    return counter;
+  }
+
+  /** Returns the resource files found while generating the bundle. */
+  Set<URL> getInputs() {
+    return Collections.unmodifiableSet(inputs);
+  }
+
+  /**
+   * Returns the paths that were looked up without finding a file while generating the bundle. A
+   * file added at one of these paths may be preferred to one of the inputs, e.g. a {@code .gss}
+   * file next to the {@code .css} file in use.
+   */
+  Set<String> getMissingResources() {
+    return Collections.unmodifiableSet(missingResources);
+  }
+
+  /** Returns the configuration properties read while generating the bundle. */
+  Map<String, List<String>> getConfigurationProperties() {
+    return Collections.unmodifiableMap(configurationProperties);
+  }
+
+  /**
+   * Returns the selection properties read while generating the bundle, mapped to <code>null
+   * </code> if they were not defined.
+   */
+  Map<String, String> getSelectionProperties() {
+    return Collections.unmodifiableMap(selectionProperties);
+  }
+
+  /** Returns the partial paths of the resources deployed by the bundle. */
+  Set<String> getOutputs() {
+    return Collections.unmodifiableSet(outputs);
+  }
+
+  /** Returns the committed source of the bundle implementation, or null. */
+  String getSource() {
+    return source;
+  }
+
+  /** Returns the number of bytes of source and resources committed so far. */
+  long getBytesEmitted() {
+    return bytesEmitted;
+  }
+
+  /** Counts the bytes written to a deployed resource. */
+  private static class CountingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /** Copies everything written to the generated source file. */
+  private static class TeeWriter extends Writer {
+    private final PrintWriter out;
+    private final StringWriter copy = new StringWriter();
+
+    TeeWriter(PrintWriter out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      out.write(cbuf, off, len);
+      copy.write(cbuf, off, len);
+    }
+
+    @Override
+    public void flush() {
+      out.flush();
+    }
+
+    @Override
+    public void close() {
+      out.close();
+    }
+  }
+
+  /**
+   * Resolves every lookup through {@link #findResource(CharSequence, CharSequence)}, which records
+   * the files found and the paths that were not.
+   */
+  private class TrackingResourceOracle extends AbstractResourceOracle {
+    private final ResourceOracle delegate;
+
+    TrackingResourceOracle(ResourceOracle delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public URL findResource(CharSequence pkg, CharSequence relativeName) {
+      URL url = delegate.findResource(pkg, relativeName);
+      synchronized (TrackingGeneratorContext.this) {
+        if (url != null) {
+          inputs.add(url);
+        } else {
+          missingResources.add(toPath(pkg, relativeName));
+        }
+      }
+      return url;
+    }
+  }
+
+  private class TrackingPropertyOracle implements PropertyOracle {
+    private final PropertyOracle delegate;
+
+    TrackingPropertyOracle(PropertyOracle delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public ConfigurationProperty getConfigurationProperty(TreeLogger logger, String propertyName)
+        throws UnableToCompleteException {
+      ConfigurationProperty property = delegate.getConfigurationProperty(logger, propertyName);
+      if (UNTRACKED_PROPERTIES.contains(propertyName)) {
+        return property;
+      }
+      synchronized (TrackingGeneratorContext.this) {
+        configurationProperties.put(propertyName, new ArrayList<>(property.getValues()));
+      }
+      return property;
+    }
+
+    @Override
+    public SelectionProperty getSelectionProperty(TreeLogger logger, String propertyName)
+        throws UnableToCompleteException {
+      try {
+        SelectionProperty property = delegate.getSelectionProperty(logger, propertyName);
+        synchronized (TrackingGeneratorContext.this) {
+          selectionProperties.put(propertyName, property.getCurrentValue());
+        }
+        return property;
+      } catch (UnableToCompleteException e) {
+        synchronized (TrackingGeneratorContext.this) {
+          selectionProperties.put(propertyName, null);
+        }
+        throw e;
+      }
+    }
+  }
+}
@@ -57,6 +57,7 @@ import org.gwtproject.resources.rg.util.DefaultTextOutput;
 /** Converter from Css to Gss. */
 public class Css2Gss {
   private final URL cssFile;
+  private final String cssContent;
   private final TreeLogger treeLogger;
   private final boolean lenient;
   private final Set<URL> scopeFiles;
@@ -78,6 +79,7 @@ public class Css2Gss {
       Predicate<String> simpleBooleanConditionPredicate,
       Set<URL> scopeFiles) {
     cssFile = resource;
+    cssContent = null;
     printWriter = new PrintWriter(System.err);
     PrintWriterTreeLogger printWriterTreeLogger = new PrintWriterTreeLogger(printWriter);
     printWriterTreeLogger.setMaxDetail(Type.WARN);
@@ -101,7 +103,31 @@ public class Css2Gss {
       boolean lenient,
       Predicate<String> simpleBooleanConditionPredicate,
       Set<URL> scopeFiles) {
+    this(fileUrl, null, treeLogger, lenient, simpleBooleanConditionPredicate, scopeFiles);
+  }
+
+  /**
+   * Converts CSS text that is already in memory. The URL only resolves relative references and
+   * names the stylesheet in error messages, it is not read.
+   */
+  public Css2Gss(
+      URL baseUrl,
+      String content,
+      TreeLogger treeLogger,
+      boolean lenient,
+      Predicate<String> simpleBooleanConditionPredicate) {
+    this(baseUrl, content, treeLogger, lenient, simpleBooleanConditionPredicate, new HashSet<>());
+  }
+
+  private Css2Gss(
+      URL fileUrl,
+      String content,
+      TreeLogger treeLogger,
+      boolean lenient,
+      Predicate<String> simpleBooleanConditionPredicate,
+      Set<URL> scopeFiles) {
     cssFile = fileUrl;
+    cssContent = content;
     this.treeLogger = treeLogger;
     this.lenient = lenient;
     this.simpleBooleanConditionPredicate = simpleBooleanConditionPredicate;
@@ -178,7 +204,10 @@ public class Css2Gss {
 
   public String toGss() throws UnableToCompleteException {
     try {
-      CssStylesheet sheet = GenerateCssAst.exec(treeLogger, cssFile);
+      CssStylesheet sheet =
+          cssContent != null
+              ? GenerateCssAst.exec(treeLogger, cssFile.toExternalForm(), cssContent)
+              : GenerateCssAst.exec(treeLogger, cssFile);
 
       DefCollectorVisitor defCollectorVisitor = new DefCollectorVisitor(lenient, treeLogger);
       defCollectorVisitor.accept(sheet);
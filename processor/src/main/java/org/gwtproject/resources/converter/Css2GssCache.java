@@ -0,0 +1,176 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.converter;
+
+import com.google.common.base.Predicate;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.rg.util.Util;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps the results of the automatic CSS to GSS conversion on disk, so that a stylesheet is only
+ * converted again when its content changes. Entries are keyed by the CSS text and the conversion
+ * mode. The boolean conditions the converter asked about are recorded with their answers, an
+ * entry is only used while the predicate still gives the same answers.
+ */
+public class Css2GssCache {
+
+  /** Change when the output of {@link Css2Gss} changes for the same input. */
+  private static final String FORMAT_VERSION = "1";
+
+  private final File cacheDir;
+
+  public Css2GssCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /** Returns the conversion of the given CSS, or null if it has to be converted again. */
+  public Entry find(
+      TreeLogger logger, String css, boolean lenient, Predicate<String> simpleConditionPredicate) {
+    File file = getFile(css, lenient);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      JSONObject state = new JSONObject(Util.readFileAsString(file));
+      if (!css.equals(state.getString("css"))) {
+        return null;
+      }
+      JSONObject conditions = state.getJSONObject("conditions");
+      for (String condition : conditions.keySet()) {
+        if (simpleConditionPredicate.apply(condition) != conditions.getBoolean(condition)) {
+          return null;
+        }
+      }
+      Map<String, String> defNameMapping = new LinkedHashMap<>();
+      JSONArray defs = state.getJSONArray("defNameMapping");
+      for (int i = 0; i < defs.length(); i++) {
+        JSONArray def = defs.getJSONArray(i);
+        defNameMapping.put(def.getString(0), def.getString(1));
+      }
+      return new Entry(state.getString("gss"), defNameMapping);
+    } catch (JSONException | NullPointerException e) {
+      logger.log(TreeLogger.DEBUG, "Ignoring unreadable conversion " + file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Records a conversion. The conditions map the boolean conditions the converter asked about to
+   * the answers of the predicate, see {@link RecordingPredicate}.
+   */
+  public void store(
+      TreeLogger logger,
+      String css,
+      boolean lenient,
+      Entry entry,
+      Map<String, Boolean> conditions) {
+    JSONArray defs = new JSONArray();
+    for (Map.Entry<String, String> def : entry.getDefNameMapping().entrySet()) {
+      defs.put(new JSONArray().put(def.getKey()).put(def.getValue()));
+    }
+    JSONObject state = new JSONObject();
+    state.put("css", css);
+    state.put("gss", entry.getGss());
+    state.put("defNameMapping", defs);
+    state.put("conditions", new JSONObject(conditions));
+
+    File file = getFile(css, lenient);
+    try {
+      file.getParentFile().mkdirs();
+      File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+      try {
+        Files.write(temp.toPath(), Util.getBytes(state.toString()));
+        try {
+          Files.move(
+              temp.toPath(),
+              file.toPath(),
+              StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        temp.delete();
+      }
+    } catch (IOException e) {
+      // The conversion is simply done again next time
+      logger.log(TreeLogger.DEBUG, "Unable to write conversion " + file, e);
+    }
+  }
+
+  private File getFile(String css, boolean lenient) {
+    String key =
+        Util.computeStrongName(
+            new byte[][] {
+              Util.getBytes(FORMAT_VERSION),
+              Util.getBytes(String.valueOf(lenient)),
+              Util.getBytes(css)
+            });
+    return new File(cacheDir, key + ".json");
+  }
+
+  /** The result of a conversion. */
+  public static class Entry {
+    private final String gss;
+    private final Map<String, String> defNameMapping;
+
+    public Entry(String gss, Map<String, String> defNameMapping) {
+      this.gss = gss;
+      this.defNameMapping = Collections.unmodifiableMap(new LinkedHashMap<>(defNameMapping));
+    }
+
+    public String getGss() {
+      return gss;
+    }
+
+    public Map<String, String> getDefNameMapping() {
+      return defNameMapping;
+    }
+  }
+
+  /** Records the answers of a predicate, in the order it was asked. */
+  public static class RecordingPredicate implements Predicate<String> {
+    private final Predicate<String> delegate;
+    private final Map<String, Boolean> answers = new LinkedHashMap<>();
+
+    public RecordingPredicate(Predicate<String> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean apply(String input) {
+      boolean answer = delegate.apply(input);
+      answers.put(input, answer);
+      return answer;
+    }
+
+    public Map<String, Boolean> getAnswers() {
+      return answers;
+    }
+  }
+}
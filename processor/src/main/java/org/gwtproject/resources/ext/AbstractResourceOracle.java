@@ -0,0 +1,161 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.ext;
+
+import static org.gwtproject.resources.client.ClientBundle.Source;
+
+import com.google.auto.common.MoreElements;
+import com.google.auto.common.MoreTypes;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * A base class for ResourceOracle implementations. Every lookup is resolved through {@link
+ * #findResource(CharSequence, CharSequence)}, so that an implementation only has to locate single
+ * files, and a wrapper sees every path that was probed, found or not.
+ */
+public abstract class AbstractResourceOracle implements ResourceOracle {
+
+  /** Returns the path of {@code relativeName} in {@code pkg}, e.g. {@code a/b/c.css}. */
+  public static String toPath(CharSequence pkg, CharSequence relativeName) {
+    String path = relativeName.toString();
+    if (pkg.length() > 0) {
+      path = String.valueOf(pkg).replace('.', '/') + '/' + path;
+    }
+    return path;
+  }
+
+  @Override
+  public URL[] findResources(CharSequence packageName, CharSequence[] pathName) {
+    List<URL> result = new ArrayList<>();
+    for (int i = 0; i < pathName.length; i++) {
+      URL resource = findResource(packageName, pathName[i]);
+      if (resource != null) {
+        result.add(resource);
+      } else {
+        resource = findResource(pathName[i]);
+        if (resource != null) {
+          result.add(resource);
+        }
+      }
+    }
+    if (result.size() > 0) {
+      return result.toArray(new URL[result.size()]);
+    }
+    return null;
+  }
+
+  /**
+   * Locates a resource by its full path.
+   *
+   * <p>This method assumes that the path is a full package path such as <code>
+   * org/gwtproject/uibinder/example/view/SimpleFormView.ui.xml</code>
+   *
+   * @return the URL or null if file is not found.
+   * @see #findResource(CharSequence, CharSequence)
+   */
+  @Override
+  public URL findResource(CharSequence path) {
+    String packageName = "";
+    String relativeName = path.toString();
+
+    int index = relativeName.lastIndexOf('/');
+    if (index >= 0) {
+      packageName = relativeName.substring(0, index).replace('/', '.');
+      relativeName = relativeName.substring(index + 1);
+    }
+
+    return findResource(packageName, relativeName);
+  }
+
+  @Override
+  public URL[] findResources(TreeLogger logger, ExecutableElement method)
+      throws UnableToCompleteException {
+    TypeElement returnType = (TypeElement) MoreTypes.asElement(method.getReturnType());
+    assert returnType.getKind().isInterface() || returnType.getKind().isClass();
+    DefaultExtensions annotation =
+        ResourceGeneratorUtil.findDefaultExtensionsInClassHierarcy(returnType);
+    String[] extensions;
+    if (annotation != null) {
+      extensions = annotation.value();
+    } else {
+      extensions = new String[0];
+    }
+    return findResources(logger, method, extensions);
+  }
+
+  @Override
+  public URL[] findResources(TreeLogger logger, ExecutableElement method, String[] defaultSuffixes)
+      throws UnableToCompleteException {
+    boolean error = false;
+    Source resourceAnnotation = method.getAnnotation(Source.class);
+    URL[] toReturn = null;
+
+    if (resourceAnnotation == null) {
+      if (defaultSuffixes != null) {
+
+        for (String extension : defaultSuffixes) {
+          if (logger.isLoggable(TreeLogger.SPAM)) {
+            logger.log(TreeLogger.SPAM, "Trying default extension " + extension);
+          }
+          String url =
+              (MoreElements.getPackage(method) + "." + method.getSimpleName()).replace('.', '/')
+                  + extension;
+          URL resourceUrl = findResource(url);
+
+          // Take the first match
+          if (resourceUrl != null) {
+            return new URL[] {resourceUrl};
+          }
+        }
+      }
+      logger.log(
+          TreeLogger.ERROR,
+          "No "
+              + Source.class.getName()
+              + " annotation and no resources found with default extensions");
+      error = true;
+    } else {
+      // The user has put an @Source annotation on the accessor method
+      String[] resources = resourceAnnotation.value();
+      toReturn =
+          findResources(
+              MoreElements.getPackage(method.getEnclosingElement()).getQualifiedName().toString(),
+              resources);
+      if (toReturn == null) {
+        error = true;
+        logger.log(
+            TreeLogger.ERROR,
+            "Resource for "
+                + method
+                + " in "
+                + method.getEnclosingElement()
+                + " not found. Is the name specified as ClassLoader.getResource()"
+                + " would expect?");
+      }
+    }
+
+    if (error) {
+      throw new UnableToCompleteException();
+    }
+
+    return toReturn;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.ext;
+
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_ENABLE_INLINING;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INLINE_BUDGET;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The default {@link InliningPolicy}. A resource is inlined if:
+ *
+ * <ul>
+ *   <li><code>ClientBundle.enableInlining</code> is true,
+ *   <li>it is smaller than <code>ClientBundle.maxInlineSize</code> bytes, or than the limit given
+ *       for its MIME type by <code>ClientBundle.maxInlineSizeByType</code>, a list of <code>
+ *       type=bytes</code> entries where the type may end with a <code>*</code> wildcard, such as
+ *       <code>image/png=16384 font/*=131072</code>,
+ *   <li>and its data: URL, once gzipped, still fits in what is left of the per bundle budget given
+ *       by <code>ClientBundle.inlineBudget</code>, in bytes.
+ * </ul>
+ *
+ * <p>The gzipped size is estimated by deflating the base64 text, which is what the browser
+ * eventually downloads. Base64 inflates the data by a third, but much of that is won back by
+ * compression.
+ */
+public class DefaultInliningPolicy implements InliningPolicy {
+
+  private boolean enabled;
+  private int maxInlineSize;
+  private final Map<String, Integer> maxInlineSizeByType = new LinkedHashMap<>();
+  private long remainingBudget;
+
+  @Override
+  public void init(TreeLogger logger, PropertyOracle propertyOracle)
+      throws UnableToCompleteException {
+    enabled =
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_ENABLE_INLINING)
+            .asSingleBooleanValue();
+    maxInlineSize =
+        parseSize(
+            logger,
+            KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE,
+            propertyOracle
+                .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE)
+                .asSingleValue());
+    remainingBudget =
+        parseSize(
+            logger,
+            KEY_CLIENT_BUNDLE_INLINE_BUDGET,
+            propertyOracle
+                .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_INLINE_BUDGET)
+                .asSingleValue());
+    for (String entry :
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE)
+            .getValues()) {
+      int index = entry.indexOf('=');
+      if (index <= 0) {
+        logger.log(
+            TreeLogger.ERROR,
+            KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE
+                + " entries must look like type=bytes, but found '"
+                + entry
+                + "'");
+        throw new UnableToCompleteException();
+      }
+      maxInlineSizeByType.put(
+          entry.substring(0, index).toLowerCase(Locale.ROOT),
+          parseSize(logger, KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE, entry.substring(index + 1)));
+    }
+  }
+
+  @Override
+  public boolean shouldInline(TreeLogger logger, String mimeType, byte[] data) {
+    if (!enabled || data.length >= getMaxInlineSize(mimeType)) {
+      return false;
+    }
+    long cost = estimateGzippedSize(data);
+    if (cost > remainingBudget) {
+      if (logger.isLoggable(TreeLogger.DEBUG)) {
+        logger.log(
+            TreeLogger.DEBUG,
+            "Not inlining, "
+                + cost
+                + " gzipped bytes exceed the remaining budget of "
+                + remainingBudget);
+      }
+      return false;
+    }
+    remainingBudget -= cost;
+    return true;
+  }
+
+  /** Returns the limit of the most specific matching type, or the default one. */
+  private int getMaxInlineSize(String mimeType) {
+    if (mimeType == null || maxInlineSizeByType.isEmpty()) {
+      return maxInlineSize;
+    }
+    String type = mimeType.toLowerCase(Locale.ROOT);
+    int parameters = type.indexOf(';');
+    if (parameters >= 0) {
+      type = type.substring(0, parameters).trim();
+    }
+    Integer size = maxInlineSizeByType.get(type);
+    if (size != null) {
+      return size;
+    }
+    String bestPrefix = null;
+    for (Map.Entry<String, Integer> entry : maxInlineSizeByType.entrySet()) {
+      String key = entry.getKey();
+      if (key.endsWith("*")) {
+        String prefix = key.substring(0, key.length() - 1);
+        if (type.startsWith(prefix)
+            && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+          bestPrefix = prefix;
+          size = entry.getValue();
+        }
+      }
+    }
+    return size != null ? size : maxInlineSize;
+  }
+
+  /** Estimates the gzipped size of the base64 text of the given bytes. */
+  protected long estimateGzippedSize(byte[] data) {
+    CountingOutputStream counter = new CountingOutputStream();
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try (OutputStream out = Base64.getEncoder().wrap(new DeflaterOutputStream(counter, deflater))) {
+      out.write(data);
+    } catch (IOException e) {
+      // Can't happen, nothing is written to an actual stream
+      return data.length;
+    } finally {
+      deflater.end();
+    }
+    return counter.count;
+  }
+
+  private static int parseSize(TreeLogger logger, String propertyName, String value)
+      throws UnableToCompleteException {
+    try {
+      int size = Integer.parseInt(value);
+      if (size >= 0) {
+        return size;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    logger.log(
+        TreeLogger.ERROR,
+        propertyName + " must be a non-negative integer, but was '" + value + "'");
+    throw new UnableToCompleteException();
+  }
+
+  /** Only counts what the deflater emits. */
+  private static class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
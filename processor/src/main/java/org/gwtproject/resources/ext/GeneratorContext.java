@@ -43,6 +43,15 @@ public interface GeneratorContext {
    */
   void commitResource(TreeLogger logger, OutputStream os) throws UnableToCompleteException;
 
+  /**
+   * Blocks until the resources committed so far have been written. Resources may be written in the
+   * background, so this must be called before they are read back from disk. Does nothing by
+   * default, for contexts that write resources when they are committed.
+   *
+   * @throws UnableToCompleteException if one of the resources could not be written
+   */
+  default void awaitCommittedResources(TreeLogger logger) throws UnableToCompleteException {}
+
   /**
    * Gets the property oracle for the current generator context. Generators can use the property
    * oracle to query deferred binding properties.
@@ -58,6 +67,12 @@ public interface GeneratorContext {
    */
   ResourceOracle getResourcesOracle();
 
+  /**
+   * Returns the cache through which generators read resource files. It lives as long as the
+   * current processing round, so a file shared by several resources or bundles is read only once.
+   */
+  ResourceContentCache getResourceContentCache();
+
   /** Returns an apt context */
   AptContext getAptContext();
 
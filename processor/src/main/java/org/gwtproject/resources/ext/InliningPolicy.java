@@ -0,0 +1,46 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.ext;
+
+/**
+ * Decides which deployed resources are turned into data: URLs by the inlining ClientBundle
+ * generator. The implementation is named by the {@code ClientBundle.inliningPolicy} configuration
+ * property and must support default-instantiation. A new instance is created for every bundle, so
+ * a policy may keep state across the resources of a bundle.
+ *
+ * <p>The methods are called from the thread that generates the bundle, in the following order:
+ *
+ * <ol>
+ *   <li>{@link #init}
+ *   <li>{@link #shouldInline} once for each resource that may be inlined, in deployment order
+ * </ol>
+ */
+public interface InliningPolicy {
+
+  /** Called once, before the first resource of the bundle is deployed. */
+  void init(TreeLogger logger, PropertyOracle propertyOracle) throws UnableToCompleteException;
+
+  /**
+   * Returns true if the resource should be inlined. Resources for which true is returned are always
+   * inlined, so the policy can account for them right away.
+   *
+   * @param mimeType the MIME type of the resource
+   * @param data the content of the resource, which must not be modified
+   */
+  boolean shouldInline(TreeLogger logger, String mimeType, byte[] data)
+      throws UnableToCompleteException;
+}
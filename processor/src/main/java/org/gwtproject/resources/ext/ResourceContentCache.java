@@ -0,0 +1,121 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gwtproject.resources.rg.util.Util;
+
+/**
+ * Reads the resource files used by the generators. Each URL is read once per processing round,
+ * then its bytes, its text and its strong name are served from memory to every generator that
+ * asks for them. The arrays returned are shared and must not be modified.
+ */
+public class ResourceContentCache {
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /** @return null if the file could not be read */
+  public byte[] getBytes(URL url) {
+    Entry entry = getEntry(url);
+    return entry == null ? null : entry.bytes;
+  }
+
+  /**
+   * Returns the content of the URL decoded with {@link Util#DEFAULT_ENCODING}.
+   *
+   * @return null if the file could not be read
+   */
+  public String getString(URL url) {
+    Entry entry = getEntry(url);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.string == null) {
+      entry.string = Util.toString(entry.bytes);
+    }
+    return entry.string;
+  }
+
+  /** @return null if the file could not be read */
+  public String getStrongName(URL url) {
+    Entry entry = getEntry(url);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.strongName == null) {
+      entry.strongName = Util.computeStrongName(entry.bytes);
+    }
+    return entry.strongName;
+  }
+
+  private Entry getEntry(URL url) {
+    // URL.equals may resolve host names, the external form is a safer key
+    String key = url.toExternalForm();
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      byte[] bytes = read(url);
+      if (bytes == null) {
+        return null;
+      }
+      entry = new Entry(bytes);
+      // If another thread read it meanwhile, keep the first copy
+      Entry existing = entries.putIfAbsent(key, entry);
+      if (existing != null) {
+        entry = existing;
+      }
+    }
+    return entry;
+  }
+
+  private static byte[] read(URL url) {
+    if ("file".equals(url.getProtocol())) {
+      File file;
+      try {
+        file = new File(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        return Util.readURLAsBytes(url);
+      }
+      try {
+        // Sized from the file, without the buffer copies of a stream
+        return Files.readAllBytes(file.toPath());
+      } catch (IOException e) {
+        return null;
+      }
+    }
+    return Util.readURLAsBytes(url);
+  }
+
+  /**
+   * The derived values are computed lazily. Two threads may both compute them, the results are
+   * equal.
+   */
+  private static class Entry {
+    private final byte[] bytes;
+    private volatile String string;
+    private volatile String strongName;
+
+    Entry(byte[] bytes) {
+      this.bytes = bytes;
+    }
+  }
+}
@@ -15,7 +15,12 @@
  */
 package org.gwtproject.resources.ext;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.concurrent.ForkJoinPool;
 import javax.lang.model.element.TypeElement;
 
 /**
@@ -50,6 +55,35 @@ public interface ResourceContext {
   String deploy(String suggestedFileName, String mimeType, byte[] data, boolean forceExternal)
       throws UnableToCompleteException;
 
+  /**
+   * Like {@link #deploy(String, String, byte[], boolean)}, but the bytes are written by {@code
+   * content} instead of being held in memory. The content may be written more than once, e.g. to
+   * compute the strong name of the file before writing it, and must produce the same bytes every
+   * time.
+   *
+   * <p>The default implementation collects the bytes and calls {@link #deploy(String, String,
+   * byte[], boolean)}.
+   *
+   * @param suggestedFileName an unobfuscated filename to possibly use for the resource
+   * @param mimeType the MIME type of the data being provided
+   * @param content writes the bytes to add to the output
+   * @param forceExternal prevents embedding of the resource
+   * @return a Java expression which will evaluate to the location of the provided resource at
+   *     runtime
+   */
+  default String deploy(
+      String suggestedFileName, String mimeType, ContentWriter content, boolean forceExternal)
+      throws UnableToCompleteException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      content.writeTo(baos);
+    } catch (IOException e) {
+      // Only the content itself can fail, ByteArrayOutputStream does not
+      throw new UncheckedIOException("Unable to write the content of " + suggestedFileName, e);
+    }
+    return deploy(suggestedFileName, mimeType, baos.toByteArray(), forceExternal);
+  }
+
   /**
    * Cause a specific collection of bytes to be available in the program's compiled output. The
    * return value of this method is a Java expression which will evaluate to the location of the
@@ -99,6 +133,17 @@ public interface ResourceContext {
    */
   String getImplementationSimpleSourceName() throws IllegalStateException;
 
+  /**
+   * Returns the pool on which ResourceGenerators may run independent work, e.g. from {@link
+   * ResourceGenerator#prepare}. The pool is shared by every bundle of the generation round and is
+   * shut down by the framework once the round is done, so ResourceGenerators must not shut it down
+   * and must wait for their tasks before the round ends. Without <code>ClientBundle.parallel
+   * </code>, and for contexts created outside of a generation round, it is the common pool.
+   */
+  default ForkJoinPool getPool() {
+    return ForkJoinPool.commonPool();
+  }
+
   /**
    * Store data in the ResourceContext. ResourceGenerators may reduce the amount of recomputation
    * performed by caching data the ResourceContext. This cache will be invalidated when the
@@ -118,4 +163,12 @@ public interface ResourceContext {
    * benefit to the application at runtime.
    */
   boolean supportsDataUrls();
+
+  /**
+   * Writes the content of a resource passed to {@link #deploy(String, String, ContentWriter,
+   * boolean)}.
+   */
+  interface ContentWriter {
+    void writeTo(OutputStream out) throws IOException;
+  }
 }
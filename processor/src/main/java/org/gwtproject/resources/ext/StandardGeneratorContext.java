@@ -17,9 +17,20 @@
 package org.gwtproject.resources.ext;
 
 import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_CACHE_LOCATION;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_PRECOMPRESS;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 import javax.tools.JavaFileObject;
 import org.gwtproject.resources.context.AptContext;
 import org.gwtproject.resources.rg.resource.impl.PropertyOracleImpl;
@@ -31,6 +42,11 @@ import org.gwtproject.resources.rg.util.Util;
 /** @author Dmitrii Tikhomirov Created by treblereel 11/12/18 */
 public class StandardGeneratorContext implements GeneratorContext {
   private static DiskCache diskCache = DiskCache.INSTANCE;
+
+  /** Extensions of the deployed files that are worth precompressing. */
+  private static final Set<String> COMPRESSIBLE_EXTENSIONS =
+      new HashSet<>(Arrays.asList("css", "html", "js", "json", "map", "svg", "txt", "xml"));
+
   private final AptContext aptContext;
   private final Map<String, PendingResource> pendingResources = new HashMap<>();
   private final Map<PrintWriter, Generated> uncommittedGeneratedCupsByPrintWriter =
@@ -39,11 +55,24 @@ public class StandardGeneratorContext implements GeneratorContext {
   private final Set<String> newlyGeneratedTypeNames = new HashSet<>();
   private final ResourceOracle resourceOracle;
   private final PropertyOracle propertyOracle;
+  private final ResourceContentCache resourceContentCache = new ResourceContentCache();
+  /** Writes committed resources in the background, created on first use. */
+  private ExecutorService resourceWriter;
+  /** Writes the precompressed variants of committed resources, created on first use. */
+  private ExecutorService resourceCompressor;
+
+  private final List<Future<?>> pendingWrites = new ArrayList<>();
 
   public StandardGeneratorContext(AptContext aptContext) {
+    this(aptContext, new ResourceOracleImpl(aptContext), new PropertyOracleImpl(aptContext));
+  }
+
+  /** Package-protected for testing. */
+  StandardGeneratorContext(
+      AptContext aptContext, ResourceOracle resourceOracle, PropertyOracle propertyOracle) {
     this.aptContext = aptContext;
-    this.resourceOracle = new ResourceOracleImpl(aptContext);
-    this.propertyOracle = new PropertyOracleImpl(aptContext);
+    this.resourceOracle = resourceOracle;
+    this.propertyOracle = propertyOracle;
   }
 
   @Override
@@ -79,20 +108,153 @@ public class StandardGeneratorContext implements GeneratorContext {
       logger.log(TreeLogger.WARN, "Generator attempted to commit an unknown OutputStream", null);
       throw new UnableToCompleteException();
     }
+    if (pendingResource.baos == null) {
+      logger.log(TreeLogger.WARN, "The file '" + partialPath + "' was already committed", null);
+      throw new UnableToCompleteException();
+    }
 
     String gwtCacheDir =
         propertyOracle
             .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_CACHE_LOCATION)
             .asSingleValue();
-    try (OutputStream outputStream =
-        new FileOutputStream(new File(gwtCacheDir, pendingResource.partialPath))) {
-      pendingResource.baos.writeTo(outputStream);
-    } catch (IOException e) {
-      logger.log(TreeLogger.ERROR, "Unable to write a file " + e.getMessage(), null);
+    File file = new File(gwtCacheDir, pendingResource.partialPath);
+    byte[] bytes = pendingResource.takeBytes();
+    synchronized (pendingWrites) {
+      if (resourceWriter == null) {
+        resourceWriter =
+            Executors.newSingleThreadExecutor(
+                r -> {
+                  Thread thread = new Thread(r, "gwt-resources-writer");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+      }
+      pendingWrites.add(
+          resourceWriter.submit(
+              () -> {
+                writeIfChanged(file.toPath(), bytes);
+                return null;
+              }));
+    }
+
+    if (isCompressible(logger, partialPath)) {
+      int threads = Util.getThreadCount(logger, propertyOracle);
+      synchronized (pendingWrites) {
+        if (resourceCompressor == null) {
+          resourceCompressor =
+              Executors.newFixedThreadPool(
+                  threads,
+                  r -> {
+                    Thread thread = new Thread(r, "gwt-resources-compressor");
+                    thread.setDaemon(true);
+                    return thread;
+                  });
+        }
+        pendingWrites.add(
+            resourceCompressor.submit(
+                () -> {
+                  writeGzipVariant(file.toPath(), bytes);
+                  return null;
+                }));
+      }
+    }
+  }
+
+  private boolean isCompressible(TreeLogger logger, String partialPath)
+      throws UnableToCompleteException {
+    if (!propertyOracle
+        .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_PRECOMPRESS)
+        .asSingleBooleanValue()) {
+      return false;
+    }
+    int dot = partialPath.lastIndexOf('.');
+    return dot != -1
+        && COMPRESSIBLE_EXTENSIONS.contains(partialPath.substring(dot + 1).toLowerCase());
+  }
+
+  /**
+   * Writes {@code path.gz} with the content compressed at the highest level, if that is smaller
+   * than the content. Otherwise removes a variant left over from a previous build, so that a stale
+   * file is never served in place of the new content.
+   */
+  private static void writeGzipVariant(Path path, byte[] bytes) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2);
+    try (GZIPOutputStream out =
+        new GZIPOutputStream(baos) {
+          {
+            def.setLevel(Deflater.BEST_COMPRESSION);
+          }
+        }) {
+      out.write(bytes);
+    }
+    Path variant = path.resolveSibling(path.getFileName() + ".gz");
+    if (baos.size() < bytes.length) {
+      writeIfChanged(variant, baos.toByteArray());
+    } else {
+      Files.deleteIfExists(variant);
+    }
+  }
+
+  @Override
+  public void awaitCommittedResources(TreeLogger logger) throws UnableToCompleteException {
+    List<Future<?>> writes;
+    synchronized (pendingWrites) {
+      writes = new ArrayList<>(pendingWrites);
+      pendingWrites.clear();
+      if (resourceWriter != null) {
+        // A later commit starts a new one
+        resourceWriter.shutdown();
+        resourceWriter = null;
+      }
+      if (resourceCompressor != null) {
+        resourceCompressor.shutdown();
+        resourceCompressor = null;
+      }
+    }
+    boolean fail = false;
+    for (Future<?> write : writes) {
+      try {
+        write.get();
+      } catch (ExecutionException e) {
+        logger.log(TreeLogger.ERROR, "Unable to write a file " + e.getCause().getMessage(), null);
+        fail = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        logger.log(TreeLogger.ERROR, "Interrupted while writing resources", e);
+        throw new UnableToCompleteException();
+      }
+    }
+    if (fail) {
       throw new UnableToCompleteException();
     }
   }
 
+  /**
+   * Leaves the file alone if it already has the given content, so that its modification time and
+   * anything cached downstream stay valid. Otherwise replaces it atomically, readers never see a
+   * partially written file.
+   */
+  private static void writeIfChanged(Path path, byte[] bytes) throws IOException {
+    if (Files.isRegularFile(path)
+        && Files.size(path) == bytes.length
+        && Arrays.equals(Files.readAllBytes(path), bytes)) {
+      return;
+    }
+    Path dir = path.getParent();
+    Files.createDirectories(dir);
+    Path temp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, bytes);
+      try {
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
   @Override
   public PropertyOracle getPropertyOracle() {
     return propertyOracle;
@@ -103,6 +265,11 @@ public class StandardGeneratorContext implements GeneratorContext {
     return resourceOracle;
   }
 
+  @Override
+  public ResourceContentCache getResourceContentCache() {
+    return resourceContentCache;
+  }
+
   @Override
   public AptContext getAptContext() {
     return aptContext;
@@ -71,12 +71,64 @@ public abstract class AbstractCssResourceGenerator extends AbstractResourceGener
       TreeLogger logger, ResourceContext context, ExecutableElement method, SourceWriter sw)
       throws UnableToCompleteException {
     String cssExpression = getCssExpression(logger, context, method);
+    String literal = asStringLiteral(cssExpression);
 
-    sw.println("public String getText() {");
-    sw.indentln("return " + cssExpression + ";");
-    sw.println("}");
+    if (literal != null) {
+      // Nothing is substituted at runtime, the text is a compile-time constant
+      sw.println("public String getText() {");
+      sw.indentln("return " + literal + ";");
+      sw.println("}");
+    } else if (hasRuntimeConditions(method)) {
+      // The result depends on conditions evaluated at runtime, so it can't be cached
+      sw.println("public String getText() {");
+      sw.indentln("return " + cssExpression + ";");
+      sw.println("}");
+    } else {
+      sw.println("private String text;");
+      sw.println("public String getText() {");
+      sw.indent();
+      sw.println("if (text == null) {");
+      sw.indentln("text = " + cssExpression + ";");
+      sw.println("}");
+      sw.println("return text;");
+      sw.outdent();
+      sw.println("}");
+    }
+  }
+
+  /**
+   * Returns the single string literal the given expression consists of, without any enclosing
+   * parentheses, or <code>null</code> if the expression has to be evaluated at runtime.
+   */
+  static String asStringLiteral(String expression) {
+    String literal = expression.trim();
+    while (literal.length() > 1 && literal.startsWith("(") && literal.endsWith(")")) {
+      literal = literal.substring(1, literal.length() - 1).trim();
+    }
+    if (literal.length() < 2 || !literal.startsWith("\"") || !literal.endsWith("\"")) {
+      return null;
+    }
+    int end = literal.length() - 1;
+    int i = 1;
+    while (i < end) {
+      char c = literal.charAt(i);
+      if (c == '"') {
+        // The closing quote of a first literal, something else follows it
+        return null;
+      }
+      // Skip the escaped character
+      i += c == '\\' ? 2 : 1;
+    }
+    // Otherwise the last quote is escaped
+    return i == end ? literal : null;
   }
 
+  /**
+   * Returns <code>true</code> if the stylesheet of the given method still contains conditional
+   * blocks that are evaluated at runtime, in which case the result of getText() must not be cached.
+   */
+  protected abstract boolean hasRuntimeConditions(ExecutableElement method);
+
   /**
    * Returns the java expression that contains the compiled CSS.
    *
@@ -65,12 +65,14 @@ import javax.lang.model.util.Types;
 import org.gwtproject.i18n.shared.cldr.LocaleInfo;
 import org.gwtproject.resources.client.CssResource;
 import org.gwtproject.resources.client.CssResourceBase;
+import org.gwtproject.resources.ext.ClientBundleFields;
 import org.gwtproject.resources.ext.NotFoundException;
 import org.gwtproject.resources.ext.PropertyOracle;
 import org.gwtproject.resources.ext.ResourceContext;
 import org.gwtproject.resources.ext.ResourceGeneratorUtil;
 import org.gwtproject.resources.ext.TreeLogger;
 import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.css.CheckStaticCssVisitor;
 import org.gwtproject.resources.rg.css.ClassRenamer;
 import org.gwtproject.resources.rg.css.CssGenerationVisitor;
 import org.gwtproject.resources.rg.css.DefsCollector;
@@ -465,6 +467,12 @@ public class CssResourceGenerator extends AbstractCssResourceGenerator {
     return makeExpression(logger, context, stylesheetMap.get(method));
   }
 
+  @Override
+  protected boolean hasRuntimeConditions(ExecutableElement method) {
+    // Only @if blocks using a runtime expression make a stylesheet non-static
+    return !CheckStaticCssVisitor.isStatic(stylesheetMap.get(method));
+  }
+
   /**
    * Create a Java expression that evaluates to the string representation of the stylesheet
    * resource.
@@ -494,6 +502,15 @@ public class CssResourceGenerator extends AbstractCssResourceGenerator {
     }
   }
 
+  @Override
+  public void createFields(TreeLogger logger, ResourceContext context, ClientBundleFields fields)
+      throws UnableToCompleteException {
+    // if Gss is enabled, defer the call to the Gss generator.
+    if (gssEnabled) {
+      gssResourceGenerator.createFields(logger, context, fields);
+    }
+  }
+
   @Override
   public String createAssignment(
       TreeLogger logger, ResourceContext context, ExecutableElement method)
@@ -717,7 +734,7 @@ public class CssResourceGenerator extends AbstractCssResourceGenerator {
     // user.agent
     // formfactor
     // Evaluate @if statements based on deferred binding properties
-    new IfEvaluator(logger).accept(sheet);
+    new IfEvaluator(logger, context.getGeneratorContext().getPropertyOracle()).accept(sheet);
     // Rename css .class selectors. We look for all @external declarations in
     // the stylesheet and then compute the per-instance replacements.
     ExternalClassesCollector externalClasses = new ExternalClassesCollector();
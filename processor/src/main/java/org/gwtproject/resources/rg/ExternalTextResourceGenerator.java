@@ -16,8 +16,19 @@
  */
 package org.gwtproject.resources.rg;
 
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_EXTERNAL_TEXT_RESOURCE_PERSISTENT_CACHE;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_EXTERNAL_TEXT_RESOURCE_SHARD_SIZE;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
@@ -25,6 +36,7 @@ import javax.lang.model.util.Elements;
 import org.gwtproject.resources.client.TextResource;
 import org.gwtproject.resources.client.impl.ExternalTextResourcePrototype;
 import org.gwtproject.resources.ext.*;
+import org.gwtproject.resources.ext.ResourceContext.ContentWriter;
 import org.gwtproject.resources.rg.util.SourceWriter;
 import org.gwtproject.resources.rg.util.StringSourceWriter;
 import org.gwtproject.resources.rg.util.Util;
@@ -33,37 +45,74 @@ import org.gwtproject.safehtml.shared.UriUtils;
 /**
  * Adds {@link ExternalTextResourcePrototype} objects to the bundle.
  *
+ * <p>By default every text of the bundle is written to a single JSON array file. When the {@code
+ * ExternalTextResource.shardSize} configuration property is positive, the texts are split into
+ * several files of at most that many bytes each (a text larger than the budget gets a file of its
+ * own), so that fetching one resource only downloads and parses its shard. A budget of {@code 1}
+ * writes one file per distinct text.
+ *
+ * <p>Texts are de-duplicated by the strong name of their content, and the files are streamed to
+ * the output from the bytes held by the {@link ResourceContentCache}, without decoding them or
+ * assembling the files in memory. The characters escaped in the JSON strings are all ASCII, and
+ * ASCII bytes never occur inside a multi-byte UTF-8 sequence, so the bytes are escaped as they are.
+ *
+ * <p>When {@code ExternalTextResource.persistentCache} is {@code true}, every resource is also
+ * given the MD5 hash of its file, which lets the prototype keep the file in the browser's Cache API
+ * and reuse it on later visits. The hash is computed while the file is deployed.
+ *
  * @author Dmitrii Tikhomirov Created by treblereel 11/11/18
  */
 public final class ExternalTextResourceGenerator extends AbstractResourceGenerator {
-  /**
-   * The name of a deferred binding property that determines whether or not this generator will use
-   * JSONP to fetch the files.
-   */
-  // This string must stay in sync with the values in JsonpRequest.java
-  private StringBuffer data;
 
-  private boolean first;
-  private String urlExpression;
+  /** The source of each distinct text of the bundle, in bundle index order. */
+  private List<URL> sources;
+  /** The size of each entry of the JSON array, only computed if the bundle is sharded. */
+  private List<Long> entrySizes;
+
+  private ResourceContentCache contentCache;
+  /** The bundle index of each distinct text, by the strong name of its content. */
   private Map<String, Integer> hashes;
   private Map<String, Integer> offsets;
   private int currentIndex;
-  private String externalTextUrlIdent;
+  private int shardSize;
+  private boolean persistentCache;
+  /** The shard of each bundle index, filled in by {@link #createFields}. */
+  private int[] shardOfIndex;
+  /** The first bundle index of each shard. */
+  private List<Integer> shardStarts;
+
+  private List<String> externalTextUrlIdents;
+  /** The strong name of each shard, if the persistent cache is enabled. */
+  private List<String> shardHashes;
   private String externalTextCacheIdent;
 
   @Override
   public String createAssignment(
       TreeLogger logger, ResourceContext context, ExecutableElement method) {
     String name = method.getSimpleName().toString();
+    int index = offsets.get(name);
+    int shard = shardOfIndex[index];
 
     SourceWriter sw = new StringSourceWriter();
     sw.println("new " + ExternalTextResourcePrototype.class.getName() + "(");
     sw.indent();
     sw.println('"' + name + "\",");
     // These are field names
-    sw.println(UriUtils.class.getName() + ".fromTrustedString(" + externalTextUrlIdent + "),");
+    sw.println(
+        UriUtils.class.getName()
+            + ".fromTrustedString("
+            + externalTextUrlIdents.get(shard)
+            + "),");
     sw.println(externalTextCacheIdent + ", ");
-    sw.println(offsets.get(method.getSimpleName().toString()).toString());
+    StringBuilder args = new StringBuilder().append(index);
+    if (shardStarts.size() > 1) {
+      // The cache is shared by the whole bundle, the offset is relative to the shard
+      args.append(", ").append(index - shardStarts.get(shard));
+    }
+    if (persistentCache) {
+      args.append(", \"").append(shardHashes.get(shard)).append('"');
+    }
+    sw.println(args.toString());
     sw.outdent();
     sw.print(")");
 
@@ -74,19 +123,37 @@ public final class ExternalTextResourceGenerator extends AbstractResourceGenerat
   public void createFields(TreeLogger logger, ResourceContext context, ClientBundleFields fields)
       throws UnableToCompleteException {
     Elements elements = context.getGeneratorContext().getAptContext().elements;
-    data.append(']');
-    urlExpression =
-        context.deploy(
-            Util.getQualifiedSourceName(context.getClientBundleType(), elements).replace('.', '_')
-                + "_jsonbundle.txt",
-            "text/plain",
-            Util.getBytes(data.toString()),
-            true);
+    String baseName =
+        Util.getQualifiedSourceName(context.getClientBundleType(), elements).replace('.', '_')
+            + "_jsonbundle";
+
+    createShards();
 
     TypeElement stringType = elements.getTypeElement(String.class.getCanonicalName());
     assert stringType != null;
 
-    externalTextUrlIdent = fields.define(stringType, "externalTextUrl", urlExpression, true, true);
+    int shardCount = shardStarts.size();
+    externalTextUrlIdents = new ArrayList<>();
+    shardHashes = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      String fileName = shardCount == 1 ? baseName + ".txt" : baseName + "_" + i + ".txt";
+      int from = shardStarts.get(i);
+      int to = i + 1 < shardCount ? shardStarts.get(i + 1) : currentIndex;
+      ContentWriter content = out -> writeShard(out, from, to);
+      HashingContentWriter hashing = persistentCache ? new HashingContentWriter(content) : null;
+      String urlExpression =
+          context.deploy(fileName, "text/plain", hashing == null ? content : hashing, true);
+      if (hashing != null) {
+        try {
+          shardHashes.add(hashing.getHash());
+        } catch (IOException e) {
+          logger.log(TreeLogger.ERROR, "Unable to compute the hash of " + fileName, e);
+          throw new UnableToCompleteException();
+        }
+      }
+      String fieldName = shardCount == 1 ? "externalTextUrl" : "externalTextUrl" + i;
+      externalTextUrlIdents.add(fields.define(stringType, fieldName, urlExpression, true, true));
+    }
 
     TypeElement textResourceType = elements.getTypeElement(TextResource.class.getCanonicalName());
     assert textResourceType != null;
@@ -100,15 +167,128 @@ public final class ExternalTextResourceGenerator extends AbstractResourceGenerat
             true);
   }
 
-  @Override
-  public void init(TreeLogger logger, ResourceContext context) {
+  /** Splits the entries into contiguous shards of at most {@link #shardSize} UTF-8 bytes. */
+  private void createShards() {
+    shardStarts = new ArrayList<>();
+    shardStarts.add(0);
+    shardOfIndex = new int[currentIndex];
+    if (shardSize == 0) {
+      return;
+    }
+
+    // The closing bracket, the opening one is counted with the first entry
+    long currentBytes = 1;
+    for (int i = 0; i < currentIndex; i++) {
+      // The quotes and the separator or opening bracket
+      long entryBytes = entrySizes.get(i) + 4;
+      if (i > shardStarts.get(shardStarts.size() - 1) && currentBytes + entryBytes > shardSize) {
+        shardStarts.add(i);
+        currentBytes = 1;
+      }
+      currentBytes += entryBytes;
+      shardOfIndex[i] = shardStarts.size() - 1;
+    }
+  }
+
+  /** Writes the JSON array holding the texts {@code from} (inclusive) {@code to} (exclusive). */
+  private void writeShard(OutputStream out, int from, int to) throws IOException {
+    // Not closed, the caller owns the stream
+    OutputStream buffered = new BufferedOutputStream(out);
+    buffered.write('[');
+    buffered.write('\n');
+    for (int i = from; i < to; i++) {
+      if (i > from) {
+        buffered.write(',');
+        buffered.write('\n');
+      }
+      byte[] text = contentCache.getBytes(sources.get(i));
+      if (text == null) {
+        throw new IOException("Unable to read " + sources.get(i));
+      }
+      buffered.write('"');
+      writeEscaped(buffered, text);
+      buffered.write('"');
+    }
+    buffered.write(']');
+    buffered.flush();
+  }
+
+  /** Writes the UTF-8 {@code text} escaped like {@link Generator#escape}. */
+  private static void writeEscaped(OutputStream out, byte[] text) throws IOException {
+    int start = 0;
+    for (int i = 0; i < text.length; i++) {
+      char escape = getEscape(text[i]);
+      if (escape != 0) {
+        out.write(text, start, i - start);
+        out.write('\\');
+        out.write(escape);
+        start = i + 1;
+      }
+    }
+    out.write(text, start, text.length - start);
+  }
+
+  /** Returns the number of bytes {@link #writeEscaped} writes for {@code text}. */
+  private static long escapedLength(byte[] text) {
+    long length = text.length;
+    for (byte b : text) {
+      if (getEscape(b) != 0) {
+        length++;
+      }
+    }
+    return length;
+  }
+
+  /** Returns the character following the backslash that escapes {@code b}, or 0 if none does. */
+  private static char getEscape(byte b) {
+    switch (b) {
+      case '\0':
+        return '0';
+      case '\n':
+        return 'n';
+      case '\r':
+        return 'r';
+      case '"':
+        return '"';
+      case '\\':
+        return '\\';
+      default:
+        return 0;
+    }
+  }
 
-    data = new StringBuffer("[\n");
-    first = true;
-    urlExpression = null;
+  @Override
+  public void init(TreeLogger logger, ResourceContext context) throws UnableToCompleteException {
+    sources = new ArrayList<>();
+    entrySizes = new ArrayList<>();
+    contentCache = context.getGeneratorContext().getResourceContentCache();
     hashes = new HashMap<>();
     offsets = new HashMap<>();
     currentIndex = 0;
+
+    PropertyOracle propertyOracle = context.getGeneratorContext().getPropertyOracle();
+    persistentCache =
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_EXTERNAL_TEXT_RESOURCE_PERSISTENT_CACHE)
+            .asSingleBooleanValue();
+    String value =
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_EXTERNAL_TEXT_RESOURCE_SHARD_SIZE)
+            .asSingleValue();
+    try {
+      shardSize = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      shardSize = -1;
+    }
+    if (shardSize < 0) {
+      logger.log(
+          TreeLogger.ERROR,
+          KEY_EXTERNAL_TEXT_RESOURCE_SHARD_SIZE
+              + " must be a non-negative integer, but was '"
+              + value
+              + "'");
+      throw new UnableToCompleteException();
+    }
   }
 
   @Override
@@ -125,23 +305,68 @@ public final class ExternalTextResourceGenerator extends AbstractResourceGenerat
 
     URL resource = urls[0];
 
-    String toWrite = Util.readURLAsString(resource);
+    String strongName = contentCache.getStrongName(resource);
+    if (strongName == null) {
+      logger.log(TreeLogger.ERROR, "Unable to read " + resource.toExternalForm(), null);
+      throw new UnableToCompleteException();
+    }
     // This de-duplicates strings in the bundle.
-    if (!hashes.containsKey(toWrite)) {
-      hashes.put(toWrite, currentIndex++);
-
-      if (!first) {
-        data.append(",\n");
-      } else {
-        first = false;
+    Integer index = hashes.get(strongName);
+    if (index == null) {
+      index = currentIndex++;
+      hashes.put(strongName, index);
+      sources.add(resource);
+      if (shardSize > 0) {
+        entrySizes.add(escapedLength(contentCache.getBytes(resource)));
       }
-
-      data.append('"');
-      data.append(Generator.escape(toWrite));
-      data.append('"');
     }
 
     // Store the (possibly n:1) mapping of resource function to bundle index.
-    offsets.put(method.getSimpleName().toString(), hashes.get(toWrite));
+    offsets.put(method.getSimpleName().toString(), index);
+  }
+
+  /**
+   * Computes the MD5 hash of the content while the context writes it. The context may write the
+   * content several times, or not at all if the file already exists, in which case the content is
+   * written once more just to hash it.
+   */
+  private static class HashingContentWriter implements ContentWriter {
+    private final ContentWriter content;
+    private byte[] hash;
+
+    HashingContentWriter(ContentWriter content) {
+      this.content = content;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      MessageDigest md5 = createMd5();
+      DigestOutputStream digestOut = new DigestOutputStream(out, md5);
+      content.writeTo(digestOut);
+      digestOut.flush();
+      hash = md5.digest();
+    }
+
+    String getHash() throws IOException {
+      if (hash == null) {
+        writeTo(
+            new OutputStream() {
+              @Override
+              public void write(int b) {}
+
+              @Override
+              public void write(byte[] b, int off, int len) {}
+            });
+      }
+      return Util.printHexBinary(hash).toUpperCase();
+    }
+
+    private static MessageDigest createMd5() {
+      try {
+        return MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException("Error initializing MD5", e);
+      }
+    }
   }
 }
@@ -24,6 +24,8 @@ import static org.gwtproject.resources.client.CssResource.NotStrict;
 import static org.gwtproject.resources.client.CssResource.Shared;
 import static org.gwtproject.resources.ext.TreeLogger.ERROR;
 import static org.gwtproject.resources.ext.TreeLogger.Type;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_INCREMENTAL;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_STATE_LOCATION;
 import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_ALLOWED_AT_RULES;
 import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_ALLOWED_FUNCTIONS;
 import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CSS_RESOURCE_CONVERSION_MODE;
@@ -35,7 +37,6 @@ import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_G
 import com.google.auto.common.MoreElements;
 import com.google.auto.common.MoreTypes;
 import com.google.common.base.CaseFormat;
-import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
@@ -50,9 +51,11 @@ import com.google.common.css.PrefixingSubstitutionMap;
 import com.google.common.css.SourceCode;
 import com.google.common.css.SourceCodeLocation;
 import com.google.common.css.SubstitutionMap;
+import com.google.common.css.compiler.ast.CssBlockNode;
 import com.google.common.css.compiler.ast.CssCompilerPass;
 import com.google.common.css.compiler.ast.CssCompositeValueNode;
 import com.google.common.css.compiler.ast.CssDefinitionNode;
+import com.google.common.css.compiler.ast.CssNode;
 import com.google.common.css.compiler.ast.CssNumericNode;
 import com.google.common.css.compiler.ast.CssTree;
 import com.google.common.css.compiler.ast.CssValueNode;
@@ -94,8 +97,6 @@ import com.google.common.css.compiler.passes.ResolveCustomFunctionNodes;
 import com.google.common.css.compiler.passes.SplitRulesetNodes;
 import com.google.common.css.compiler.passes.UnrollLoops;
 import com.google.common.css.compiler.passes.ValidatePropertyValues;
-import com.google.common.io.ByteSource;
-import com.google.common.io.Resources;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -115,7 +116,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.Adler32;
@@ -128,17 +132,20 @@ import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
-import org.apache.commons.io.IOUtils;
 import org.gwtproject.i18n.shared.cldr.LocaleInfo;
 import org.gwtproject.resources.client.ClientBundle;
 import org.gwtproject.resources.client.CssResource;
 import org.gwtproject.resources.client.CssResourceBase;
 import org.gwtproject.resources.context.AptContext;
 import org.gwtproject.resources.converter.Css2Gss;
+import org.gwtproject.resources.converter.Css2GssCache;
+import org.gwtproject.resources.converter.Css2GssCache.RecordingPredicate;
 import org.gwtproject.resources.converter.Css2GssConversionException;
+import org.gwtproject.resources.ext.ClientBundleFields;
 import org.gwtproject.resources.ext.ConfigurationProperty;
 import org.gwtproject.resources.ext.DefaultConfigurationProperty;
 import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContentCache;
 import org.gwtproject.resources.ext.ResourceContext;
 import org.gwtproject.resources.ext.ResourceGeneratorUtil;
 import org.gwtproject.resources.ext.ResourceOracle;
@@ -158,6 +165,8 @@ import org.gwtproject.resources.rg.gss.RecordingBidiFlipper;
 import org.gwtproject.resources.rg.gss.RenamingSubstitutionMap;
 import org.gwtproject.resources.rg.gss.RuntimeConditionalBlockCollector;
 import org.gwtproject.resources.rg.gss.ValidateRuntimeConditionalNode;
+import org.gwtproject.resources.rg.util.MoreTypeUtils;
+import org.gwtproject.resources.rg.util.PhaseTimer;
 import org.gwtproject.resources.rg.util.SourceWriter;
 import org.gwtproject.resources.rg.util.StringSourceWriter;
 import org.gwtproject.resources.rg.util.Util;
@@ -165,16 +174,13 @@ import org.gwtproject.resources.rg.util.Util;
 /** @author Dmitrii Tikhomirov Created by treblereel 12/1/18 */
 public class GssResourceGenerator extends AbstractCssResourceGenerator {
 
-  // To be sure to avoid conflict during the style classes renaming between different GssResources,
-  // we will create a different prefix for each GssResource. We use a MinimalSubstitutionMap
-  // that will create a String with 1-6 characters in length but keeping the length of the prefix
-  // as short as possible. For instance if we have two GssResources to compile, the  prefix
-  // for the first resource will be 'a' and the prefix for the second resource will be 'b' and so on
-  private static final SubstitutionMap resourcePrefixBuilder = new MinimalSubstitutionMap();
   private static final String KEY_CLASS_PREFIX = "cssResourcePrefix";
   private static final String KEY_BY_CLASS_AND_METHOD = "cssResourceClassAndMethod";
   private static final String KEY_HAS_CACHED_DATA = "hasCachedData";
   private static final String KEY_SHARED_METHODS = "sharedMethods";
+  private static final String KEY_RESOURCE_PREFIXES = "resourcePrefixes";
+  private static final String KEY_AT_DEF_FILE = "atDefFile";
+  private static final String KEY_FINALIZED_STYLESHEETS = "finalizedStylesheets";
   private static final char[] BASE32_CHARS =
       new char[] {
         'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P', 'Q', 'R',
@@ -188,41 +194,33 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
   // see: http://www.w3.org/TR/CSS2/syndata.html#charset
   private static final Pattern CHARSET = Pattern.compile("^@charset \"([^\"]*)\";");
   private static final int CHARSET_MIN_LENGTH = "@charset \"\";".length();
-  /*
-   * TODO(dankurka): This is a nasty hack to get the compiler to output all @def's
-   * it has seen in a compile. Once GSS migration is done this needs to be removed.
-   */
-  private static boolean shouldEmitVariables;
-  private static PrintWriter printWriter;
-  private static Set<String> writtenAtDefs = new HashSet<>();
-
-  static {
-    String varFileName = System.getProperty("emitGssVarNameFile");
-    shouldEmitVariables = varFileName != null;
-    if (shouldEmitVariables) {
-      try {
-        File file = new File(varFileName);
-        file.createNewFile();
-        printWriter = new PrintWriter(new FileOutputStream(file));
-      } catch (Exception e) {
-        System.err.println("Error while opening file");
-        e.printStackTrace();
-        System.exit(-1);
-      }
-    }
-  }
-
   private final GssOptions gssOptions;
+  private final Map<ExecutableElement, Future<CssParsingResult>> pendingParsingResults =
+      new LinkedHashMap<>();
+  private final Map<ExecutableElement, Future<String>> pendingAssignments =
+      new IdentityHashMap<>();
   private Map<ExecutableElement, CssParsingResult> cssParsingResultMap;
   private Set<String> allowedNonStandardFunctions;
-  private LoggerErrorManager errorManager;
   private List<String> ignoredMethods = new ArrayList<>();
+  /*
+   * TODO(dankurka): This is a nasty hack to get the compiler to output all @def's
+   * it has seen in a compile. Once GSS migration is done this needs to be removed.
+   */
+  private AtDefFile atDefFile;
+  private ConcurrentMap<String, CssTree> finalizedStylesheets;
+  private Css2GssCache conversionCache;
 
   private String obfuscationPrefix;
   private CssObfuscationStyle obfuscationStyle;
   private Set<String> allowedAtRules;
   private Map<TypeElement, Map<String, String>> replacementsByClassAndMethod;
   private Map<ExecutableElement, String> replacementsForSharedMethods;
+  // To be sure to avoid conflict during the style classes renaming between different GssResources,
+  // we will create a different prefix for each GssResource. We use a MinimalSubstitutionMap
+  // that will create a String with 1-6 characters in length but keeping the length of the prefix
+  // as short as possible. For instance if we have two GssResources to compile, the  prefix
+  // for the first resource will be 'a' and the prefix for the second resource will be 'b' and so on
+  private SubstitutionMap resourcePrefixBuilder;
 
   public GssResourceGenerator(GssOptions gssOptions) {
     this.gssOptions = gssOptions;
@@ -277,6 +275,10 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
     return true;
   }
 
+  /**
+   * Finds the stylesheets of the method and parses them on the pool of the context, the results are
+   * collected in {@link #createFields}.
+   */
   @Override
   public void prepare(TreeLogger logger, ResourceContext context, ExecutableElement method)
       throws UnableToCompleteException {
@@ -292,9 +294,61 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
       throw new UnableToCompleteException();
     }
 
-    CssParsingResult cssParsingResult =
-        parseResources(Lists.newArrayList(resourceUrls), context, logger);
-    cssParsingResultMap.put(method, cssParsingResult);
+    List<URL> resources = Lists.newArrayList(resourceUrls);
+    pendingParsingResults.put(
+        method,
+        context.getPool().submit(() -> parseResources(resources, context, method, logger)));
+  }
+
+  /**
+   * Waits for every stylesheet parsed by {@link #prepare}, then optimizes and prints them on the
+   * pool. Each stylesheet is compiled on its own tree with its own error manager, {@link
+   * #createAssignment} only waits for the result of its method.
+   */
+  @Override
+  public void createFields(TreeLogger logger, ResourceContext context, ClientBundleFields fields)
+      throws UnableToCompleteException {
+    try {
+      boolean fail = false;
+      for (Map.Entry<ExecutableElement, Future<CssParsingResult>> entry :
+          pendingParsingResults.entrySet()) {
+        try {
+          cssParsingResultMap.put(entry.getKey(), await(logger, entry.getKey(), entry.getValue()));
+        } catch (UnableToCompleteException e) {
+          fail = true;
+        }
+      }
+      if (fail) {
+        throw new UnableToCompleteException();
+      }
+
+      for (ExecutableElement method : pendingParsingResults.keySet()) {
+        TreeLogger methodLogger =
+            logger.branch(
+                TreeLogger.DEBUG, "Creating assignment for " + method.getSimpleName() + "()");
+        pendingAssignments.put(
+            method, context.getPool().submit(() -> compile(methodLogger, context, method)));
+      }
+    } finally {
+      pendingParsingResults.clear();
+    }
+  }
+
+  private static <T> T await(TreeLogger logger, ExecutableElement method, Future<T> future)
+      throws UnableToCompleteException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UnableToCompleteException) {
+        throw (UnableToCompleteException) e.getCause();
+      }
+      logger.log(ERROR, "Unexpected error while compiling " + method, e.getCause());
+      throw new UnableToCompleteException();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(ERROR, "Interrupted while compiling " + method, e);
+      throw new UnableToCompleteException();
+    }
   }
 
   /**
@@ -373,13 +427,14 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
   }
 
   private CssParsingResult parseResources(
-      List<URL> resources, ResourceContext context, TreeLogger logger)
+      List<URL> resources, ResourceContext context, ExecutableElement method, TreeLogger logger)
       throws UnableToCompleteException {
-    List<SourceCode> sourceCodes = new ArrayList<>(resources.size());
+    LoggerErrorManager errorManager = new LoggerErrorManager(logger);
     ImmutableMap.Builder<String, String> constantNameMappingBuilder = ImmutableMap.builder();
 
     // assert that we only support either gss or css on one resource.
     boolean css = ensureEitherCssOrGss(resources, logger);
+    ResourceContentCache contentCache = context.getGeneratorContext().getResourceContentCache();
 
     if (css && gssOptions.isAutoConversionOff()) {
       logger.log(
@@ -396,38 +451,46 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
       throw new UnableToCompleteException();
     }
 
+    CssTree tree;
     if (css) {
-      String concatenatedCss = concatCssFiles(resources, logger);
+      String concatenatedCss = concatCssFiles(contentCache, resources, logger);
 
-      ConversionResult result = convertToGss(concatenatedCss, context, logger);
+      ConversionResult result =
+          convertToGss(concatenatedCss, resources.get(0), context, logger);
 
-      if (shouldEmitVariables) {
-        write(result.defNameMapping.keySet());
+      if (atDefFile != null) {
+        atDefFile.write(result.defNameMapping.keySet());
       }
 
       String gss = result.gss;
       String name = "[auto-converted gss files from : " + resources + "]";
-      sourceCodes.add(new SourceCode(name, gss));
+      tree = parse(Collections.singletonList(new SourceCode(name, gss)), logger);
 
       constantNameMappingBuilder.putAll(result.defNameMapping);
+
+      // create more explicit nodes
+      try (PhaseTimer timer =
+          PhaseTimer.start("gss.finalizeTree", context.getClientBundleType(), method, getClass())) {
+        finalizeTree(tree, errorManager);
+      }
     } else {
-      for (URL stylesheet : resources) {
-        sourceCodes.add(readUrlContent(stylesheet, logger));
+      try (PhaseTimer timer =
+          PhaseTimer.start("gss.finalizeTree", context.getClientBundleType(), method, getClass())) {
+        tree = new CssTree((SourceCode) null);
+        CssBlockNode body = tree.getRoot().getBody();
+        for (URL stylesheet : resources) {
+          CssTree finalized = getFinalizedStylesheet(contentCache, stylesheet, logger);
+          // The cached tree is shared, every method works on its own copy
+          for (CssNode node : finalized.getRoot().getBody().getChildren()) {
+            body.addChildToBack(node.deepCopy());
+          }
+        }
+        // @provide and @require can refer to other stylesheets, check them on the whole tree
+        new CheckDependencyNodes(tree.getMutatingVisitController(), errorManager, false)
+            .runPass();
       }
     }
-
-    CssTree tree;
-    try {
-      tree = new GssParser(sourceCodes).parse();
-
-    } catch (GssParserException e) {
-      logger.log(ERROR, "Unable to parse CSS", e);
-      throw new UnableToCompleteException();
-    }
-
-    // create more explicit nodes
-    finalizeTree(tree);
-    checkErrors();
+    checkErrors(errorManager);
 
     // collect boolean conditions that have to be mapped to configuration properties
     BooleanConditionCollector booleanConditionCollector =
@@ -446,12 +509,57 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
         constantNameMappingBuilder.build());
   }
 
-  private void finalizeTree(CssTree cssTree) throws UnableToCompleteException {
+  private static CssTree parse(List<SourceCode> sourceCodes, TreeLogger logger)
+      throws UnableToCompleteException {
+    try {
+      return new GssParser(sourceCodes).parse();
+
+    } catch (GssParserException e) {
+      logger.log(ERROR, "Unable to parse CSS", e);
+      throw new UnableToCompleteException();
+    }
+  }
+
+  /**
+   * Returns the parsed and finalized tree of a single GSS stylesheet. Theme files are listed in
+   * the sources of many methods, so the trees are shared by every bundle of the round, keyed by
+   * the URL and the content of the stylesheet. The returned tree must not be modified.
+   */
+  private CssTree getFinalizedStylesheet(
+      ResourceContentCache contentCache, URL stylesheet, TreeLogger logger)
+      throws UnableToCompleteException {
+    String key = stylesheet.toExternalForm() + "#" + contentCache.getStrongName(stylesheet);
+    CssTree tree = finalizedStylesheets.get(key);
+    if (tree != null) {
+      return tree;
+    }
+
+    SourceCode sourceCode = readUrlContent(contentCache, stylesheet, logger);
+    tree = parse(Collections.singletonList(sourceCode), logger);
+    LoggerErrorManager errorManager = new LoggerErrorManager(logger);
+    finalizeStylesheet(tree, errorManager);
+    // Trees with errors are not kept, each method using them reports the errors
+    checkErrors(errorManager);
+
+    CssTree existing = finalizedStylesheets.putIfAbsent(key, tree);
+    return existing != null ? existing : tree;
+  }
+
+  private void finalizeTree(CssTree cssTree, LoggerErrorManager errorManager)
+      throws UnableToCompleteException {
     new CheckDependencyNodes(cssTree.getMutatingVisitController(), errorManager, false).runPass();
 
     // Don't continue if errors exist
-    checkErrors();
+    checkErrors(errorManager);
+
+    finalizeStylesheet(cssTree, errorManager);
+  }
 
+  /**
+   * Runs the passes of {@link #finalizeTree} that only depend on the stylesheet itself, they can
+   * be run on each stylesheet of a method separately.
+   */
+  private void finalizeStylesheet(CssTree cssTree, LoggerErrorManager errorManager) {
     new CreateStandardAtRuleNodes(cssTree.getMutatingVisitController(), errorManager).runPass();
     new CreateMixins(cssTree.getMutatingVisitController(), errorManager).runPass();
     new CreateDefinitionNodes(cssTree.getMutatingVisitController(), errorManager).runPass();
@@ -471,95 +579,86 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
     new MarkNonFlippableNodes(cssTree.getMutatingVisitController(), errorManager).runPass();
   }
 
-  private void checkErrors() throws UnableToCompleteException {
+  private static void checkErrors(LoggerErrorManager errorManager)
+      throws UnableToCompleteException {
     if (errorManager.hasErrors()) {
       throw new UnableToCompleteException();
     }
   }
 
-  private static synchronized void write(Set<String> variables) {
-    for (String atDef : variables) {
-      if (writtenAtDefs.add(atDef)) {
-        printWriter.println("@def " + atDef + " 1px;");
-      }
-    }
-    printWriter.flush();
-  }
-
-  public static SourceCode readUrlContent(URL fileUrl, TreeLogger logger)
+  /** Reads a stylesheet through the cache, honoring a leading {@code @charset} at-rule. */
+  public static SourceCode readUrlContent(
+      ResourceContentCache contentCache, URL fileUrl, TreeLogger logger)
       throws UnableToCompleteException {
     TreeLogger branchLogger =
         logger.branch(TreeLogger.DEBUG, "Reading GSS stylesheet " + fileUrl.toExternalForm());
-    try {
-      ByteSource byteSource = Resources.asByteSource(fileUrl);
-      // default charset
-      Charset charset = Charsets.UTF_8;
+    // default charset
+    String fileContent = contentCache.getString(fileUrl);
+    if (fileContent == null) {
+      branchLogger.log(TreeLogger.ERROR, "Unable to parse CSS", null);
+      throw new UnableToCompleteException();
+    }
 
-      // check if the stylesheet doesn't include a @charset at-rule
-      String styleSheetCharset = extractCharset(byteSource);
-      if (styleSheetCharset != null) {
-        try {
-          charset = Charset.forName(styleSheetCharset);
-        } catch (UnsupportedCharsetException e) {
-          logger.log(Type.ERROR, "Unsupported charset found: " + styleSheetCharset);
-          throw new UnableToCompleteException();
-        }
+    // check if the stylesheet doesn't include a @charset at-rule
+    String styleSheetCharset = extractCharset(fileContent);
+    if (styleSheetCharset != null) {
+      Charset charset;
+      try {
+        charset = Charset.forName(styleSheetCharset);
+      } catch (UnsupportedCharsetException e) {
+        logger.log(Type.ERROR, "Unsupported charset found: " + styleSheetCharset);
+        throw new UnableToCompleteException();
       }
+      // The bytes are already in memory, decoding them again is all it takes
+      fileContent = new String(contentCache.getBytes(fileUrl), charset);
 
-      String fileContent = byteSource.asCharSource(charset).read();
       // If the stylesheet specified a charset, we have to remove the at-rule otherwise the GSS
       // compiler will fail.
-      if (styleSheetCharset != null) {
-        int charsetAtRuleLength = CHARSET_MIN_LENGTH + styleSheetCharset.length();
-        // replace charset at-rule by blanks to keep correct source location of the rest of
-        // the stylesheet.
-        fileContent =
-            Strings.repeat(" ", charsetAtRuleLength) + fileContent.substring(charsetAtRuleLength);
-      }
-      return new SourceCode(fileUrl.getFile(), fileContent);
-
-    } catch (IOException e) {
-      branchLogger.log(TreeLogger.ERROR, "Unable to parse CSS", e);
+      int charsetAtRuleLength = CHARSET_MIN_LENGTH + styleSheetCharset.length();
+      // replace charset at-rule by blanks to keep correct source location of the rest of
+      // the stylesheet.
+      fileContent =
+          Strings.repeat(" ", charsetAtRuleLength) + fileContent.substring(charsetAtRuleLength);
     }
-    throw new UnableToCompleteException();
+    return new SourceCode(fileUrl.getFile(), fileContent);
   }
 
-  private static String extractCharset(ByteSource byteSource) throws IOException {
-    String firstLine = byteSource.asCharSource(Charsets.UTF_8).readFirstLine();
-
-    if (firstLine != null) {
-      Matcher matcher = CHARSET.matcher(firstLine);
+  private static String extractCharset(String content) {
+    int end = 0;
+    while (end < content.length() && content.charAt(end) != '\n' && content.charAt(end) != '\r') {
+      end++;
+    }
+    Matcher matcher = CHARSET.matcher(content.substring(0, end));
 
-      if (matcher.matches()) {
-        return matcher.group(1);
-      }
+    if (matcher.matches()) {
+      return matcher.group(1);
     }
 
     return null;
   }
 
   private ConversionResult convertToGss(
-      String concatenatedCss, ResourceContext context, TreeLogger logger)
+      String concatenatedCss, URL baseUrl, ResourceContext context, TreeLogger logger)
       throws UnableToCompleteException {
-    File tempFile = null;
-    FileOutputStream fos = null;
-    try {
-      // We actually need a URL for the old CssResource to work. So create a temp file.
-      tempFile = File.createTempFile(UUID.randomUUID() + "css_converter", "css.tmp");
+    boolean lenient = gssOptions.isLenientConversion();
+    ConfigurationPropertyMatcher configurationPropertyMatcher =
+        new ConfigurationPropertyMatcher(context, logger);
 
-      fos = new FileOutputStream(tempFile);
-      IOUtils.write(concatenatedCss, fos);
-      fos.close();
-
-      ConfigurationPropertyMatcher configurationPropertyMatcher =
-          new ConfigurationPropertyMatcher(context, logger);
+    if (conversionCache != null) {
+      Css2GssCache.Entry cached =
+          conversionCache.find(logger, concatenatedCss, lenient, configurationPropertyMatcher);
+      if (configurationPropertyMatcher.error) {
+        throw new UnableToCompleteException();
+      }
+      if (cached != null) {
+        return new ConversionResult(cached.getGss(), cached.getDefNameMapping());
+      }
+    }
 
+    try {
+      RecordingPredicate recordingPredicate = new RecordingPredicate(configurationPropertyMatcher);
       Css2Gss converter =
-          new Css2Gss(
-              tempFile.toURI().toURL(),
-              logger,
-              gssOptions.isLenientConversion(),
-              configurationPropertyMatcher);
+          new Css2Gss(baseUrl, concatenatedCss, logger, lenient, recordingPredicate);
 
       String gss = converter.toGss();
 
@@ -567,11 +666,20 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
         throw new UnableToCompleteException();
       }
 
+      if (conversionCache != null) {
+        conversionCache.store(
+            logger,
+            concatenatedCss,
+            lenient,
+            new Css2GssCache.Entry(gss, converter.getDefNameMapping()),
+            recordingPredicate.getAnswers());
+      }
+
       return new ConversionResult(gss, converter.getDefNameMapping());
 
     } catch (Css2GssConversionException e) {
       String message = "An error occurs during the automatic conversion: " + e.getMessage();
-      if (!gssOptions.isLenientConversion()) {
+      if (!lenient) {
         message +=
             "\n You should try to change the faulty css to fix this error. If you are "
                 + "unable to change the css, you can setup the automatic conversion to be lenient. Add "
@@ -580,32 +688,21 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
       }
       logger.log(Type.ERROR, message, e);
       throw new UnableToCompleteException();
-    } catch (IOException e) {
-      logger.log(Type.ERROR, "Error while writing temporary css file", e);
-      throw new UnableToCompleteException();
-    } finally {
-      if (tempFile != null) {
-        tempFile.delete();
-      }
-      if (fos != null) {
-        IOUtils.closeQuietly(fos);
-      }
     }
   }
 
-  public static String concatCssFiles(List<URL> resources, TreeLogger logger)
+  public static String concatCssFiles(
+      ResourceContentCache contentCache, List<URL> resources, TreeLogger logger)
       throws UnableToCompleteException {
-    StringBuffer buffer = new StringBuffer();
+    StringBuilder buffer = new StringBuilder();
     for (URL stylesheet : resources) {
-      try {
-        String fileContent = Resources.asByteSource(stylesheet).asCharSource(Charsets.UTF_8).read();
-        buffer.append(fileContent);
-        buffer.append("\n");
-
-      } catch (IOException e) {
-        logger.log(ERROR, "Unable to parse CSS", e);
+      String fileContent = contentCache.getString(stylesheet);
+      if (fileContent == null) {
+        logger.log(ERROR, "Unable to parse CSS " + stylesheet, null);
         throw new UnableToCompleteException();
       }
+      buffer.append(fileContent);
+      buffer.append("\n");
     }
     return buffer.toString();
   }
@@ -648,6 +745,15 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
     }
   }
 
+  @Override
+  protected boolean hasRuntimeConditions(ExecutableElement method) {
+    RuntimeConditionalBlockCollector runtimeConditionalBlockCollector =
+        new RuntimeConditionalBlockCollector(
+            cssParsingResultMap.get(method).tree.getVisitController());
+    runtimeConditionalBlockCollector.runPass();
+    return !runtimeConditionalBlockCollector.getRuntimeConditionalBlock().isEmpty();
+  }
+
   // TODO FIX REPLACEMENT
   private String printCssTree(CssTree tree) {
     CssPrinter cssPrinterPass = new CssPrinter(tree);
@@ -660,6 +766,17 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
   public String createAssignment(
       TreeLogger logger, ResourceContext context, ExecutableElement method)
       throws UnableToCompleteException {
+    Future<String> assignment = pendingAssignments.remove(method);
+    if (assignment == null) {
+      return compile(logger, context, method);
+    }
+    return await(logger, method, assignment);
+  }
+
+  /** Optimizes the stylesheet of a single method and prints the implementation of its resource. */
+  private String compile(TreeLogger logger, ResourceContext context, ExecutableElement method)
+      throws UnableToCompleteException {
+    LoggerErrorManager errorManager = new LoggerErrorManager(logger);
     CssParsingResult cssParsingResult = cssParsingResultMap.get(method);
     CssTree cssTree = cssParsingResult.tree;
 
@@ -667,14 +784,19 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
 
     // TODO : Should we foresee configuration properties for simplifyCss and eliminateDeadCode
     // booleans ?
-    ConstantDefinitions constantDefinitions =
-        optimizeTree(cssParsingResult, context, true, true, logger);
+    ConstantDefinitions constantDefinitions;
+    try (PhaseTimer timer =
+        PhaseTimer.start("gss.optimizeTree", context.getClientBundleType(), method, getClass())) {
+      constantDefinitions =
+          optimizeTree(cssParsingResult, context, true, true, logger, errorManager);
+    }
 
-    checkErrors();
+    checkErrors(errorManager);
 
-    Set<String> externalClasses = revertRenamingOfExternalClasses(cssTree, renamingResult);
+    Set<String> externalClasses =
+        revertRenamingOfExternalClasses(cssTree, renamingResult, errorManager);
 
-    checkErrors();
+    checkErrors(errorManager);
 
     // Validate that classes not assigned to one of the interface methods are external
     validateExternalClasses(externalClasses, renamingResult.externalClassCandidate, method, logger);
@@ -704,7 +826,8 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
       ResourceContext context,
       boolean simplifyCss,
       boolean eliminateDeadStyles,
-      TreeLogger logger)
+      TreeLogger logger,
+      LoggerErrorManager errorManager)
       throws UnableToCompleteException {
     CssTree cssTree = cssParsingResult.tree;
 
@@ -744,7 +867,7 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
         .runPass();
 
     // Don't continue if errors exist
-    checkErrors();
+    checkErrors(errorManager);
 
     CollectConstantDefinitions collectConstantDefinitionsPass =
         new CollectConstantDefinitions(cssTree);
@@ -886,7 +1009,7 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
    * when these blocks are evaluated.
    */
   private Set<String> revertRenamingOfExternalClasses(
-      CssTree cssTree, RenamingResult renamingResult) {
+      CssTree cssTree, RenamingResult renamingResult, LoggerErrorManager errorManager) {
     ExternalClassesCollector externalClassesCollector =
         new ExternalClassesCollector(cssTree.getMutatingVisitController(), errorManager);
 
@@ -996,8 +1119,19 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
     return prefix + "-";
   }
 
+  /**
+   * The replacements are shared by every bundle of the round and are all computed in {@link
+   * #init}, the lock only guards the lookups made while the stylesheets are compiled concurrently.
+   */
   private Map<String, String> computeReplacementsForType(
       TypeElement cssResource, AptContext aptContext) {
+    synchronized (replacementsByClassAndMethod) {
+      return computeReplacementsForTypeLocked(cssResource, aptContext);
+    }
+  }
+
+  private Map<String, String> computeReplacementsForTypeLocked(
+      TypeElement cssResource, AptContext aptContext) {
     Map<String, String> replacements = replacementsByClassAndMethod.get(cssResource);
     Types types = aptContext.types;
     Elements elements = aptContext.elements;
@@ -1284,7 +1418,6 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
   @Override
   public void init(TreeLogger logger, ResourceContext context) throws UnableToCompleteException {
     cssParsingResultMap = new IdentityHashMap<>();
-    errorManager = new LoggerErrorManager(logger);
     PropertyOracle propertyOracle = context.getGeneratorContext().getPropertyOracle();
 
     Types types = context.getGeneratorContext().getAptContext().types;
@@ -1320,7 +1453,71 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
         propertyOracle
             .getConfigurationProperty(logger, KEY_CSS_RESOURCE_ALLOWED_FUNCTIONS)
             .getValues());
+    initAtDefFile(logger, context);
+    initFinalizedStylesheets(context);
+    initConversionCache(logger, propertyOracle);
     initReplacement(context);
+    computeReplacementsForBundle(logger, context);
+  }
+
+  /**
+   * Automatic conversions are kept next to the incremental state of the bundles, they are only
+   * reused when incremental generation is enabled.
+   */
+  private void initConversionCache(TreeLogger logger, PropertyOracle propertyOracle)
+      throws UnableToCompleteException {
+    if (gssOptions.isAutoConversionOff()
+        || !propertyOracle
+            .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_INCREMENTAL)
+            .asSingleBooleanValue()) {
+      return;
+    }
+    String stateLocation =
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_STATE_LOCATION)
+            .asSingleValue();
+    conversionCache = new Css2GssCache(new File(stateLocation, "css2gss"));
+  }
+
+  /** Opens the file named by the emitGssVarNameFile system property once per processing round. */
+  private void initAtDefFile(TreeLogger logger, ResourceContext context)
+      throws UnableToCompleteException {
+    String varFileName = System.getProperty("emitGssVarNameFile");
+    if (varFileName == null) {
+      return;
+    }
+    atDefFile = context.getCachedData(KEY_AT_DEF_FILE, AtDefFile.class);
+    if (atDefFile == null) {
+      try {
+        atDefFile = new AtDefFile(new PrintWriter(new FileOutputStream(varFileName)));
+      } catch (IOException e) {
+        logger.log(ERROR, "Error while opening file " + varFileName, e);
+        throw new UnableToCompleteException();
+      }
+      context.putCachedData(KEY_AT_DEF_FILE, atDefFile);
+    }
+  }
+
+  /**
+   * Obfuscated class names depend on the order in which CssResource types are first seen. They
+   * are computed here, in accessor order, rather than lazily while creating the assignments so
+   * that the names don't change when the bundles are generated concurrently.
+   */
+  private void computeReplacementsForBundle(TreeLogger logger, ResourceContext context)
+      throws UnableToCompleteException {
+    Types types = context.getGeneratorContext().getAptContext().types;
+    Elements elements = context.getGeneratorContext().getAptContext().elements;
+    TypeMirror cssResourceType =
+        elements.getTypeElement(CssResource.class.getCanonicalName()).asType();
+
+    for (ExecutableElement method :
+        MoreElements.getLocalAndInheritedMethods(context.getClientBundleType(), types, elements)) {
+      if (MoreTypeUtils.isAbstract(method)
+          && method.getReturnType().getKind() == TypeKind.DECLARED
+          && types.isSubtype(method.getReturnType(), cssResourceType)) {
+        computeReplacements(method, logger, context);
+      }
+    }
   }
 
   private String getObfuscationPrefix(TreeLogger logger, String prefix, ResourceContext context) {
@@ -1406,6 +1603,15 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
     return toReturn;
   }
 
+  @SuppressWarnings("unchecked")
+  private void initFinalizedStylesheets(ResourceContext context) {
+    finalizedStylesheets = context.getCachedData(KEY_FINALIZED_STYLESHEETS, ConcurrentMap.class);
+    if (finalizedStylesheets == null) {
+      finalizedStylesheets = new ConcurrentHashMap<>();
+      context.putCachedData(KEY_FINALIZED_STYLESHEETS, finalizedStylesheets);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private void initReplacement(ResourceContext context) {
     if (context.getCachedData(KEY_HAS_CACHED_DATA, Boolean.class) != Boolean.TRUE) {
@@ -1413,11 +1619,13 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
       context.putCachedData(KEY_SHARED_METHODS, new IdentityHashMap<ExecutableElement, String>());
       context.putCachedData(
           KEY_BY_CLASS_AND_METHOD, new IdentityHashMap<TypeElement, Map<String, String>>());
+      context.putCachedData(KEY_RESOURCE_PREFIXES, new MinimalSubstitutionMap());
       context.putCachedData(KEY_HAS_CACHED_DATA, Boolean.TRUE);
     }
 
     replacementsByClassAndMethod = context.getCachedData(KEY_BY_CLASS_AND_METHOD, Map.class);
     replacementsForSharedMethods = context.getCachedData(KEY_SHARED_METHODS, Map.class);
+    resourcePrefixBuilder = context.getCachedData(KEY_RESOURCE_PREFIXES, SubstitutionMap.class);
   }
 
   /** Different conversion modes from css to gss. */
@@ -1446,9 +1654,15 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
         booleanCondition = booleanCondition.substring(1);
       }
 
-      String value = System.getProperty(booleanCondition);
-
-      if (value == null) {
+      String value;
+      try {
+        value =
+            context
+                .getGeneratorContext()
+                .getPropertyOracle()
+                .getSelectionProperty(TreeLogger.NULL, booleanCondition)
+                .getCurrentValue();
+      } catch (UnableToCompleteException e) {
         logger.log(Type.WARN, "No such property " + booleanCondition);
         return false;
       }
@@ -1508,6 +1722,25 @@ public class GssResourceGenerator extends AbstractCssResourceGenerator {
     }
   }
 
+  /** Writes every {@code @def} seen by the automatic conversion, once, to a single file. */
+  private static class AtDefFile {
+    private final PrintWriter printWriter;
+    private final Set<String> writtenAtDefs = new HashSet<>();
+
+    private AtDefFile(PrintWriter printWriter) {
+      this.printWriter = printWriter;
+    }
+
+    synchronized void write(Set<String> variables) {
+      for (String atDef : variables) {
+        if (writtenAtDefs.add(atDef)) {
+          printWriter.println("@def " + atDef + " 1px;");
+        }
+      }
+      printWriter.flush();
+    }
+  }
+
   private static class ConversionResult {
     final String gss;
     final Map<String, String> defNameMapping;
@@ -0,0 +1,412 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg;
+
+import static org.gwtproject.resources.client.ImageResource.RepeatStyle;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.ImageResourceGenerator.ImageRect;
+
+/**
+ * Arranges images that share a {@link RepeatStyle} into as few composite images as possible, none
+ * of them larger than a configurable size in either dimension.
+ *
+ * <ul>
+ *   <li>{@link RepeatStyle#None} images are packed with the MaxRects algorithm, using the best
+ *       short side fit heuristic.
+ *   <li>{@link RepeatStyle#Horizontal} images are stacked on top of each other and tiled across
+ *       the whole width of the composite image, so they can still be repeated horizontally.
+ *   <li>{@link RepeatStyle#Vertical} images are placed side by side and tiled down the whole
+ *       height of the composite image.
+ * </ul>
+ */
+class ImageBundleBuilder {
+
+  /**
+   * Computes the position of each image and splits them into composite images. Every image must
+   * fit within <code>maxSize</code> on its own, see {@link #checkFits}.
+   */
+  interface Arranger {
+    List<Page> arrange(List<ImageRect> rects, int maxSize);
+  }
+
+  /** A single composite image. */
+  static class Page {
+    private final List<ImageRect> rects;
+    private final int width, height;
+
+    Page(List<ImageRect> rects, int width, int height) {
+      this.rects = rects;
+      this.width = width;
+      this.height = height;
+    }
+
+    public List<ImageRect> getRects() {
+      return rects;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+  }
+
+  /** Packs images in a minimal area, with no room to repeat them. */
+  static class MaxRectsArranger implements Arranger {
+
+    @Override
+    public List<Page> arrange(List<ImageRect> rects, int maxSize) {
+      // Otherwise a page would never take the image and this would not terminate
+      checkFits(rects, maxSize);
+      List<ImageRect> remaining = new ArrayList<>(rects);
+      // Placing the big images first leaves fewer unusable gaps
+      remaining.sort(
+          Comparator.comparingInt((ImageRect rect) -> Math.max(rect.getWidth(), rect.getHeight()))
+              .thenComparingInt(rect -> rect.getWidth() * rect.getHeight())
+              .reversed());
+
+      List<Page> pages = new ArrayList<>();
+      while (!remaining.isEmpty()) {
+        pages.add(nextPage(remaining, maxSize));
+      }
+      return pages;
+    }
+
+    /**
+     * Finds the smallest square-ish bin that holds every remaining image. If there is none within
+     * <code>maxSize</code>, fills a bin of the maximum size and leaves the rest for another page.
+     */
+    private Page nextPage(List<ImageRect> remaining, int maxSize) {
+      long area = 0;
+      int side = 0;
+      for (ImageRect rect : remaining) {
+        area += (long) rect.getWidth() * rect.getHeight();
+        side = Math.max(side, Math.max(rect.getWidth(), rect.getHeight()));
+      }
+      int width = Math.min(maxSize, Math.max(side, (int) Math.ceil(Math.sqrt(area))));
+      int height = width;
+
+      while (true) {
+        MaxRectsBin bin = new MaxRectsBin(width, height);
+        if (bin.insertAll(remaining) == remaining.size()) {
+          return bin.toPage(remaining);
+        }
+        if (width == maxSize && height == maxSize) {
+          break;
+        }
+        // Grow the shorter side by an eighth and retry
+        if (width <= height) {
+          width = Math.min(maxSize, width + Math.max(1, width / 8));
+        } else {
+          height = Math.min(maxSize, height + Math.max(1, height / 8));
+        }
+      }
+
+      MaxRectsBin bin = new MaxRectsBin(maxSize, maxSize);
+      bin.insertAll(remaining);
+      return bin.toPage(remaining);
+    }
+  }
+
+  /** Stacks images vertically, each one repeated across the width of the page. */
+  static class HorizontalArranger implements Arranger {
+
+    @Override
+    public List<Page> arrange(List<ImageRect> rects, int maxSize) {
+      checkFits(rects, maxSize);
+      List<Page> pages = new ArrayList<>();
+      List<ImageRect> current = new ArrayList<>();
+      int width = 1;
+      int height = 0;
+      for (ImageRect rect : rects) {
+        long nextWidth = lcm(width, rect.getWidth());
+        if (!current.isEmpty() && (nextWidth > maxSize || height + rect.getHeight() > maxSize)) {
+          pages.add(new Page(current, width, height));
+          current = new ArrayList<>();
+          nextWidth = rect.getWidth();
+          height = 0;
+        }
+        rect.setPosition(0, height);
+        current.add(rect);
+        width = (int) nextWidth;
+        height += rect.getHeight();
+      }
+      if (!current.isEmpty()) {
+        pages.add(new Page(current, width, height));
+      }
+      return pages;
+    }
+  }
+
+  /** Places images side by side, each one repeated down the height of the page. */
+  static class VerticalArranger implements Arranger {
+
+    @Override
+    public List<Page> arrange(List<ImageRect> rects, int maxSize) {
+      checkFits(rects, maxSize);
+      List<Page> pages = new ArrayList<>();
+      List<ImageRect> current = new ArrayList<>();
+      int width = 0;
+      int height = 1;
+      for (ImageRect rect : rects) {
+        long nextHeight = lcm(height, rect.getHeight());
+        if (!current.isEmpty() && (nextHeight > maxSize || width + rect.getWidth() > maxSize)) {
+          pages.add(new Page(current, width, height));
+          current = new ArrayList<>();
+          nextHeight = rect.getHeight();
+          width = 0;
+        }
+        rect.setPosition(width, 0);
+        current.add(rect);
+        width += rect.getWidth();
+        height = (int) nextHeight;
+      }
+      if (!current.isEmpty()) {
+        pages.add(new Page(current, width, height));
+      }
+      return pages;
+    }
+  }
+
+  /**
+   * The free space of a single MaxRects bin, see Jukka Jylänki, "A Thousand Ways to Pack the
+   * Bin".
+   */
+  private static class MaxRectsBin {
+    private final List<Rectangle> free = new ArrayList<>();
+    private final List<Rectangle> placed = new ArrayList<>();
+    private int usedWidth, usedHeight;
+
+    MaxRectsBin(int width, int height) {
+      free.add(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Places as many of the given images as possible, in order, and returns how many were placed.
+     * Positions are only recorded in the bin until {@link #toPage} is called.
+     */
+    int insertAll(List<ImageRect> rects) {
+      int count = 0;
+      for (ImageRect rect : rects) {
+        Rectangle position = insert(rect.getWidth(), rect.getHeight());
+        placed.add(position);
+        if (position != null) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Applies the recorded positions and returns a page with every placed image, removing them
+     * from <code>rects</code>.
+     */
+    Page toPage(List<ImageRect> rects) {
+      List<ImageRect> onPage = new ArrayList<>();
+      Iterator<ImageRect> it = rects.iterator();
+      for (Rectangle position : placed) {
+        ImageRect rect = it.next();
+        if (position != null) {
+          rect.setPosition(position.x, position.y);
+          onPage.add(rect);
+          it.remove();
+        }
+      }
+      return new Page(onPage, usedWidth, usedHeight);
+    }
+
+    private Rectangle insert(int width, int height) {
+      Rectangle best = null;
+      int bestShortSide = Integer.MAX_VALUE;
+      int bestLongSide = Integer.MAX_VALUE;
+      for (Rectangle rect : free) {
+        if (rect.width < width || rect.height < height) {
+          continue;
+        }
+        int leftoverX = rect.width - width;
+        int leftoverY = rect.height - height;
+        int shortSide = Math.min(leftoverX, leftoverY);
+        int longSide = Math.max(leftoverX, leftoverY);
+        if (shortSide < bestShortSide
+            || (shortSide == bestShortSide && longSide < bestLongSide)) {
+          best = new Rectangle(rect.x, rect.y, width, height);
+          bestShortSide = shortSide;
+          bestLongSide = longSide;
+        }
+      }
+      if (best == null) {
+        return null;
+      }
+
+      List<Rectangle> split = new ArrayList<>();
+      for (Iterator<Rectangle> it = free.iterator(); it.hasNext(); ) {
+        Rectangle rect = it.next();
+        if (rect.intersects(best)) {
+          it.remove();
+          split(rect, best, split);
+        }
+      }
+      free.addAll(split);
+      prune();
+
+      usedWidth = Math.max(usedWidth, best.x + best.width);
+      usedHeight = Math.max(usedHeight, best.y + best.height);
+      return best;
+    }
+
+    /** Adds the maximal parts of <code>rect</code> that don't overlap <code>used</code>. */
+    private static void split(Rectangle rect, Rectangle used, List<Rectangle> out) {
+      if (used.x > rect.x) {
+        out.add(new Rectangle(rect.x, rect.y, used.x - rect.x, rect.height));
+      }
+      if (used.x + used.width < rect.x + rect.width) {
+        out.add(
+            new Rectangle(
+                used.x + used.width,
+                rect.y,
+                rect.x + rect.width - used.x - used.width,
+                rect.height));
+      }
+      if (used.y > rect.y) {
+        out.add(new Rectangle(rect.x, rect.y, rect.width, used.y - rect.y));
+      }
+      if (used.y + used.height < rect.y + rect.height) {
+        out.add(
+            new Rectangle(
+                rect.x,
+                used.y + used.height,
+                rect.width,
+                rect.y + rect.height - used.y - used.height));
+      }
+    }
+
+    /** Removes free rectangles that are contained in another one. */
+    private void prune() {
+      for (int i = 0; i < free.size(); i++) {
+        for (int j = i + 1; j < free.size(); j++) {
+          if (free.get(j).contains(free.get(i))) {
+            free.remove(i--);
+            break;
+          }
+          if (free.get(i).contains(free.get(j))) {
+            free.remove(j--);
+          }
+        }
+      }
+    }
+  }
+
+  private final RepeatStyle repeatStyle;
+  private final List<ImageRect> rects = new ArrayList<>();
+
+  ImageBundleBuilder(RepeatStyle repeatStyle) {
+    assert repeatStyle != RepeatStyle.Both;
+    this.repeatStyle = repeatStyle;
+  }
+
+  void addImage(ImageRect rect) {
+    rects.add(rect);
+  }
+
+  /** Positions every image that was added and returns the composite images to render. */
+  List<Page> arrange(int maxSize) {
+    return createArranger(repeatStyle).arrange(rects, maxSize);
+  }
+
+  /** Draws all images of the page into a single PNG. */
+  byte[] render(TreeLogger logger, Page page) throws UnableToCompleteException {
+    BufferedImage bundledImage =
+        new BufferedImage(page.getWidth(), page.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+
+    Graphics2D g2d = bundledImage.createGraphics();
+    ImageResourceGenerator.setBetterRenderingQuality(g2d);
+
+    for (ImageRect rect : page.getRects()) {
+      AffineTransform transform = rect.transform();
+      g2d.drawImage(rect.getImage(), transform, null);
+
+      // Tile the image over the rest of its row or column
+      int dx = repeatStyle == RepeatStyle.Horizontal ? rect.getWidth() : 0;
+      int dy = repeatStyle == RepeatStyle.Vertical ? rect.getHeight() : 0;
+      if (dx == 0 && dy == 0) {
+        continue;
+      }
+      for (int x = dx, y = dy; x < page.getWidth() && y < page.getHeight(); x += dx, y += dy) {
+        AffineTransform tile = AffineTransform.getTranslateInstance(x, y);
+        tile.concatenate(transform);
+        g2d.drawImage(rect.getImage(), tile, null);
+      }
+    }
+    g2d.dispose();
+
+    return ImageResourceGenerator.createImageBytes(logger, bundledImage);
+  }
+
+  private static Arranger createArranger(RepeatStyle repeatStyle) {
+    switch (repeatStyle) {
+      case Horizontal:
+        return new HorizontalArranger();
+      case Vertical:
+        return new VerticalArranger();
+      default:
+        return new MaxRectsArranger();
+    }
+  }
+
+  /**
+   * Rejects images that are larger than a page in either dimension, they must not be bundled at
+   * all.
+   */
+  static void checkFits(List<ImageRect> rects, int maxSize) {
+    for (ImageRect rect : rects) {
+      if (rect.getWidth() > maxSize || rect.getHeight() > maxSize) {
+        throw new IllegalArgumentException(
+            "Image "
+                + rect.getName()
+                + " is "
+                + rect.getWidth()
+                + "x"
+                + rect.getHeight()
+                + ", larger than the maximum size of "
+                + maxSize);
+      }
+    }
+  }
+
+  private static long lcm(long a, long b) {
+    long x = a;
+    long y = b;
+    while (y != 0) {
+      long t = x % y;
+      x = y;
+      y = t;
+    }
+    return a / x * b;
+  }
+}
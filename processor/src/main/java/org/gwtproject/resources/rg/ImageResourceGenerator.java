@@ -18,39 +18,49 @@ package org.gwtproject.resources.rg;
 
 import static org.gwtproject.resources.client.ImageResource.ImageOptions;
 import static org.gwtproject.resources.client.ImageResource.RepeatStyle;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_IMAGE_RESOURCE_ATLAS;
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_IMAGE_RESOURCE_ATLAS_MAX_SIZE;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.metadata.IIOMetadataFormatImpl;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
 import org.gwtproject.i18n.shared.cldr.LocaleInfo;
 import org.gwtproject.resources.client.impl.ImageResourcePrototype;
 import org.gwtproject.resources.ext.AbstractResourceGenerator;
 import org.gwtproject.resources.ext.ClientBundleFields;
+import org.gwtproject.resources.ext.PropertyOracle;
+import org.gwtproject.resources.ext.ResourceContentCache;
 import org.gwtproject.resources.ext.ResourceContext;
 import org.gwtproject.resources.ext.ResourceOracle;
 import org.gwtproject.resources.ext.TreeLogger;
 import org.gwtproject.resources.ext.UnableToCompleteException;
+import org.gwtproject.resources.rg.util.PhaseTimer;
 import org.gwtproject.resources.rg.util.SourceWriter;
 import org.gwtproject.resources.rg.util.StringKey;
 import org.gwtproject.resources.rg.util.StringSourceWriter;
 import org.gwtproject.resources.rg.util.Util;
-import org.gwtproject.resources.rg.util.tools.Utility;
 import org.gwtproject.safehtml.shared.UriUtils;
 import org.w3c.dom.Node;
 
@@ -66,6 +76,10 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
       Integer.getInteger("gwt.imageResource.maxBundleSize", 256);
 
   private CachedState shared;
+  private boolean atlasEnabled;
+  private int atlasMaxSize;
+  private final Map<ImageResourceDeclaration, Future<PreparedImage>> pending =
+      new LinkedHashMap<>();
 
   @Override
   public String createAssignment(
@@ -84,11 +98,11 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     if (rect == null) {
       throw new NullPointerException("No ImageRect ever computed for " + name);
     }
-    rect.setHeight(image.getScaleHeight());
-    rect.setWidth(image.getScaleWidth());
 
     String[] urlExpressions =
-        new String[] {bundle.getNormalContentsFieldName(), bundle.getRtlContentsFieldName()};
+        new String[] {
+          bundle.getNormalContentsFieldName(image), bundle.getRtlContentsFieldName(image)
+        };
     assert urlExpressions[0] != null : "No primary URL expression for " + name;
 
     if (urlExpressions[1] == null) {
@@ -123,12 +137,12 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     return sw.toString();
   }
 
-  private ExternalImage getImage(ImageResourceDeclaration image) {
+  private DisplayedImage getImage(ImageResourceDeclaration image) {
     ExternalImage toReturn = shared.externalImages.get(new BundleKey(image, true));
     if (toReturn != null) {
       return toReturn;
     }
-    return null;
+    return shared.bundledImages.get(new BundleKey(image, false));
   }
 
   /**
@@ -138,6 +152,8 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
   @Override
   public void createFields(TreeLogger logger, ResourceContext context, ClientBundleFields fields)
       throws UnableToCompleteException {
+    collectPreparedImages(logger);
+    renderImageMap(logger, context, fields, shared.bundledImages);
     renderImageMap(logger, context, fields, shared.externalImages);
   }
 
@@ -154,7 +170,16 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
   }
 
   @Override
-  public void init(TreeLogger logger, ResourceContext context) {
+  public void init(TreeLogger logger, ResourceContext context) throws UnableToCompleteException {
+    PropertyOracle propertyOracle = context.getGeneratorContext().getPropertyOracle();
+    atlasEnabled =
+        propertyOracle
+            .getConfigurationProperty(logger, KEY_IMAGE_RESOURCE_ATLAS)
+            .asSingleBooleanValue();
+    if (atlasEnabled) {
+      atlasMaxSize = getPositiveInteger(logger, propertyOracle, KEY_IMAGE_RESOURCE_ATLAS_MAX_SIZE);
+    }
+
     String key = createCacheKey(context);
     shared = context.getCachedData(key, CachedState.class);
     if (shared != null) {
@@ -165,6 +190,24 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     }
   }
 
+  private static int getPositiveInteger(
+      TreeLogger logger, PropertyOracle propertyOracle, String propertyName)
+      throws UnableToCompleteException {
+    String value = propertyOracle.getConfigurationProperty(logger, propertyName).asSingleValue();
+    try {
+      int size = Integer.parseInt(value);
+      if (size > 0) {
+        return size;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    logger.log(
+        TreeLogger.ERROR,
+        propertyName + " must be a positive integer, but was '" + value + "'");
+    throw new UnableToCompleteException();
+  }
+
   /**
    * Creates a cache key to be used with {@link ResourceContext#putCachedData}. The key is based on
    * the ClientBundle type, support for data URLs, and the current locale.
@@ -183,8 +226,9 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
   }
 
   /**
-   * Process each image method. This will either assign the image to an ImageBundleBuilder or
-   * reencode an external image.
+   * Process each image method. The image is decoded and either assigned to a BundledImage or
+   * reencoded as an external image on the pool of the context, the results are collected in {@link
+   * #createFields}.
    */
   @Override
   public void prepare(TreeLogger logger, ResourceContext context, ExecutableElement method)
@@ -204,8 +248,49 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     }
 
     URL resource = resources[0];
+    TypeElement bundleType = context.getClientBundleType();
+    ResourceContentCache contentCache = context.getGeneratorContext().getResourceContentCache();
+
+    pending.put(
+        image,
+        context
+            .getPool()
+            .submit(
+                () -> prepareImage(logger, bundleType, image, localized, resource, contentCache)));
+  }
 
-    ImageRect rect = addImage(logger, resource.getFile(), resource);
+  /** Decodes, scales and, unless it goes into a composite image, re-encodes a single image. */
+  private PreparedImage prepareImage(
+      TreeLogger logger,
+      TypeElement bundleType,
+      ImageResourceDeclaration image,
+      LocalizedImage localized,
+      URL resource,
+      ResourceContentCache contentCache)
+      throws UnableToCompleteException {
+    ExecutableElement method = image.getMethod();
+    byte[] contents = contentCache.getBytes(resource);
+    if (contents == null) {
+      logger.log(TreeLogger.ERROR, "Unable to read image resource " + resource, null);
+      throw new UnableToCompleteException();
+    }
+
+    ImageRect rect;
+    try (PhaseTimer timer = PhaseTimer.start("image.decode", bundleType, method, getClass())) {
+      rect = addImage(logger, resource.getFile(), contents);
+    }
+
+    if (image.getScaleHeight() > 0) {
+      rect.setHeight(image.getScaleHeight());
+    }
+    if (image.getScaleWidth() > 0) {
+      rect.setWidth(image.getScaleWidth());
+    }
+
+    if (isBundled(image, rect)) {
+      // The whole composite image is encoded once it is complete
+      return new PreparedImage(rect, localized, LocalizedImage.key(image, contents));
+    }
 
     if (rect.isAnimated() || rect.isLossy()) {
       // Don't re-encode
@@ -214,35 +299,89 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
        * Try to re-compress the image, but only use the re-compressed bytes if
        * they actually offer a space-savings.
        */
-      try {
-        int originalSize = getContentLength(resource);
-        // Re-encode the data
-        URL reencodedContents = reencodeToTempFile(logger, rect);
-        int newSize = getContentLength(reencodedContents);
-
-        // But only use it if we did a better job on compression
-
-        if (newSize < originalSize) {
-          //  if (logger.isLoggable(TreeLogger.SPAM)) {
-          logger.log(
-              TreeLogger.SPAM, "Reencoded image and saved " + (originalSize - newSize) + " bytes");
-          //    }
-          localized = new LocalizedImage(localized, reencodedContents);
-        }
-      } catch (IOException e2) {
-        // Non-fatal, but weird
+      byte[] reencoded;
+      try (PhaseTimer timer = PhaseTimer.start("image.encode", bundleType, method, getClass())) {
+        // Scaling is left to the browser, re-encode the image at its intrinsic size
+        reencoded = toPng(logger, new ImageRect(rect.getName(), rect.getImages()));
+      }
+
+      // But only use it if we did a better job on compression
+      if (reencoded != null && reencoded.length < contents.length) {
         logger.log(
-            TreeLogger.WARN,
-            "Unable to determine before/after size when re-encoding image " + "data",
-            e2);
+            TreeLogger.SPAM,
+            "Reencoded image and saved " + (contents.length - reencoded.length) + " bytes");
+        localized = new LocalizedImage(localized, writeToTempFile(logger, reencoded));
       }
     }
+    return new PreparedImage(rect, localized, null);
+  }
+
+  /**
+   * Waits for every image submitted by {@link #prepare} and records them, in the order the methods
+   * were prepared, so that the output does not depend on which image finished first. Visible only
+   * for benchmarks.
+   */
+  void collectPreparedImages(TreeLogger logger) throws UnableToCompleteException {
+    boolean fail = false;
+    try {
+      for (Map.Entry<ImageResourceDeclaration, Future<PreparedImage>> entry : pending.entrySet()) {
+        ImageResourceDeclaration image = entry.getKey();
+        PreparedImage prepared;
+        try {
+          prepared = entry.getValue().get();
+        } catch (ExecutionException e) {
+          if (!(e.getCause() instanceof UnableToCompleteException)) {
+            logger.log(
+                TreeLogger.ERROR, "Unexpected error while preparing " + image.get(), e.getCause());
+          }
+          fail = true;
+          continue;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          logger.log(TreeLogger.ERROR, "Interrupted while preparing images", e);
+          throw new UnableToCompleteException();
+        }
 
-    ExternalImage externalImage = new ExternalImage(image, localized, rect);
-    shared.externalImages.put(new BundleKey(image, true), externalImage);
+        if (prepared.contentKey != null) {
+          BundleKey key = new BundleKey(image, false);
+          BundledImage bundledImage = shared.bundledImages.get(key);
+          if (bundledImage == null) {
+            bundledImage = new BundledImage(image.getRepeatStyle(), atlasMaxSize);
+            shared.bundledImages.put(key, bundledImage);
+          }
+          bundledImage.addImage(image, prepared.contentKey, prepared.rect);
+        } else {
+          ExternalImage externalImage = new ExternalImage(image, prepared.localized, prepared.rect);
+          shared.externalImages.put(new BundleKey(image, true), externalImage);
+        }
+      }
+    } finally {
+      pending.clear();
+    }
+
+    if (fail) {
+      throw new UnableToCompleteException();
+    }
   }
 
-  private ImageRect addImage(TreeLogger logger, String imageName, URL imageUrl)
+  /**
+   * Returns <code>true</code> if the image is drawn into a composite image. Lossy and animated
+   * images can't be re-encoded as part of a PNG without loss, and images that are large or may be
+   * repeated in both directions gain little from it.
+   */
+  private boolean isBundled(ImageResourceDeclaration image, ImageRect rect) {
+    // test mirrored in BundleKey, make sure to keep them in sync
+    if (!atlasEnabled || image.isPreventInlining() || image.getRepeatStyle() == RepeatStyle.Both) {
+      return false;
+    }
+    int maxSize = Math.min(IMAGE_MAX_SIZE, atlasMaxSize);
+    return !rect.isAnimated()
+        && !rect.isLossy()
+        && rect.getWidth() <= maxSize
+        && rect.getHeight() <= maxSize;
+  }
+
+  private ImageRect addImage(TreeLogger logger, String imageName, byte[] imageBytes)
       throws UnableToCompleteException {
 
     logger = logger.branch(TreeLogger.TRACE, "Adding image '" + imageName + "'", null);
@@ -251,7 +390,7 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     boolean lossy = true;
     ImageRect animated = null;
     // Load the image
-    try (InputStream is = imageUrl.openStream();
+    try (InputStream is = new ByteArrayInputStream(imageBytes);
         MemoryCacheImageInputStream imageInputStream = new MemoryCacheImageInputStream(is)) {
       /*
        * ImageIO uses an SPI pattern API. We don't care about the particulars of
@@ -357,29 +496,10 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     return toReturn;
   }
 
-  /**
-   * Helper method to read the contentLength of a given URL, automatically closing the InputStream
-   * that is opened as a side effect.
-   */
-  private int getContentLength(URL url) throws IOException {
-    URLConnection conn = url.openConnection();
-    try {
-      return conn.getContentLength();
-    } finally {
-      Utility.close(conn.getInputStream());
-    }
-  }
-
-  /** Re-encode an image as a PNG to strip random header data. */
-  private URL reencodeToTempFile(TreeLogger logger, ImageRect rect)
+  /** Writes a re-encoded PNG to a temporary file. */
+  private static URL writeToTempFile(TreeLogger logger, byte[] imageBytes)
       throws UnableToCompleteException {
     try {
-      byte[] imageBytes = toPng(logger, rect);
-
-      if (imageBytes == null) {
-        return null;
-      }
-
       File file = File.createTempFile(ImageResourceGenerator.class.getSimpleName(), ".png");
       file.deleteOnExit();
       Util.writeBytesToFile(logger, file, imageBytes);
@@ -406,7 +526,7 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
   }
 
   /** Write the bundled image into a byte array, so that we can compute its strong name. */
-  private static byte[] createImageBytes(TreeLogger logger, BufferedImage bundledImage)
+  static byte[] createImageBytes(TreeLogger logger, BufferedImage bundledImage)
       throws UnableToCompleteException {
     byte[] imageBytes;
 
@@ -425,7 +545,7 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     return imageBytes;
   }
 
-  private static void setBetterRenderingQuality(Graphics2D g2d) {
+  static void setBetterRenderingQuality(Graphics2D g2d) {
     g2d.setRenderingHint(
         RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
     g2d.setRenderingHint(
@@ -448,7 +568,7 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
       if (isExternal) {
         return "External: " + image.get();
       }
-      // test mirrored in prepare(), make sure to keep them in sync
+      // test mirrored in isBundled(), make sure to keep them in sync
       if (image.isPreventInlining() || image.getRepeatStyle() == RepeatStyle.Both) {
         return "Unbundled: " + image.get();
       }
@@ -466,9 +586,94 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
 
   /** This is client that can be client across permutations for a given ClientBundle . */
   static class CachedState {
+    public final Map<BundleKey, BundledImage> bundledImages = new LinkedHashMap<>();
     public final Map<BundleKey, ExternalImage> externalImages = new LinkedHashMap<>();
   }
 
+  /** The outcome of {@link #prepareImage}. */
+  static class PreparedImage {
+    private final ImageRect rect;
+    private final LocalizedImage localized;
+    /** Identifies the contents of an image that goes into a composite image, otherwise null. */
+    private final String contentKey;
+
+    PreparedImage(ImageRect rect, LocalizedImage localized, String contentKey) {
+      this.rect = rect;
+      this.localized = localized;
+      this.contentKey = contentKey;
+    }
+  }
+
+  /** Represents a composite image built from every image that shares a RepeatStyle. */
+  static class BundledImage extends DisplayedImage {
+    private final ImageBundleBuilder builder;
+    private final int maxSize;
+    private final Map<ImageResourceDeclaration, ImageRect> rects = new LinkedHashMap<>();
+    private final Map<String, ImageRect> rectsByContent = new HashMap<>();
+    private final Map<ImageRect, String> fieldNames = new IdentityHashMap<>();
+
+    public BundledImage(RepeatStyle repeatStyle, int maxSize) {
+      this.builder = new ImageBundleBuilder(repeatStyle);
+      this.maxSize = maxSize;
+    }
+
+    /** Identical images that are scaled the same way share one rectangle. */
+    public void addImage(ImageResourceDeclaration image, String contentKey, ImageRect rect) {
+      ImageRect existing = rectsByContent.get(contentKey);
+      if (existing == null) {
+        rectsByContent.put(contentKey, rect);
+        builder.addImage(rect);
+        existing = rect;
+      }
+      rects.put(image, existing);
+    }
+
+    @Override
+    public Class<?> getResourceType() {
+      return ImageResourcePrototype.Bundle.class;
+    }
+
+    @Override
+    public ImageRect getImageRect(ImageResourceDeclaration image) {
+      return rects.get(image);
+    }
+
+    @Override
+    public String getNormalContentsFieldName(ImageResourceDeclaration image) {
+      return fieldNames.get(rects.get(image));
+    }
+
+    @Override
+    public void setRtlImage(LocalizedImage image) {
+      // Composite images are not mirrored
+    }
+
+    @Override
+    public void render(
+        TreeLogger logger,
+        ResourceContext context,
+        ClientBundleFields fields,
+        RepeatStyle repeatStyle)
+        throws UnableToCompleteException {
+      String baseName =
+          context.getClientBundleType().getQualifiedName()
+              + "."
+              + repeatStyle.name().toLowerCase(Locale.ROOT);
+
+      List<ImageBundleBuilder.Page> pages = builder.arrange(maxSize);
+      for (int i = 0; i < pages.size(); i++) {
+        ImageBundleBuilder.Page page = pages.get(i);
+        byte[] imageBytes = builder.render(logger, page);
+        String contentsExpression =
+            context.deploy(baseName + i + "." + BUNDLE_FILE_TYPE, "image/png", imageBytes, false);
+        String fieldName = fields.define("String", "bundledImage", contentsExpression, true, true);
+        for (ImageRect rect : page.getRects()) {
+          fieldNames.put(rect, fieldName);
+        }
+      }
+    }
+  }
+
   /** Represents a file that contains exactly one image. */
   static class ExternalImage extends DisplayedImage {
     private final ImageResourceDeclaration image;
@@ -588,7 +793,7 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
     public abstract ImageRect getImageRect(ImageResourceDeclaration image);
 
     /** Only valid after calling {@link #render}. */
-    public String getNormalContentsFieldName() {
+    public String getNormalContentsFieldName(ImageResourceDeclaration image) {
       return normalContentsFieldName;
     }
 
@@ -596,7 +801,7 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
      * Only valid after calling {@link #render}, may be <code>null</code> if there is no RTL version
      * of the image.
      */
-    public String getRtlContentsFieldName() {
+    public String getRtlContentsFieldName(ImageResourceDeclaration image) {
       return rtlContentsFieldName;
     }
 
@@ -701,7 +906,7 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
       // Scale
       assert height > 0 == width > 0;
       if (height > 0) {
-        toReturn.scale((double) height / intrinsicHeight, (double) width / intrinsicWidth);
+        toReturn.scale((double) width / intrinsicWidth, (double) height / intrinsicHeight);
       }
 
       // Use the base concatenation
@@ -783,8 +988,8 @@ public class ImageResourceGenerator extends AbstractResourceGenerator {
       this.url = url;
     }
 
-    private static String key(ImageResourceDeclaration image, URL url) {
-      return Util.computeStrongName(Util.readURLAsBytes(url))
+    static String key(ImageResourceDeclaration image, byte[] contents) {
+      return Util.computeStrongName(contents)
           + ":"
           + image.getScaleHeight()
           + ":"
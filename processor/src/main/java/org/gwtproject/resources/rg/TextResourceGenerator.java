@@ -21,7 +21,6 @@ import javax.lang.model.element.ExecutableElement;
 import org.gwtproject.resources.ext.*;
 import org.gwtproject.resources.rg.util.SourceWriter;
 import org.gwtproject.resources.rg.util.StringSourceWriter;
-import org.gwtproject.resources.rg.util.Util;
 
 /** @author Dmitrii Tikhomirov Created by treblereel 11/13/18 */
 public final class TextResourceGenerator extends AbstractResourceGenerator {
@@ -57,18 +56,15 @@ public final class TextResourceGenerator extends AbstractResourceGenerator {
       sw.println("// " + resource.toExternalForm());
     }
 
-    sw.println("public String getText() {");
-    sw.indent();
-
-    String toWrite = Util.readURLAsString(resource);
+    String toWrite = context.getGeneratorContext().getResourceContentCache().getString(resource);
 
     if (toWrite.length() > MAX_STRING_CHUNK) {
       writeLongString(sw, toWrite);
     } else {
-      sw.println("return \"" + Generator.escape(toWrite) + "\";");
+      sw.println("public String getText() {");
+      sw.indentln("return \"" + Generator.escape(toWrite) + "\";");
+      sw.println("}");
     }
-    sw.outdent();
-    sw.println("}");
 
     sw.println("public String getName() {");
     sw.indent();
@@ -84,19 +80,35 @@ public final class TextResourceGenerator extends AbstractResourceGenerator {
 
   /**
    * A single constant that is too long will crash the compiler with an out of memory error. Break
-   * up the constant and generate code that appends using a buffer.
+   * up the constant and generate code that appends using a buffer. The text is only assembled on
+   * the first call and kept for the following ones.
    */
   private void writeLongString(SourceWriter sw, String toWrite) {
-    sw.println("StringBuilder builder = new StringBuilder();");
-    int offset = 0;
     int length = toWrite.length();
-    while (offset < length - 1) {
+    sw.println("private String text;");
+    sw.println("public String getText() {");
+    sw.indent();
+    sw.println("if (text == null) {");
+    sw.indent();
+    sw.println("StringBuilder builder = new StringBuilder(" + length + ");");
+    int offset = 0;
+    while (offset < length) {
       int subLength = Math.min(MAX_STRING_CHUNK, length - offset);
+      // Don't split a surrogate pair between two literals
+      if (Character.isHighSurrogate(toWrite.charAt(offset + subLength - 1))
+          && offset + subLength < length) {
+        subLength--;
+      }
       sw.print("builder.append(\"");
       sw.print(Generator.escape(toWrite.substring(offset, offset + subLength)));
       sw.println("\");");
       offset += subLength;
     }
-    sw.println("return builder.toString();");
+    sw.println("text = builder.toString();");
+    sw.outdent();
+    sw.println("}");
+    sw.println("return text;");
+    sw.outdent();
+    sw.println("}");
   }
 }
@@ -16,7 +16,6 @@
 package org.gwtproject.resources.rg.css;
 
 import java.util.*;
-import java.util.regex.Matcher;
 import javax.lang.model.element.ExecutableElement;
 import org.gwtproject.resources.client.CssResource;
 import org.gwtproject.resources.client.CssResource.ClassName;
@@ -39,6 +38,9 @@ public class ClassRenamer extends CssVisitor {
   private final Set<String> externalClasses;
   private final TreeLogger logger;
   private final Set<ExecutableElement> missingClasses;
+  /** The flattened replacement table, rebuilt only when a new {@code @def} shows up. */
+  private Map<String, Replacement> potentialReplacements;
+
   private final boolean strict;
   private final Set<String> unknownClasses = new HashSet<String>();
 
@@ -59,25 +61,37 @@ public class ClassRenamer extends CssVisitor {
 
   @Override
   public void endVisit(CssDef x, Context ctx) {
-    cssDefs.add(x.getKey());
+    if (cssDefs.add(x.getKey())) {
+      potentialReplacements = null;
+    }
   }
 
   @Override
   public void endVisit(CssSelector x, Context ctx) {
-
-    final Map<String, Replacement> potentialReplacements;
-    potentialReplacements = computeReplacements(classReplacementsWithPrefix, externalClasses);
+    if (potentialReplacements == null) {
+      potentialReplacements = computeReplacements(classReplacementsWithPrefix, externalClasses);
+    }
 
     String sel = x.getSelector();
     int originalLength = sel.length();
-
-    Matcher ma = CssSelector.CLASS_SELECTOR_PATTERN.matcher(sel);
-    StringBuilder sb = new StringBuilder(originalLength);
+    StringBuilder sb = null;
     int start = 0;
 
-    while (ma.find()) {
-      String sourceClassName = ma.group(1);
+    // Same tokens as CssSelector.CLASS_SELECTOR_PATTERN, found in a single pass
+    int dot = sel.indexOf('.');
+    while (dot != -1) {
+      int end = dot + 1;
+      while (end < originalLength && !isClassNameTerminator(sel.charAt(end))) {
+        end++;
+      }
+      if (end == dot + 1) {
+        dot = sel.indexOf('.', end);
+        continue;
+      }
+
+      String sourceClassName = sel.substring(dot + 1, end);
       Replacement entry = potentialReplacements.get(sourceClassName);
+      dot = sel.indexOf('.', end);
 
       if (entry == null) {
         unknownClasses.add(sourceClassName);
@@ -92,21 +106,39 @@ public class ClassRenamer extends CssVisitor {
       String obfuscatedClassName = entry.getObfuscatedClassName();
 
       // Consume the interstitial portion of the original selector
-      sb.append(sel.subSequence(start, ma.start(1)));
+      if (sb == null) {
+        sb = new StringBuilder(originalLength);
+      }
+      sb.append(sel, start, end - sourceClassName.length());
       sb.append(obfuscatedClassName);
-      start = ma.end(1);
+      start = end;
 
       actualReplacements.put(method, obfuscatedClassName);
       missingClasses.remove(method);
     }
 
-    if (start != 0) {
+    if (sb != null) {
       // Consume the remainder and update the selector
-      sb.append(sel.subSequence(start, originalLength));
+      sb.append(sel, start, originalLength);
       x.setSelector(sb.toString());
     }
   }
 
+  private static boolean isClassNameTerminator(char c) {
+    switch (c) {
+      case ' ':
+      case '[':
+      case ':':
+      case '>':
+      case '+':
+      case '#':
+      case '.':
+        return true;
+      default:
+        return false;
+    }
+  }
+
   /**
    * Flatten class name lookups to speed selector rewriting.
    *
@@ -638,6 +638,38 @@ public class GenerateCssAst {
     return g.css;
   }
 
+  /**
+   * Create a CssStylesheet from CSS text that is already in memory. The uri resolves relative
+   * references and names the stylesheet in error messages.
+   */
+  public static CssStylesheet exec(TreeLogger logger, String uri, String content)
+      throws UnableToCompleteException {
+    Parser p = new Parser();
+    Errors errors = new Errors(logger);
+    GenerationHandler g = new GenerationHandler(errors);
+    p.setDocumentHandler(g);
+    p.setErrorHandler(errors);
+
+    InputSource source = new InputSource(new StringReader(content));
+    source.setURI(uri);
+    TreeLogger branchLogger = logger.branch(TreeLogger.DEBUG, "Parsing CSS stylesheet " + uri);
+    try {
+      p.parseStyleSheet(source);
+    } catch (CSSException e) {
+      branchLogger.log(TreeLogger.ERROR, "Unable to parse CSS", e);
+      throw new UnableToCompleteException();
+    } catch (IOException e) {
+      branchLogger.log(TreeLogger.ERROR, "Unable to parse CSS", e);
+      throw new UnableToCompleteException();
+    }
+
+    if (errors.fatalErrorEncountered) {
+      // Logging will have been performed by the Errors instance, just exit
+      throw new UnableToCompleteException();
+    }
+    return g.css;
+  }
+
   /**
    * Expresses an rgb function as a hex expression.
    *
@@ -16,16 +16,19 @@
 package org.gwtproject.resources.rg.css;
 
 import java.util.Arrays;
-import org.gwtproject.resources.ext.BadPropertyValueException;
+import org.gwtproject.resources.ext.PropertyOracle;
 import org.gwtproject.resources.ext.TreeLogger;
+import org.gwtproject.resources.ext.UnableToCompleteException;
 import org.gwtproject.resources.rg.css.ast.*;
 
 /** Statically evaluates {@literal @if} rules. */
 public class IfEvaluator extends CssModVisitor {
   private final TreeLogger logger;
+  private final PropertyOracle oracle;
 
-  public IfEvaluator(TreeLogger logger) {
+  public IfEvaluator(TreeLogger logger, PropertyOracle oracle) {
     this.logger = logger.branch(TreeLogger.DEBUG, "Replacing property-based @if blocks");
+    this.oracle = oracle;
   }
 
   @Override
@@ -38,11 +41,7 @@ public class IfEvaluator extends CssModVisitor {
       String propValue = null;
 
       try {
-        String selProp = System.getProperty(propertyName);
-        if (selProp == null) {
-          throw new BadPropertyValueException(propertyName);
-        }
-        propValue = selProp;
+        propValue = oracle.getSelectionProperty(logger, propertyName).getCurrentValue();
 
         /*
          * If the deferred binding property's value is in the list of values in
@@ -62,7 +61,7 @@ public class IfEvaluator extends CssModVisitor {
         // Always delete @if rules that we can statically evaluate
         ctx.removeMe();
 
-      } catch (BadPropertyValueException e) {
+      } catch (UnableToCompleteException e) {
         logger.log(TreeLogger.ERROR, "Unable to evaluate @if block", e);
         throw new CssCompilerException("Unable to parse CSS", e);
       }
@@ -16,13 +16,12 @@
 package org.gwtproject.resources.rg.css;
 
 import java.util.*;
-import org.gwtproject.resources.rg.CssResourceGenerator;
 import org.gwtproject.resources.rg.css.ast.*;
 
 /** Merges rules that have matching selectors. */
 public class MergeIdenticalSelectorsVisitor extends CssModVisitor {
   private final Map<String, CssRule> canonicalRules = new HashMap<String, CssRule>();
-  private final List<CssRule> rulesInOrder = new ArrayList<CssRule>();
+  private final RulePropertyIndex index = new RulePropertyIndex();
 
   @Override
   public boolean visit(CssIf x, Context ctx) {
@@ -43,36 +42,27 @@ public class MergeIdenticalSelectorsVisitor extends CssModVisitor {
     assert x.getSelectors().size() == 1;
     CssSelector sel = x.getSelectors().get(0);
 
-    if (canonicalRules.containsKey(sel.getSelector())) {
-      CssRule canonical = canonicalRules.get(sel.getSelector());
+    CssRule canonical = canonicalRules.get(sel.getSelector());
 
-      // Check everything between the canonical rule and this rule for common
-      // properties. If there are common properties, it would be unsafe to
-      // promote the rule.
-      boolean hasCommon = false;
-      int index = rulesInOrder.indexOf(canonical) + 1;
-      assert index != 0;
-
-      for (Iterator<CssRule> i = rulesInOrder.listIterator(index); i.hasNext() && !hasCommon; ) {
-        hasCommon = CssResourceGenerator.haveCommonProperties(i.next(), x);
-      }
-
-      if (!hasCommon) {
-        // It's safe to promote the rule
-        canonical.getProperties().addAll(x.getProperties());
-        ctx.removeMe();
-        return false;
-      }
+    // Check everything between the canonical rule and this rule for common
+    // properties. If there are common properties, it would be unsafe to
+    // promote the rule.
+    if (canonical != null && !index.hasCommonPropertiesAfter(canonical, x)) {
+      // It's safe to promote the rule
+      canonical.getProperties().addAll(x.getProperties());
+      index.addProperties(canonical, x.getProperties());
+      ctx.removeMe();
+      return false;
     }
 
     canonicalRules.put(sel.getSelector(), x);
-    rulesInOrder.add(x);
+    index.add(x);
     return false;
   }
 
   private void visitInNewContext(List<CssNode> nodes) {
     MergeIdenticalSelectorsVisitor v = new MergeIdenticalSelectorsVisitor();
     v.acceptWithInsertRemove(nodes);
-    rulesInOrder.addAll(v.rulesInOrder);
+    index.addAll(v.index);
   }
 }
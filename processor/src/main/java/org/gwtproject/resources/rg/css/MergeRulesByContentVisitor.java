@@ -16,13 +16,12 @@
 package org.gwtproject.resources.rg.css;
 
 import java.util.*;
-import org.gwtproject.resources.rg.CssResourceGenerator;
 import org.gwtproject.resources.rg.css.ast.*;
 
 /** Merges rules that have identical content. */
 public class MergeRulesByContentVisitor extends CssModVisitor {
   private Map<String, CssRule> rulesByContents = new HashMap<String, CssRule>();
-  private final List<CssRule> rulesInOrder = new ArrayList<CssRule>();
+  private final RulePropertyIndex index = new RulePropertyIndex();
 
   @Override
   public boolean visit(CssIf x, Context ctx) {
@@ -53,30 +52,20 @@ public class MergeRulesByContentVisitor extends CssModVisitor {
     // Check everything between the canonical rule and this rule for common
     // properties. If there are common properties, it would be unsafe to
     // promote the rule.
-    if (canonical != null) {
-      boolean hasCommon = false;
-      int index = rulesInOrder.indexOf(canonical) + 1;
-      assert index != 0;
-
-      for (Iterator<CssRule> i = rulesInOrder.listIterator(index); i.hasNext() && !hasCommon; ) {
-        hasCommon = CssResourceGenerator.haveCommonProperties(i.next(), x);
-      }
-
-      if (!hasCommon) {
-        canonical.getSelectors().addAll(x.getSelectors());
-        ctx.removeMe();
-        return false;
-      }
+    if (canonical != null && !index.hasCommonPropertiesAfter(canonical, x)) {
+      canonical.getSelectors().addAll(x.getSelectors());
+      ctx.removeMe();
+      return false;
     }
 
     rulesByContents.put(content, x);
-    rulesInOrder.add(x);
+    index.add(x);
     return false;
   }
 
   private void visitInNewContext(List<CssNode> nodes) {
     MergeRulesByContentVisitor v = new MergeRulesByContentVisitor();
     v.acceptWithInsertRemove(nodes);
-    rulesInOrder.addAll(v.rulesInOrder);
+    index.addAll(v.index);
   }
 }
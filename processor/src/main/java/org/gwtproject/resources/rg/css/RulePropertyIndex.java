@@ -0,0 +1,116 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg.css;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.gwtproject.resources.rg.CssResourceGenerator;
+import org.gwtproject.resources.rg.css.ast.CssProperty;
+import org.gwtproject.resources.rg.css.ast.CssRule;
+
+/**
+ * Keeps the rules visited by the merging visitors in order, indexed by the names of their
+ * properties. This lets {@link #hasCommonPropertiesAfter} answer whether any rule after a given one
+ * has a property in common with another rule, in the sense of {@link
+ * CssResourceGenerator#haveCommonProperties}, without comparing the rules pairwise.
+ */
+class RulePropertyIndex {
+  private final List<CssRule> rulesInOrder = new ArrayList<>();
+  private final Map<CssRule, Integer> positions = new IdentityHashMap<>();
+
+  /** The position of the last rule with a property of the given name. */
+  private final Map<String, Integer> lastByName = new HashMap<>();
+
+  /**
+   * The position of the last rule with a property whose name starts with the given name followed
+   * by a dash, for instance {@code border} for {@code border-left-color}.
+   */
+  private final Map<String, Integer> lastByPrefix = new HashMap<>();
+
+  /** Appends a rule, with the properties it has right now. */
+  void add(CssRule rule) {
+    int position = rulesInOrder.size();
+    rulesInOrder.add(rule);
+    positions.put(rule, position);
+    addProperties(rule.getProperties(), position);
+  }
+
+  /** Appends the rules of another index, in order. */
+  void addAll(RulePropertyIndex other) {
+    for (CssRule rule : other.rulesInOrder) {
+      add(rule);
+    }
+  }
+
+  /** Records properties that were added to a rule after it was indexed. */
+  void addProperties(CssRule rule, List<CssProperty> properties) {
+    Integer position = positions.get(rule);
+    assert position != null;
+    addProperties(properties, position);
+  }
+
+  /**
+   * Returns <code>true</code> if a rule indexed after <code>canonical</code> has a property in
+   * common with <code>rule</code>, that is a property with the same name or one of the names is the
+   * other one followed by a dash.
+   */
+  boolean hasCommonPropertiesAfter(CssRule canonical, CssRule rule) {
+    Integer position = positions.get(canonical);
+    assert position != null;
+    for (CssProperty p : rule.getProperties()) {
+      String name = normalize(p.getName());
+      if (isAfter(lastByName.get(name), position) || isAfter(lastByPrefix.get(name), position)) {
+        return true;
+      }
+      for (int i = name.indexOf('-', 1); i != -1; i = name.indexOf('-', i + 1)) {
+        if (isAfter(lastByName.get(name.substring(0, i)), position)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void addProperties(List<CssProperty> properties, int position) {
+    for (CssProperty p : properties) {
+      String name = normalize(p.getName());
+      update(lastByName, name, position);
+      for (int i = name.indexOf('-', 1); i != -1; i = name.indexOf('-', i + 1)) {
+        update(lastByPrefix, name.substring(0, i), position);
+      }
+    }
+  }
+
+  private static boolean isAfter(Integer last, int position) {
+    return last != null && last > position;
+  }
+
+  private static String normalize(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  private static void update(Map<String, Integer> map, String key, int position) {
+    Integer last = map.get(key);
+    if (last == null || last < position) {
+      map.put(key, position);
+    }
+  }
+}
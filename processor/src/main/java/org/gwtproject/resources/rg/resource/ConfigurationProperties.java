@@ -27,14 +27,35 @@ import javax.tools.StandardLocation;
 import org.gwtproject.resources.ext.BadPropertyValueException;
 import org.gwtproject.resources.ext.ConfigurationProperty;
 import org.gwtproject.resources.ext.DefaultConfigurationProperty;
+import org.gwtproject.resources.ext.DefaultInliningPolicy;
 
 /** @author Dmitrii Tikhomirov Created by treblereel 11/7/18 */
 public final class ConfigurationProperties {
 
   public static final String KEY_CLIENT_BUNDLE_CACHE_LOCATION = "ClientBundle.cacheLocation";
   public static final String KEY_CLIENT_BUNDLE_CACHE_URL = "ClientBundle.cacheUrl";
+  public static final String KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION =
+      "ClientBundle.buildCacheLocation";
   public static final String KEY_CLIENT_BUNDLE_ENABLE_INLINING = "ClientBundle.enableInlining";
   public static final String KEY_CLIENT_BUNDLE_ENABLE_RENAMING = "ClientBundle.enableRenaming";
+  public static final String KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE = "ClientBundle.maxInlineSize";
+  public static final String KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE =
+      "ClientBundle.maxInlineSizeByType";
+  public static final String KEY_CLIENT_BUNDLE_INLINE_BUDGET = "ClientBundle.inlineBudget";
+  public static final String KEY_CLIENT_BUNDLE_INLINING_POLICY = "ClientBundle.inliningPolicy";
+  public static final String KEY_CLIENT_BUNDLE_INCREMENTAL = "ClientBundle.incremental";
+  public static final String KEY_CLIENT_BUNDLE_STATE_LOCATION = "ClientBundle.stateLocation";
+  public static final String KEY_CLIENT_BUNDLE_PARALLEL = "ClientBundle.parallel";
+  public static final String KEY_CLIENT_BUNDLE_THREADS = "ClientBundle.threads";
+  public static final String KEY_CLIENT_BUNDLE_REPORT = "ClientBundle.report";
+  public static final String KEY_CLIENT_BUNDLE_PRECOMPRESS = "ClientBundle.precompress";
+  public static final String KEY_CLIENT_BUNDLE_REPORT_LOCATION = "ClientBundle.reportLocation";
+  public static final String KEY_IMAGE_RESOURCE_ATLAS = "ImageResource.atlas";
+  public static final String KEY_IMAGE_RESOURCE_ATLAS_MAX_SIZE = "ImageResource.atlasMaxSize";
+  public static final String KEY_EXTERNAL_TEXT_RESOURCE_SHARD_SIZE =
+      "ExternalTextResource.shardSize";
+  public static final String KEY_EXTERNAL_TEXT_RESOURCE_PERSISTENT_CACHE =
+      "ExternalTextResource.persistentCache";
   public static final String KEY_CSS_RESOURCE_ALLOWED_FUNCTIONS = "CssResource.allowedFunctions";
   public static final String KEY_CSS_RESOURCE_ALLOWED_AT_RULES = "CssResource.allowedAtRules";
   public static final String KEY_GSS_DEFAULT_IN_UIBINDER = "CssResource.gssDefaultInUiBinder";
@@ -47,6 +68,8 @@ public final class ConfigurationProperties {
   public static final String KEY_CSS_RESOURCE_CONVERSION_MODE = "CssResource.conversionMode";
   private static final String CLIENT_BUNDLE_DEFAULT_CACHE_LOCATION = "src/main/webapp/gwt-cache";
   private static final String CLIENT_BUNDLE_DEFAULT_CACHE_URL = "/gwt-cache/";
+  private static final String CLIENT_BUNDLE_DEFAULT_STATE_LOCATION = "gwt-resources-state";
+  private static final String CLIENT_BUNDLE_DEFAULT_REPORT_LOCATION = "gwt-resources-report.json";
   private final Map<String, ConfigurationProperty> holder = new HashMap<>();
   private final Filer filer;
 
@@ -59,6 +82,26 @@ public final class ConfigurationProperties {
   private void setDefaultProperties() {
     lookupAndSet(KEY_CLIENT_BUNDLE_ENABLE_INLINING, Arrays.asList("true"), true);
     lookupAndSet(KEY_CLIENT_BUNDLE_ENABLE_RENAMING, Arrays.asList("true"), true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE, Arrays.asList("65536"), true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_MAX_INLINE_SIZE_BY_TYPE, new ArrayList<>(), true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_INLINE_BUDGET, Arrays.asList("1048576"), true);
+    lookupAndSet(
+        KEY_CLIENT_BUNDLE_INLINING_POLICY,
+        Arrays.asList(DefaultInliningPolicy.class.getCanonicalName()),
+        true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_INCREMENTAL, Arrays.asList("false"), true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_BUILD_CACHE_LOCATION, new ArrayList<>(), true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_PARALLEL, Arrays.asList("false"), true);
+    lookupAndSet(
+        KEY_CLIENT_BUNDLE_THREADS,
+        Arrays.asList(String.valueOf(Runtime.getRuntime().availableProcessors())),
+        true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_REPORT, Arrays.asList("false"), true);
+    lookupAndSet(KEY_CLIENT_BUNDLE_PRECOMPRESS, Arrays.asList("false"), true);
+    lookupAndSet(KEY_IMAGE_RESOURCE_ATLAS, Arrays.asList("false"), true);
+    lookupAndSet(KEY_IMAGE_RESOURCE_ATLAS_MAX_SIZE, Arrays.asList("2048"), true);
+    lookupAndSet(KEY_EXTERNAL_TEXT_RESOURCE_SHARD_SIZE, Arrays.asList("0"), true);
+    lookupAndSet(KEY_EXTERNAL_TEXT_RESOURCE_PERSISTENT_CACHE, Arrays.asList("false"), true);
     lookupAndSet(KEY_CSS_RESOURCE_ALLOWED_FUNCTIONS, new ArrayList<>(), false);
     lookupAndSet(
         KEY_CSS_RESOURCE_ALLOWED_AT_RULES, Arrays.asList("-moz-document", "supports"), false);
@@ -97,12 +140,12 @@ public final class ConfigurationProperties {
           filer.createResource(
               StandardLocation.SOURCE_OUTPUT, "", "dummy" + System.currentTimeMillis());
 
-      Path path =
+      Path buildDir =
           Paths.get(fileObject.toUri())
               .getParent() // {PROJECT_ROOT}/target/generated-sources/annotations
               .getParent() // {PROJECT_ROOT}/target/generated-sources
-              .getParent() // {PROJECT_ROOT}/target
-              .getParent(); // {PROJECT_ROOT}
+              .getParent(); // {PROJECT_ROOT}/target
+      Path path = buildDir.getParent(); // {PROJECT_ROOT}
 
       String cacheLocation = System.getProperty(KEY_CLIENT_BUNDLE_CACHE_LOCATION);
       if (cacheLocation != null) {
@@ -119,6 +162,26 @@ public final class ConfigurationProperties {
           new DefaultConfigurationProperty(
               KEY_CLIENT_BUNDLE_CACHE_LOCATION, Arrays.asList(gwtCacheDir.toString())));
 
+      String stateLocation = System.getProperty(KEY_CLIENT_BUNDLE_STATE_LOCATION);
+      if (stateLocation == null) {
+        stateLocation =
+            buildDir.resolve(CLIENT_BUNDLE_DEFAULT_STATE_LOCATION).toAbsolutePath().toString();
+      }
+      holder.put(
+          KEY_CLIENT_BUNDLE_STATE_LOCATION,
+          new DefaultConfigurationProperty(
+              KEY_CLIENT_BUNDLE_STATE_LOCATION, Arrays.asList(stateLocation)));
+
+      String reportLocation = System.getProperty(KEY_CLIENT_BUNDLE_REPORT_LOCATION);
+      if (reportLocation == null) {
+        reportLocation =
+            buildDir.resolve(CLIENT_BUNDLE_DEFAULT_REPORT_LOCATION).toAbsolutePath().toString();
+      }
+      holder.put(
+          KEY_CLIENT_BUNDLE_REPORT_LOCATION,
+          new DefaultConfigurationProperty(
+              KEY_CLIENT_BUNDLE_REPORT_LOCATION, Arrays.asList(reportLocation)));
+
     } catch (IOException e) {
       throw new Error("Unable to locate gwt cache folder " + e.getMessage());
     }
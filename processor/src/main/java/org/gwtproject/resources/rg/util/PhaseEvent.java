@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** The JFR event emitted by {@link PhaseTimer}. Only loaded when JFR is available. */
+@Name("org.gwtproject.resources.Phase")
+@Label("ClientBundle Phase")
+@Description("A phase of the generation of a ClientBundle")
+@Category({"GWT", "Resources"})
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Bundle")
+  String bundle;
+
+  @Label("Method")
+  String method;
+
+  @Label("Generator")
+  Class<?> generator;
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright © ${year} ${name}
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.resources.rg.util;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Measures a phase of the generation of a ClientBundle. When the JVM supports Java Flight Recorder
+ * every phase is also emitted as an <code>org.gwtproject.resources.Phase</code> event, tagged with
+ * the bundle, method and ResourceGenerator it belongs to.
+ *
+ * <pre>
+ * try (PhaseTimer timer = PhaseTimer.start("gss.optimizeTree", bundle, method, getClass())) {
+ *   ...
+ * }
+ * </pre>
+ */
+public final class PhaseTimer implements AutoCloseable {
+  private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+  private final String phase;
+  private final String bundle;
+  private final String method;
+  private final Class<?> generator;
+  private final PhaseEvent event;
+  private final long start;
+  private long elapsed = -1;
+
+  private PhaseTimer(String phase, String bundle, String method, Class<?> generator) {
+    this.phase = phase;
+    this.bundle = bundle;
+    this.method = method;
+    this.generator = generator;
+    if (JFR_AVAILABLE) {
+      event = new PhaseEvent();
+      event.begin();
+    } else {
+      event = null;
+    }
+    this.start = System.nanoTime();
+  }
+
+  /**
+   * Starts timing a phase.
+   *
+   * @param phase the name of the phase
+   * @param bundle the ClientBundle being generated, or <code>null</code>
+   * @param method the resource method being generated, or <code>null</code>
+   * @param generator the ResourceGenerator running the phase, or <code>null</code>
+   */
+  public static PhaseTimer start(
+      String phase, TypeElement bundle, ExecutableElement method, Class<?> generator) {
+    return new PhaseTimer(
+        phase,
+        bundle == null ? null : bundle.getQualifiedName().toString(),
+        method == null ? null : method.getSimpleName().toString(),
+        generator);
+  }
+
+  /** Stops the timer. Calling this method more than once has no effect. */
+  @Override
+  public void close() {
+    if (elapsed >= 0) {
+      return;
+    }
+    elapsed = System.nanoTime() - start;
+    if (event != null) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.phase = phase;
+        event.bundle = bundle;
+        event.method = method;
+        event.generator = generator;
+        event.commit();
+      }
+    }
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  /** Returns the qualified name of the bundle, or <code>null</code>. */
+  public String getBundle() {
+    return bundle;
+  }
+
+  /** Returns the name of the method, or <code>null</code>. */
+  public String getMethod() {
+    return method;
+  }
+
+  /** Returns the {@link System#nanoTime()} at which the phase started. */
+  public long getStartNanos() {
+    return start;
+  }
+
+  /** Returns the duration of the phase in nanoseconds, or -1 if it is still running. */
+  public long getElapsedNanos() {
+    return elapsed;
+  }
+
+  private static boolean isJfrAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event", false, PhaseTimer.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+}
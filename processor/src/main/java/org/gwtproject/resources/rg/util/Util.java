@@ -15,6 +15,8 @@
  */
 package org.gwtproject.resources.rg.util;
 
+import static org.gwtproject.resources.rg.resource.ConfigurationProperties.KEY_CLIENT_BUNDLE_THREADS;
+
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -37,6 +39,7 @@ import java.lang.reflect.Array;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
@@ -44,7 +47,9 @@ import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.util.Elements;
 import javax.tools.Diagnostic;
+import org.gwtproject.resources.ext.PropertyOracle;
 import org.gwtproject.resources.ext.Resource;
+import org.gwtproject.resources.ext.ResourceContext;
 import org.gwtproject.resources.ext.TreeLogger;
 import org.gwtproject.resources.ext.UnableToCompleteException;
 import org.gwtproject.resources.rg.util.tools.Utility;
@@ -116,6 +121,76 @@ public final class Util {
     return printHexBinary(md5.digest()).toUpperCase();
   }
 
+  /**
+   * Computes the same strong name as {@link #computeStrongName(byte[])} for the bytes written by
+   * {@code content}, without holding them in memory. The content is written twice, once to find its
+   * length, which is hashed first, and once to hash it.
+   */
+  public static String computeStrongName(ResourceContext.ContentWriter content)
+      throws IOException {
+    MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Error initializing MD5", e);
+    }
+
+    DiscardingOutputStream counter = new DiscardingOutputStream();
+    content.writeTo(counter);
+    if (counter.count > Integer.MAX_VALUE) {
+      throw new IOException("The content is larger than 2GB");
+    }
+
+    // Same layout as computeStrongName(byte[][]) with a single array
+    ByteBuffer b = ByteBuffer.allocate(8);
+    b.putInt(1);
+    b.putInt((int) counter.count);
+    b.flip();
+    md5.update(b);
+
+    try (DigestOutputStream out = new DigestOutputStream(new DiscardingOutputStream(), md5)) {
+      content.writeTo(out);
+    }
+    return printHexBinary(md5.digest()).toUpperCase();
+  }
+
+  /** Counts and discards everything written to it. */
+  private static class DiscardingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  /**
+   * Returns the number of threads given by <code>ClientBundle.threads</code>, for the pools that
+   * generate bundles and write their resources.
+   */
+  public static int getThreadCount(TreeLogger logger, PropertyOracle propertyOracle)
+      throws UnableToCompleteException {
+    String value =
+        propertyOracle.getConfigurationProperty(logger, KEY_CLIENT_BUNDLE_THREADS).asSingleValue();
+    try {
+      int threads = Integer.parseInt(value);
+      if (threads > 0) {
+        return threads;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    logger.log(
+        TreeLogger.ERROR,
+        KEY_CLIENT_BUNDLE_THREADS + " must be a positive integer, but was '" + value + "'");
+    throw new UnableToCompleteException();
+  }
+
   public static String printHexBinary(byte[] data) {
     StringBuilder r = new StringBuilder(data.length * 2);
     byte[] var3 = data;